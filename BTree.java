@@ -0,0 +1,372 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * BTree
+ *
+ * PURPOSE: A B-tree map of any order, the 2-3 Tree made general. A node of order m
+ * holds up to m - 1 keys and m children, so order 3 is a 2-3 Tree, and a bigger
+ * order gives a flatter tree whose nodes each hold more keys next to each other in
+ * memory.
+ *
+ * The keys of a node are kept in one sorted array and found by binary search. A
+ * new key always goes into a leaf; a node that ends up with m keys splits in two
+ * around its middle key, which moves up into the parent, the same way the 2-3 Tree
+ * splits. So all leaves stay at the same depth, and with order 3 the tree has
+ * exactly the shape a TwoThreeTree would have after the same inserts.
+ *
+ * Keys can be added but not removed, like words in a GameTree. Not thread-safe.
+ */
+public class BTree<K extends Comparable<? super K>, V> {
+
+    // the smallest order that is still a B-tree
+    public static final int MIN_ORDER = 3;
+
+    // the most children a node can have
+    private final int order;
+    private Node root;
+    private int size;
+    private int height;
+
+    // the nodes and child indexes walked through by the last insert, reused so an
+    // insert doesn't allocate unless it adds a node
+    private Node[] pathNodes;
+    private int[] pathIndexes;
+
+    /**
+     * constructor
+     *
+     * @param order The most children a node can have, at least 3
+     * @throws IllegalArgumentException if the order is less than 3
+     */
+    public BTree(int order) {
+        if (order < MIN_ORDER){
+            throw new IllegalArgumentException("The order must be at least " + MIN_ORDER + ": " + order);
+        }
+        this.order = order;
+        this.root = null;
+        this.size = 0;
+        this.height = 0;
+        this.pathNodes = new Node[8];
+        this.pathIndexes = new int[8];
+    }
+
+    /**
+     * get
+     *
+     * @param key The key to look for
+     * @return the value stored with the key, or null if the key is not in the tree
+     */
+    @SuppressWarnings("unchecked")
+    public V get(K key) {
+        Node node = root;
+        while (node != null){
+            int i = search(node, key);
+            if (i >= 0){
+                return (V) node.values[i];
+            }
+            node = node.children == null ? null : node.children[-i - 1];
+        }
+        return null;
+    } // end of get
+
+    /**
+     * put
+     *
+     * Stores a value with a key, replacing the value the key had.
+     *
+     * @param key The key
+     * @param value The value to store with it
+     * @return the value the key had, or null if the key is new
+     */
+    @SuppressWarnings("unchecked")
+    public V put(K key, V value) {
+        if (root == null){
+            newRoot(key, value);
+            return null;
+        }
+        Node node = root;
+        int depth = 0;
+        while (true){
+            int i = search(node, key);
+            if (i >= 0){
+                V old = (V) node.values[i];
+                node.values[i] = value;
+                return old;
+            }
+            if (node.children == null){
+                insert(node, -i - 1, depth, key, value);
+                return null;
+            }
+            depth = push(depth, node, -i - 1);
+            node = node.children[-i - 1];
+        }
+    } // end of put
+
+    /**
+     * computeIfAbsent
+     *
+     * Returns the value stored with a key, first storing the one made by the given
+     * function if the key is new. Takes a single walk down the tree either way.
+     *
+     * @param key The key
+     * @param make Makes the value of a new key, it must not change the tree
+     * @return the value stored with the key
+     */
+    @SuppressWarnings("unchecked")
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> make) {
+        if (root == null){
+            V value = make.apply(key);
+            newRoot(key, value);
+            return value;
+        }
+        Node node = root;
+        int depth = 0;
+        while (true){
+            int i = search(node, key);
+            if (i >= 0){
+                return (V) node.values[i];
+            }
+            if (node.children == null){
+                V value = make.apply(key);
+                insert(node, -i - 1, depth, key, value);
+                return value;
+            }
+            depth = push(depth, node, -i - 1);
+            node = node.children[-i - 1];
+        }
+    } // end of computeIfAbsent
+
+    /**
+     * forEach
+     *
+     * Hands every key and its value to the given action, in order.
+     *
+     * @param action What to do with each key and value
+     */
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        if (root != null){
+            forEachHelp(root, action);
+        }
+    } // end of forEach
+
+    /**
+     * forEachHelp
+     *
+     * A private helper method that walks a subtree in order.
+     *
+     * @param node The root of the subtree
+     * @param action What to do with each key and value
+     */
+    @SuppressWarnings("unchecked")
+    private void forEachHelp(Node node, BiConsumer<? super K, ? super V> action) {
+        for (int i = 0; i < node.count; i++){
+            if (node.children != null){
+                forEachHelp(node.children[i], action);
+            }
+            action.accept((K) node.keys[i], (V) node.values[i]);
+        }
+        if (node.children != null){
+            forEachHelp(node.children[node.count], action);
+        }
+    } // end of forEachHelp
+
+    /**
+     * forEachNode
+     *
+     * Hands the values of every node to the given visitor, parents before their
+     * children and children from left to right, together with the depth of the node.
+     * Used to print the shape of the tree.
+     *
+     * @param visitor What to do with each node
+     */
+    public void forEachNode(NodeVisitor<V> visitor) {
+        if (root != null){
+            forEachNodeHelp(root, 0, visitor);
+        }
+    } // end of forEachNode
+
+    // visits a subtree in pre-order
+    @SuppressWarnings("unchecked")
+    private void forEachNodeHelp(Node node, int depth, NodeVisitor<V> visitor) {
+        visitor.visit(depth, (List<V>) Arrays.asList(node.values).subList(0, node.count));
+        if (node.children != null){
+            for (int i = 0; i <= node.count; i++){
+                forEachNodeHelp(node.children[i], depth + 1, visitor);
+            }
+        }
+    }
+
+    // the number of keys in the tree
+    public int size() {
+        return size;
+    }
+
+    // the number of edges on a path from the root to a leaf, 0 if the tree is empty
+    public int height() {
+        return height;
+    }
+
+    // the most children a node can have
+    public int order() {
+        return order;
+    }
+
+    /**
+     * search
+     *
+     * A private method that finds a key in a node by binary search.
+     *
+     * @param node The node to search
+     * @param key The key to look for
+     * @return the index of the key if the node has it, otherwise -(i + 1) where i
+     *         is the index of the child the key would be under
+     */
+    @SuppressWarnings("unchecked")
+    private int search(Node node, K key) {
+        int low = 0;
+        int high = node.count - 1;
+        while (low <= high){
+            int mid = (low + high) >>> 1;
+            int cmp = ((K) node.keys[mid]).compareTo(key);
+            if (cmp < 0){
+                low = mid + 1;
+            } else if (cmp > 0){
+                high = mid - 1;
+            } else{
+                return mid;
+            }
+        }
+        return -(low + 1);
+    } // end of search
+
+    // remembers a node on the way down, and which child we went into
+    private int push(int depth, Node node, int index) {
+        if (depth == pathNodes.length){
+            pathNodes = Arrays.copyOf(pathNodes, depth * 2);
+            pathIndexes = Arrays.copyOf(pathIndexes, depth * 2);
+        }
+        pathNodes[depth] = node;
+        pathIndexes[depth] = index;
+        return depth + 1;
+    }
+
+    // starts an empty tree with its first key
+    private void newRoot(K key, V value) {
+        root = new Node(order, true);
+        root.keys[0] = key;
+        root.values[0] = value;
+        root.count = 1;
+        size = 1;
+        height = 0;
+    }
+
+    /**
+     * insert
+     *
+     * A private method that puts a new key into a leaf, then splits every node on
+     * the way back up that ends up too full, growing a new root if the old one
+     * splits.
+     *
+     * @param leaf The leaf the key goes in
+     * @param index Where in the leaf it goes
+     * @param depth How many nodes above the leaf were remembered on the way down
+     * @param key The new key
+     * @param value Its value
+     */
+    private void insert(Node leaf, int index, int depth, Object key, Object value) {
+        size++;
+        int walked = depth;
+        Node node = leaf;
+        Node right = null;
+        while (true){
+            node.insertAt(index, key, value, right);
+            if (node.count < order){
+                break;
+            }
+
+            // too full, split around the middle key, which goes up a level
+            int mid = order / 2;
+            right = node.splitOff(mid, order);
+            key = node.keys[mid];
+            value = node.values[mid];
+            node.keys[mid] = null;
+            node.values[mid] = null;
+            node.count = mid;
+
+            if (depth == 0){
+                // the root split, the tree grows a level
+                Node newRoot = new Node(order, false);
+                newRoot.keys[0] = key;
+                newRoot.values[0] = value;
+                newRoot.children[0] = node;
+                newRoot.children[1] = right;
+                newRoot.count = 1;
+                root = newRoot;
+                height++;
+                break;
+            }
+            depth--;
+            node = pathNodes[depth];
+            index = pathIndexes[depth];
+        }
+
+        // let go of the walked nodes
+        Arrays.fill(pathNodes, 0, walked, null);
+    } // end of insert
+
+    // A visitor of the nodes of the tree, see forEachNode
+    public interface NodeVisitor<V> {
+        void visit(int depth, List<V> values);
+    }
+
+    // A node has its keys and their values in order, and one more child than keys
+    // unless it is a leaf. The arrays have room for one key too many, which is
+    // split off right after it goes in
+    private static class Node {
+        final Object[] keys;
+        final Object[] values;
+        final Node[] children; // null for a leaf
+        int count;
+
+        // constructor
+        Node(int order, boolean leaf) {
+            this.keys = new Object[order];
+            this.values = new Object[order];
+            this.children = leaf ? null : new Node[order + 1];
+            this.count = 0;
+        }
+
+        // puts a key at an index, with the given child to its right
+        void insertAt(int index, Object key, Object value, Node right) {
+            System.arraycopy(keys, index, keys, index + 1, count - index);
+            System.arraycopy(values, index, values, index + 1, count - index);
+            keys[index] = key;
+            values[index] = value;
+            if (children != null){
+                System.arraycopy(children, index + 1, children, index + 2, count - index);
+                children[index + 1] = right;
+            }
+            count++;
+        }
+
+        // moves the keys after mid, and the children after them, into a new node
+        Node splitOff(int mid, int order) {
+            Node right = new Node(order, children == null);
+            int moved = count - mid - 1;
+            System.arraycopy(keys, mid + 1, right.keys, 0, moved);
+            System.arraycopy(values, mid + 1, right.values, 0, moved);
+            Arrays.fill(keys, mid + 1, count, null);
+            Arrays.fill(values, mid + 1, count, null);
+            if (children != null){
+                System.arraycopy(children, mid + 1, right.children, 0, moved + 1);
+                Arrays.fill(children, mid + 1, count + 1, null);
+            }
+            right.count = moved;
+            return right;
+        }
+    } // end of Node class
+
+} // end of BTree class
@@ -0,0 +1,273 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * BTreeWordTree
+ *
+ * PURPOSE: A GameTree of words kept in a BTree of any order.
+ *
+ * Words are case-insensitive and ordered the same way as in TwoThreeTree, by their
+ * folded key. Each word's frequency lives in a small holder stored with its key, so
+ * counting a word that is already in the tree is one walk down and one increment.
+ *
+ * Order 3 is the compatibility mode: the tree then has the exact shape of a
+ * TwoThreeTree given the same words, and printTree and height show the same
+ * thing. Bigger orders (16 to 64 keys a node) make a much flatter tree, trading
+ * pointer chasing for binary searches inside each node; see BTreeBenchmark under
+ * jmh/ for how the orders compare. Not thread-safe.
+ */
+public class BTreeWordTree implements GameTree {
+
+    // the order that behaves like a TwoThreeTree
+    public static final int COMPATIBLE_ORDER = 3;
+
+    private final BTree<String, WordCount> tree;
+
+    // constructor, makes a tree that behaves like a TwoThreeTree
+    public BTreeWordTree() {
+        this(COMPATIBLE_ORDER);
+    }
+
+    /**
+     * constructor
+     *
+     * @param order The most children a node can have, at least 3
+     * @throws IllegalArgumentException if the order is less than 3
+     */
+    public BTreeWordTree(int order) {
+        this.tree = new BTree<>(order);
+    }
+
+    /**
+     * addWord
+     *
+     * Adds a word to the tree, updating its frequency if it already exists.
+     * Treats all words as case-insensitive.
+     *
+     * @param word The word to add.
+     */
+    @Override
+    public void addWord(String word) {
+        tree.computeIfAbsent(TwoThreeTree.foldKey(word), key -> new WordCount(word)).frequency++;
+    } // end of addWord
+
+    /**
+     * Checks if the tree contains the specified word.
+     * @param word The word to check for.
+     * @return true if the word is found in the tree, false otherwise.
+     */
+    @Override
+    public boolean containsWord(String word) {
+        return tree.get(TwoThreeTree.foldKey(word)) != null;
+    } // end of containsWord
+
+    /**
+     * Gets the frequency of a given word in the tree.
+     * @param word The word whose frequency is to be retrieved.
+     * @return The frequency of the word, or 0 if the word is not found.
+     */
+    @Override
+    public int getFrequency(String word) {
+        WordCount count = tree.get(TwoThreeTree.foldKey(word));
+        return count == null ? 0 : count.frequency;
+    } // end of getFrequency
+
+    /**
+     * Prints the contents of the tree in lexicographic order.
+     */
+    @Override
+    public void print() {
+        if (tree.size() > 0){
+            StringBuilder out = new StringBuilder("[ ");
+            tree.forEach((key, count) -> out.append(count.word).append('(').append(count.frequency).append(") "));
+            System.out.println(out.append(']'));
+        } else{
+            System.out.println("Tree is empty!");
+        }
+    } // end of print
+
+    /**
+     * Calculates the height of the tree as the number of edges on the longest branch.
+     * @return The height of the tree.
+     */
+    @Override
+    public int height() {
+        return tree.height();
+    } // end of height
+
+    /**
+     * compare
+     *
+     * Compares the current tree with another tree, listing unique and common words.
+     * If the other tree is not a compatible type, print a message indicating an invalid comparison.
+     *
+     * @param otherTree The other tree to compare against.
+     */
+    @Override
+    public void compare(GameTree otherTree) {
+        if (otherTree instanceof BTreeWordTree){
+            WordComparison result = compareWith((BTreeWordTree) otherTree);
+
+            // same output as TwoThreeTree.compare
+            if (tree.size() > 0){
+                System.out.println("Common Words: [ " + joined(result.getCommonWords()) + "]");
+                System.out.println("Unique Words to Curr Tree: [ " + joined(result.getUniqueToThis()) + "]");
+            } else{
+                System.out.print("Common Words: [  ]");
+                System.out.print("Unique Words to Curr Tree: [  ]");
+            }
+            if (((BTreeWordTree) otherTree).tree.size() > 0){
+                System.out.println("Unique Words to Other Tree: [ " + joined(result.getUniqueToOther()) + "]");
+            } else{
+                System.out.print("Unique Words to Other Tree: [  ]");
+            }
+        } else{
+            System.out.println("The otherTree is not an instance of BTreeWordTree. Incompatible Tree Type!");
+        }
+    } // end of compare
+
+    /**
+     * compareWith
+     *
+     * Compares the current tree with another tree and returns the common and unique
+     * words instead of printing them. Both trees are listed in order and then merged,
+     * so this takes a single pass over both trees.
+     *
+     * @param otherTree The other tree to compare against.
+     * @return the common words, and the words unique to each tree, all in order
+     */
+    public WordComparison compareWith(BTreeWordTree otherTree) {
+        // list both trees in order, keys to compare and counts for the words
+        List<String> mine = new ArrayList<>(tree.size());
+        List<WordCount> myCounts = new ArrayList<>(tree.size());
+        tree.forEach((key, count) -> {
+            mine.add(key);
+            myCounts.add(count);
+        });
+        List<String> theirs = new ArrayList<>(otherTree.tree.size());
+        List<WordCount> theirCounts = new ArrayList<>(otherTree.tree.size());
+        otherTree.tree.forEach((key, count) -> {
+            theirs.add(key);
+            theirCounts.add(count);
+        });
+
+        ArrayList<String> common = new ArrayList<>();
+        ArrayList<String> uniqueToThis = new ArrayList<>();
+        ArrayList<String> uniqueToOther = new ArrayList<>();
+
+        // step whichever side is behind, or both when they are on the same word
+        int i = 0;
+        int j = 0;
+        while (i < mine.size() && j < theirs.size()){
+            int cmp = mine.get(i).compareTo(theirs.get(j));
+            if (cmp == 0){
+                common.add(myCounts.get(i).word);
+                i++;
+                j++;
+            } else if (cmp < 0){
+                uniqueToThis.add(myCounts.get(i++).word);
+            } else{
+                uniqueToOther.add(theirCounts.get(j++).word);
+            }
+        }
+        while (i < mine.size()){
+            uniqueToThis.add(myCounts.get(i++).word);
+        }
+        while (j < theirs.size()){
+            uniqueToOther.add(theirCounts.get(j++).word);
+        }
+        return new WordComparison(common, uniqueToThis, uniqueToOther);
+    } // end of compareWith
+
+    /**
+     * printTree
+     *
+     * Prints a visual representation of the tree structure, one node a line,
+     * indented by its depth.
+     */
+    @Override
+    public void printTree() {
+        if (tree.size() > 0){
+            StringBuilder out = new StringBuilder();
+            tree.forEachNode((depth, counts) -> {
+                out.append("    ".repeat(depth)).append('[');
+                for (int i = 0; i < counts.size(); i++){
+                    if (i > 0){
+                        out.append(", ");
+                    }
+                    out.append(counts.get(i).word).append('(').append(counts.get(i).frequency).append(')');
+                }
+                out.append("]\n");
+            });
+            System.out.print(out);
+        } else{
+            System.out.println("The tree is empty!");
+        }
+    } // end of printTree
+
+    /**
+     * doubleFrequency
+     *
+     * Doubles the frequency of a word if the word exists in the tree.
+     *
+     * @param word The word for which we double the frequency
+     */
+    @Override
+    public void doubleFrequency(String word) {
+        WordCount count = tree.get(TwoThreeTree.foldKey(word));
+        if (count != null){
+            count.frequency *= 2;
+        }
+    } // end of doubleFrequency
+
+    /**
+     * swapFrequencies
+     *
+     * Swaps the frequencies of two words, if both the words exist in the tree.
+     *
+     * @param word1 one of the two words for which we swap the frequency
+     * @param word2 one of the two words for which we swap the frequency
+     */
+    @Override
+    public void swapFrequencies(String word1, String word2) {
+        WordCount count1 = tree.get(TwoThreeTree.foldKey(word1));
+        WordCount count2 = tree.get(TwoThreeTree.foldKey(word2));
+        if (count1 != null && count2 != null){
+            int temp = count1.frequency;
+            count1.frequency = count2.frequency;
+            count2.frequency = temp;
+        }
+    } // end of swapFrequencies
+
+    // the number of different words in the tree
+    public int size() {
+        return tree.size();
+    }
+
+    // the order of the tree underneath
+    public int order() {
+        return tree.order();
+    }
+
+    // joins words, each followed by a space
+    private static String joined(List<String> words) {
+        StringBuilder out = new StringBuilder();
+        for (String word : words){
+            out.append(word).append(' ');
+        }
+        return out.toString();
+    }
+
+    // A word as it was first added, and how many times it was added
+    private static class WordCount {
+        final String word;
+        int frequency;
+
+        // constructor
+        WordCount(String word) {
+            this.word = word;
+            this.frequency = 0;
+        }
+    } // end of WordCount class
+
+} // end of BTreeWordTree class
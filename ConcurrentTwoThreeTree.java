@@ -0,0 +1,950 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * ConcurrentTwoThreeTree
+ *
+ * PURPOSE: A thread-safe 2-3 Tree of words that many threads can add to and read
+ * from at the same time.
+ *
+ * Lookups (containsWord, getFrequency) run as optimistic reads: they walk the tree
+ * without taking any lock and then check that no writer changed the tree in the
+ * meantime, only falling back to a shared read lock when one did. Since a child
+ * pointer never points back up the tree, not even halfway through a split or a
+ * merge, a walk that races with a writer always ends, it may just see a half-done
+ * change, which the check then throws away.
+ *
+ * Updating the frequency of a word that is already known (addWord on a known word,
+ * doubleFrequency, swapFrequencies) takes no lock either: the word is found with an
+ * optimistic read, and once that is validated the change is added atomically to
+ * the counts pending in the word's data pair. The frequency totals kept for
+ * sumFrequencies can't be touched without a lock, since a writer may be recounting
+ * them, so the pending counts are only folded into the frequency and the totals by
+ * the next thread that takes the write lock. Lookups add the pending counts
+ * themselves, and anything that reads frequencies of the whole tree (print,
+ * forEach, sumFrequencies, topK, writeTo, ...) folds them in first. A writer about
+ * to decide whether a word stays (decrementFrequency, pruneBelow) retires its data
+ * pair first, so a count that would land after the decision instead fails and is
+ * made again under the shared lock. Hot words are counted from many threads at
+ * once and never wait on each other, or on a lock.
+ *
+ * A new word is inserted right away only if no other thread holds the lock, by
+ * turning the shared lock into the write lock without waiting. Otherwise, instead
+ * of waiting for the write lock, it is staged in a concurrent hash map under the
+ * shared lock, so threads adding different new words at once only meet if their
+ * words hash to the same bin, and it is counted there until the staged words are
+ * merged into the tree. Once STAGE_LIMIT words are staged, the thread that staged
+ * the last one takes the write lock and merges them all in as one sorted batch
+ * (see addAll), so only one thread in STAGE_LIMIT new words ever waits for the
+ * write lock. A word is always either in the tree or staged, never both, so
+ * lookups check one and then the other. Anything that needs the whole tree (print,
+ * forEach, rank, removeWord, ...) merges the staged words in first.
+ *
+ * Removing words (removeWord, decrementFrequency, pruneBelow) takes the write lock.
+ */
+public class ConcurrentTwoThreeTree implements GameTree {
+
+    // how many new words are staged before they are merged into the tree
+    static final int STAGE_LIMIT = 1024;
+
+    // hands out ids used to always lock two trees in the same order
+    private static final AtomicLong NEXT_ID = new AtomicLong();
+
+    // the tree doing the actual work. Its shape, frequencies and totals only change
+    // under the write lock, counts made without a lock wait in the data pairs
+    private final TwoThreeTree tree;
+    private final StampedLock lock;
+    private final long id;
+
+    // new words by folded key, counted here until they are merged into the tree.
+    // Words are only staged under the shared lock and merged under the write lock
+    private final ConcurrentHashMap<String, TwoThreeTree.DataPair> staged;
+    // set while a thread merges the staged words, so the others don't queue up for it
+    private final AtomicBoolean merging;
+    // data pairs with counts pending since they were last folded in, see settle.
+    // A data pair may be in it more than once, or after its counts were folded
+    private final ConcurrentLinkedQueue<TwoThreeTree.DataPair> dirty;
+
+    //constructor
+    public ConcurrentTwoThreeTree() {
+        this(new TwoThreeTree());
+    }
+
+    // wraps a tree that was built some other way, e.g. loaded from a snapshot.
+        // Nothing else may use the tree afterwards
+    ConcurrentTwoThreeTree(TwoThreeTree tree) {
+        this.tree = tree;
+        lock = new StampedLock();
+        id = NEXT_ID.getAndIncrement();
+        staged = new ConcurrentHashMap<>();
+        merging = new AtomicBoolean();
+        dirty = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * addWord
+     *
+     * Adds a word to the tree, updating its frequency if it already exists.
+     * Treats all words as case-insensitive.
+     *
+     * @param word The word to add.
+     */
+    @Override
+    public void addWord(String word) {
+        upsertWord(word);
+    } // end of addWord
+
+    /**
+     * upsertWord
+     *
+     * Adds a word to the tree, updating its frequency if it already exists, and
+     * returns the resulting frequency.
+     *
+     * @param word The word to add.
+     * @return The frequency of the word after adding it.
+     */
+    public int upsertWord(String word) {
+        String key = TwoThreeTree.foldKey(word);
+        long start = tree.getMetrics() == null ? 0 : System.nanoTime();
+
+        // most words are already known, count them without taking the lock at all
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0){
+            TwoThreeTree.DataPair hot = tree.peekCached(key);
+            TwoThreeTree.DataPair pair = hot != null ? hot : peekAnywhere(key);
+            if (pair != null){
+                int folded = pair.frequency;
+                if (lock.validate(stamp)){
+                    long before = addPending(pair, 1);
+                    if (!TwoThreeTree.DataPair.isGone(before)){
+                        tree.noteCounted(pair, hot != null, start);
+                        // a writer that got in meanwhile may have folded counts into the frequency
+                        return lock.validate(stamp) ? folded + (int) before + 1 : latestFrequency(pair);
+                    }
+                    // the word is being removed, count it again under the lock
+                }
+            }
+        }
+
+        int wordFreq;
+        stamp = lock.readLock();
+        try{
+            TwoThreeTree.DataPair hot = tree.peekCached(key);
+            TwoThreeTree.DataPair pair = hot != null ? hot : peekAnywhere(key);
+            if (pair != null){
+                // nothing is retired or folded while the lock is held
+                long before = addPending(pair, 1);
+                tree.noteCounted(pair, hot != null, start);
+                return pair.frequency + (int) before + 1;
+            }
+
+            long writeStamp = lock.tryConvertToWriteLock(stamp);
+            if (writeStamp != 0){
+                // no other thread holds the lock, so nobody waits if we
+                // insert the word straight away
+                stamp = writeStamp;
+                return tree.upsertWord(word);
+            }
+            // others are busy in the tree, stage the word instead of waiting.
+            // A staged word's frequency stays 0, drainStaged folds its counts in
+            pair = staged.computeIfAbsent(key, k -> newPair(word, k));
+            wordFreq = (int) addPending(pair, 1) + 1;
+            TreeMetrics metrics = tree.getMetrics();
+            if (metrics != null && start != 0){
+                metrics.addWord(wordFreq == 1, 0, 0, System.nanoTime() - start);
+            }
+        } finally{
+            lock.unlock(stamp);
+        }
+
+        // only the thread that staged the word checks, so the map isn't counted every time
+        if (wordFreq == 1 && staged.size() >= STAGE_LIMIT){
+            mergeStaged();
+        }
+        return wordFreq;
+    } // end of upsertWord
+
+    // adds to the counts pending in a data pair, queueing it to be folded in if
+    // nothing was pending yet. Returns what was pending before, see DataPair.addPending
+    private long addPending(TwoThreeTree.DataPair pair, long delta) {
+        long before = pair.addPending(delta);
+        if (before == 0){
+            dirty.add(pair);
+        }
+        return before;
+    }
+
+    // the frequency of a word counting what is still pending. Only consistent under
+    // the lock or a stamp that is validated afterwards, since a fold moves counts
+    // from one to the other
+    private static int frequencyOf(TwoThreeTree.DataPair pair) {
+        long pending = pair.getPending();
+        return pair.frequency + (TwoThreeTree.DataPair.isGone(pending) ? 0 : (int) pending);
+    }
+
+    // the frequency of a word that was just counted, read again under the shared lock
+    private int latestFrequency(TwoThreeTree.DataPair pair) {
+        long stamp = lock.readLock();
+        try{
+            return frequencyOf(pair);
+        } finally{
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // a data pair for a word that is about to be staged, with no count yet
+    private static TwoThreeTree.DataPair newPair(String word, String key) {
+        TwoThreeTree.DataPair pair = new TwoThreeTree.DataPair();
+        pair.word = word;
+        pair.key = key;
+        return pair;
+    }
+
+    /**
+     * mergeStaged
+     *
+     * A private method that merges the staged words into the tree under the write
+     * lock, unless another thread is already about to.
+     */
+    private void mergeStaged() {
+        if (merging.compareAndSet(false, true)){
+            try{
+                long stamp = lock.writeLock();
+                try{
+                    drainStaged();
+                } finally{
+                    lock.unlockWrite(stamp);
+                }
+            } finally{
+                merging.set(false);
+            }
+        }
+    } // end of mergeStaged
+
+    /**
+     * drainStaged
+     *
+     * A private method that moves every staged word into the tree as one sorted
+     * batch, with the counts pending so far as its frequency. The write lock must be
+     * held, so no word is being staged meanwhile. Counts that still land in a staged
+     * word after this are folded in later, like those of any word in the tree.
+     */
+    private void drainStaged() {
+        if (staged.isEmpty()){
+            return;
+        }
+        TwoThreeTree.DataPair[] batch = staged.values().toArray(new TwoThreeTree.DataPair[0]);
+        staged.clear();
+        for (TwoThreeTree.DataPair pair : batch){
+            pair.frequency += (int) pair.takePending();
+        }
+        Arrays.sort(batch, (a, b) -> a.key.compareTo(b.key));
+        tree.addSorted(batch, batch.length);
+    } // end of drainStaged
+
+    /**
+     * settle
+     *
+     * A private method that merges the staged words into the tree, and then folds
+     * every count made without the lock into the frequencies and totals of the tree.
+     * The write lock must be held.
+     */
+    private void settle() {
+        drainStaged();
+        tree.foldPending(dirty);
+    } // end of settle
+
+    /**
+     * mergedReadLock
+     *
+     * A private method that takes the shared lock for something that needs the
+     * whole tree, first merging in the words staged so far. Words staged by other
+     * threads after that are left staged, as if they were added a moment later.
+     *
+     * @return the stamp of the shared lock
+     */
+    private long mergedReadLock() {
+        if (staged.isEmpty()){
+            return lock.readLock();
+        }
+        long stamp = lock.writeLock();
+        drainStaged();
+        // going from the write lock down to the shared lock always works
+        return lock.tryConvertToReadLock(stamp);
+    } // end of mergedReadLock
+
+    /**
+     * settledReadLock
+     *
+     * A private method that takes the shared lock for something that reads the
+     * frequencies of the whole tree, first merging in the staged words and folding
+     * in the counts made so far (see settle). Counts made after that are left
+     * pending, as if they were made a moment later.
+     *
+     * @return the stamp of the shared lock
+     */
+    private long settledReadLock() {
+        if (staged.isEmpty() && dirty.isEmpty()){
+            return lock.readLock();
+        }
+        long stamp = lock.writeLock();
+        settle();
+        return lock.tryConvertToReadLock(stamp);
+    } // end of settledReadLock
+
+    /**
+     * addAll
+     *
+     * Adds a whole batch of words to the tree. The batch is counted and sorted before
+     * taking the write lock, so the lock is only held while merging the distinct
+     * words into the tree.
+     *
+     * @param words The words to add.
+     */
+    public void addAll(Iterable<String> words) {
+        TwoThreeTree.DataPair[] batch = TwoThreeTree.sortBatch(words);
+        addSorted(batch, batch.length);
+    } // end of addAll
+
+    // merges a batch that is already counted and sorted, see TwoThreeTree.addSorted.
+    // Package-private so WordIngest can feed the tree its batches
+    void addSorted(TwoThreeTree.DataPair[] batch, int size) {
+        long stamp = lock.writeLock();
+        try{
+            // the batch may hold staged words, which must be in the tree to be found
+            drainStaged();
+            tree.addSorted(batch, size);
+        } finally{
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * removeWord
+     *
+     * Removes a word from the tree, whatever its frequency, under the write lock. A
+     * count that slips in without the lock just before is lost with the word, as if
+     * it came first.
+     *
+     * @param word The word to remove.
+     * @return true if the word was in the tree, false otherwise
+     */
+    public boolean removeWord(String word) {
+        long stamp = lock.writeLock();
+        try{
+            drainStaged();
+            return tree.removeWord(word);
+        } finally{
+            lock.unlockWrite(stamp);
+        }
+    } // end of removeWord
+
+    /**
+     * decrementFrequency
+     *
+     * Lowers the frequency of a word by one under the write lock, removing the word
+     * once its frequency would reach 0.
+     *
+     * @param word The word whose frequency is lowered
+     * @return The frequency of the word afterwards, 0 if it was removed or was never
+     *         in the tree
+     */
+    public int decrementFrequency(String word) {
+        long stamp = lock.writeLock();
+        try{
+            settle();
+            TwoThreeTree.DataPair pair = tree.findPair(word);
+            if (pair == null){
+                return 0;
+            }
+            // a count that slipped in without the lock must be seen before the word
+            // may go, and none may land once it has
+            tree.foldPending(pair, pair.retire());
+            int wordFreq = tree.decrementFrequency(word);
+            if (wordFreq > 0){
+                pair.revive();
+            }
+            return wordFreq;
+        } finally{
+            lock.unlockWrite(stamp);
+        }
+    } // end of decrementFrequency
+
+    /**
+     * pruneBelow
+     *
+     * Removes every word whose frequency is below the given minimum, under the write
+     * lock.
+     *
+     * @param minFrequency The lowest frequency a word needs to stay in the tree
+     * @return how many words were removed
+     */
+    public int pruneBelow(int minFrequency) {
+        long stamp = lock.writeLock();
+        try{
+            settle();
+            // same as decrementFrequency, for every word at once
+            ArrayList<TwoThreeTree.DataPair> retired = new ArrayList<>(tree.size());
+            tree.forEachPair(pair -> {
+                tree.foldPending(pair, pair.retire());
+                retired.add(pair);
+            });
+            int removed = tree.pruneBelow(minFrequency);
+            for (TwoThreeTree.DataPair pair : retired){
+                if (pair.owner != null){
+                    pair.revive();
+                }
+            }
+            return removed;
+        } finally{
+            lock.unlockWrite(stamp);
+        }
+    } // end of pruneBelow
+
+    /**
+     * Checks if the tree contains the specified word.
+     * @param word The word to check for.
+     * @return true if the word is found in the tree, false otherwise.
+     */
+    @Override
+    public boolean containsWord(String word) {
+        return getFrequency(word) > 0;
+    } // end of containsWord
+
+    /**
+     * Gets the frequency of a given word in the tree.
+     *
+     * Tries an optimistic read first, and only if a writer got in the way, reads
+     * again under the shared lock. The hot word cache and the metrics are left alone
+     * until the optimistic read is known to be valid.
+     *
+     * @param word The word whose frequency is to be retrieved.
+     * @return The frequency of the word, or 0 if the word is not found.
+     */
+    @Override
+    public int getFrequency(String word) {
+        String key = TwoThreeTree.foldKey(word);
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0){
+            TwoThreeTree.DataPair hot = tree.peekCached(key);
+            TwoThreeTree.DataPair pair = hot != null ? hot : peekAnywhere(key);
+            int wordFreq = pair == null ? 0 : frequencyOf(pair);
+            if (lock.validate(stamp)){
+                tree.noteFound(pair, hot != null);
+                return wordFreq;
+            }
+        }
+
+        // a writer got in the way, read again under the shared lock
+        stamp = lock.readLock();
+        try{
+            TwoThreeTree.DataPair pair = findAnywhere(word);
+            return pair == null ? 0 : frequencyOf(pair);
+        } finally{
+            lock.unlockRead(stamp);
+        }
+    } // end of getFrequency
+
+    // looks for a folded word in the tree, then among the staged words, without a
+    // lock and without touching the cache or the metrics. May see a half-done
+    // change, so the caller must validate; a walk that ran into one finds nothing
+    private TwoThreeTree.DataPair peekAnywhere(String key) {
+        try{
+            TwoThreeTree.DataPair pair = tree.peekPair(key);
+            return pair != null ? pair : staged.get(key);
+        } catch (RuntimeException e){
+            // walked into a half-done split, the validate will fail anyway
+            return null;
+        }
+    }
+
+    // looks for a word in the tree, then among the staged words. No merge can run
+    // in between as long as the caller holds the lock or validates afterwards
+    private TwoThreeTree.DataPair findAnywhere(String word) {
+        TwoThreeTree.DataPair pair = tree.findPair(word);
+        return pair != null ? pair : staged.get(TwoThreeTree.foldKey(word));
+    }
+
+    /**
+     * Prints the contents of the tree in lexicographic order.
+     */
+    @Override
+    public void print() {
+        long stamp = settledReadLock();
+        try{
+            tree.print();
+        } finally{
+            lock.unlockRead(stamp);
+        }
+    } // end of print
+
+    /**
+     * print
+     *
+     * Writes the contents of the tree in lexicographic order to the given
+     * Appendable under the read lock, see TwoThreeTree.print(Appendable).
+     *
+     * @param out Where to write the words
+     * @throws IOException if the Appendable throws it
+     */
+    public void print(Appendable out) throws IOException {
+        long stamp = settledReadLock();
+        try{
+            tree.print(out);
+        } finally{
+            lock.unlockRead(stamp);
+        }
+    } // end of print
+
+    /**
+     * forEach
+     *
+     * Hands every word of the tree and its frequency to the given action, in
+     * lexicographic order, while holding the read lock.
+     *
+     * @param action What to do with each word and its frequency
+     */
+    public void forEach(ObjIntConsumer<String> action) {
+        long stamp = settledReadLock();
+        try{
+            tree.forEach(action);
+        } finally{
+            lock.unlockRead(stamp);
+        }
+    } // end of forEach
+
+    /**
+     * forEachInRange
+     *
+     * Hands every word from one word up to (but not including) another, and its
+     * frequency, to the given action, in lexicographic order, while holding the read
+     * lock. Treats all words as case-insensitive.
+     *
+     * @param from The first word of the range
+     * @param to The word the range stops before
+     * @param action What to do with each word and its frequency
+     */
+    public void forEachInRange(String from, String to, ObjIntConsumer<String> action) {
+        long stamp = settledReadLock();
+        try{
+            TwoThreeTree.WordCursor cursor = tree.range(from, to);
+            while (cursor.next()){
+                action.accept(cursor.word(), cursor.frequency());
+            }
+        } finally{
+            lock.unlockRead(stamp);
+        }
+    } // end of forEachInRange
+
+    // writes the words of the tree into the buffer under the read lock, see
+    // TwoThreeTree.appendPairs. Returns how many words were written
+    int appendPairs(StringBuilder buffer, Appendable out) throws IOException {
+        long stamp = settledReadLock();
+        try{
+            return tree.appendPairs(buffer, out);
+        } finally{
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // adds every word of the tree, and its folded key, to the lists in order under
+    // the read lock, so ShardedTwoThreeTree can merge words without folding them again
+    void collectWords(List<String> words, List<String> keys) {
+        long stamp = settledReadLock();
+        try{
+            TwoThreeTree.WordCursor cursor = tree.cursor();
+            while (cursor.next()){
+                words.add(cursor.word());
+                keys.add(cursor.key());
+            }
+        } finally{
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * writeTo
+     *
+     * Saves the tree to a stream under the read lock, see TwoThreeTree.writeTo.
+     * Other threads can keep reading, and counting words that are already in the
+     * tree, while it is being saved.
+     *
+     * @param out Where to save the tree
+     * @throws IOException if writing fails
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        long stamp = settledReadLock();
+        try{
+            tree.writeTo(out);
+        } finally{
+            lock.unlockRead(stamp);
+        }
+    } // end of writeTo
+
+    /**
+     * enableMetrics
+     *
+     * Starts counting what the tree does, see TwoThreeTree.enableMetrics. The
+     * counters are safe to update from many threads at once.
+     *
+     * @return the metrics of the tree
+     */
+    public TreeMetrics enableMetrics() {
+        long stamp = lock.writeLock();
+        try{
+            return tree.enableMetrics();
+        } finally{
+            lock.unlockWrite(stamp);
+        }
+    } // end of enableMetrics
+
+    /**
+     * disableMetrics
+     *
+     * Stops counting what the tree does.
+     */
+    public void disableMetrics() {
+        long stamp = lock.writeLock();
+        try{
+            tree.disableMetrics();
+        } finally{
+            lock.unlockWrite(stamp);
+        }
+    } // end of disableMetrics
+
+    /**
+     * enableTopK
+     *
+     * Starts keeping the words grouped by frequency, see TwoThreeTree.enableTopK.
+     * Counting words stays parallel and doesn't touch the index: a word is only
+     * refiled when its pending counts are folded in under the write lock, once for
+     * however many counts it got, and all the words folded together are refiled as
+     * one batch.
+     */
+    public void enableTopK() {
+        long stamp = lock.writeLock();
+        try{
+            settle();
+            tree.enableTopK();
+        } finally{
+            lock.unlockWrite(stamp);
+        }
+    } // end of enableTopK
+
+    /**
+     * enableCache
+     *
+     * Starts keeping recently used words in a hot word cache, see
+     * TwoThreeTree.enableCache. The cache takes no lock of its own, so lookups and
+     * counts of hot words stay parallel.
+     *
+     * @param capacity About how many words to keep
+     * @throws IllegalArgumentException if the capacity is less than 1 or too big
+     */
+    public void enableCache(int capacity) {
+        long stamp = lock.writeLock();
+        try{
+            tree.enableCache(capacity);
+        } finally{
+            lock.unlockWrite(stamp);
+        }
+    } // end of enableCache
+
+    /**
+     * disableCache
+     *
+     * Stops caching words.
+     */
+    public void disableCache() {
+        long stamp = lock.writeLock();
+        try{
+            tree.disableCache();
+        } finally{
+            lock.unlockWrite(stamp);
+        }
+    } // end of disableCache
+
+    /**
+     * topK
+     *
+     * @param k How many words are wanted
+     * @return up to k of the most frequent words, most frequent first
+     * @throws IllegalStateException if enableTopK was never called
+     */
+    public List<String> topK(int k) {
+        long stamp = settledReadLock();
+        try{
+            return tree.topK(k);
+        } finally{
+            lock.unlockRead(stamp);
+        }
+    } // end of topK
+
+    /**
+     * size
+     *
+     * @return how many different words are in the tree
+     */
+    public int size() {
+        long stamp = lock.readLock();
+        try{
+            return tree.size() + staged.size();
+        } finally{
+            lock.unlockRead(stamp);
+        }
+    } // end of size
+
+    /**
+     * rank
+     *
+     * @param word The word to look for, it doesn't have to be in the tree
+     * @return the number of words in the tree less than the word
+     */
+    public int rank(String word) {
+        long stamp = mergedReadLock();
+        try{
+            return tree.rank(word);
+        } finally{
+            lock.unlockRead(stamp);
+        }
+    } // end of rank
+
+    /**
+     * select
+     *
+     * @param index The position of the word in lexicographic order, from 0
+     * @return the word at that position
+     * @throws IndexOutOfBoundsException if the index is negative or not less than size()
+     */
+    public String select(int index) {
+        long stamp = mergedReadLock();
+        try{
+            return tree.select(index);
+        } finally{
+            lock.unlockRead(stamp);
+        }
+    } // end of select
+
+    /**
+     * sumFrequencies
+     *
+     * @param from The first word of the range
+     * @param to The word the range stops before
+     * @return the frequencies of the words in range added together
+     */
+    public long sumFrequencies(String from, String to) {
+        long stamp = settledReadLock();
+        try{
+            return tree.sumFrequencies(from, to);
+        } finally{
+            lock.unlockRead(stamp);
+        }
+    } // end of sumFrequencies
+
+    /**
+     * Calculates the height of the tree as the number of edges on the longest branch.
+     * @return The height of the tree.
+     */
+    @Override
+    public int height() {
+        long stamp = mergedReadLock();
+        try{
+            return tree.height();
+        } finally{
+            lock.unlockRead(stamp);
+        }
+    } // end of height
+
+    /**
+     * compare
+     *
+     * Compares the current tree with another tree, listing unique and common words.
+     * If the other tree is also a ConcurrentTwoThreeTree, both trees are read locked,
+     * always in the same order so two threads comparing the same trees the other
+     * way around can't deadlock.
+     *
+     * @param otherTree The other tree to compare against.
+     */
+    @Override
+    public void compare(GameTree otherTree) {
+        if (otherTree instanceof ConcurrentTwoThreeTree && otherTree != this){
+            ConcurrentTwoThreeTree other = (ConcurrentTwoThreeTree) otherTree;
+            ConcurrentTwoThreeTree first = id < other.id ? this : other;
+            ConcurrentTwoThreeTree second = id < other.id ? other : this;
+
+            long stamp1 = first.settledReadLock();
+            try{
+                long stamp2 = second.settledReadLock();
+                try{
+                    tree.compare(other.tree);
+                } finally{
+                    second.lock.unlockRead(stamp2);
+                }
+            } finally{
+                first.lock.unlockRead(stamp1);
+            }
+        } else{
+            long stamp = settledReadLock();
+            try{
+                tree.compare(otherTree == this ? tree : otherTree);
+            } finally{
+                lock.unlockRead(stamp);
+            }
+        }
+    } // end of compare
+
+    /**
+     * printTree
+     *
+     * Prints a visual representation of the tree structure.
+     */
+    @Override
+    public void printTree() {
+        long stamp = settledReadLock();
+        try{
+            tree.printTree();
+        } finally{
+            lock.unlockRead(stamp);
+        }
+    } // end of printTree
+
+    /**
+     * printTree
+     *
+     * Writes a visual representation of the tree structure to the given Appendable
+     * under the read lock, see TwoThreeTree.printTree(Appendable).
+     *
+     * @param out Where to write the tree
+     * @throws IOException if the Appendable throws it
+     */
+    public void printTree(Appendable out) throws IOException {
+        long stamp = settledReadLock();
+        try{
+            tree.printTree(out);
+        } finally{
+            lock.unlockRead(stamp);
+        }
+    } // end of printTree
+
+    /**
+     * doubleFrequency
+     *
+     * Doubles the frequency of a word if the word exists in the tree. The frequency
+     * is read with an optimistic read and then added on top like any count, without
+     * a lock, so a count another thread makes in between is kept rather than
+     * doubled. Only if a writer got in the way does it double under the write lock.
+     *
+     * @param word The word for which we double the frequency
+     */
+    @Override
+    public void doubleFrequency(String word) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0){
+            TwoThreeTree.DataPair pair = peekAnywhere(TwoThreeTree.foldKey(word));
+            int wordFreq = pair == null ? 0 : frequencyOf(pair);
+            if (lock.validate(stamp)
+                    && (pair == null || !TwoThreeTree.DataPair.isGone(addPending(pair, wordFreq)))){
+                return;
+            }
+        }
+
+        stamp = lock.writeLock();
+        try{
+            settle();
+            tree.doubleFrequency(word);
+        } finally{
+            lock.unlockWrite(stamp);
+        }
+    } // end of doubleFrequency
+
+    // changes the frequency of a word already in the tree by the given amount,
+    // without a lock like any count. Package-private so ShardedTwoThreeTree can swap
+    // the frequencies of words kept in different trees
+    int adjustFrequency(String word, int delta) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0){
+            TwoThreeTree.DataPair pair = peekAnywhere(TwoThreeTree.foldKey(word));
+            int folded = pair == null ? 0 : pair.frequency;
+            if (lock.validate(stamp)){
+                if (pair == null){
+                    return 0;
+                }
+                long before = addPending(pair, delta);
+                if (!TwoThreeTree.DataPair.isGone(before)){
+                    return lock.validate(stamp) ? folded + (int) before + delta : latestFrequency(pair);
+                }
+            }
+        }
+
+        stamp = lock.writeLock();
+        try{
+            settle();
+            return tree.adjustFrequency(word, delta);
+        } finally{
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * swapFrequencies
+     *
+     * Swaps the frequencies of two words, if both the words exist in the tree. Both
+     * frequencies are read with an optimistic read, and the difference is then added
+     * to one and taken from the other without a lock, so a count that lands in the
+     * middle of the swap is kept rather than overwritten. Only if a writer got in
+     * the way does it swap under the write lock.
+     *
+     * @param word1 one of the two words for which we swap the frequency
+     * @param word2 one of the two words for which we swap the frequency
+     */
+    @Override
+    public void swapFrequencies(String word1, String word2) {
+        // word1 got the difference but word2 couldn't give it up, so it is taken back
+        TwoThreeTree.DataPair owing = null;
+        int owed = 0;
+
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0){
+            TwoThreeTree.DataPair pair1 = peekAnywhere(TwoThreeTree.foldKey(word1));
+            TwoThreeTree.DataPair pair2 = peekAnywhere(TwoThreeTree.foldKey(word2));
+            int difference = pair1 == null || pair2 == null ? 0 : frequencyOf(pair2) - frequencyOf(pair1);
+            if (lock.validate(stamp)){
+                if (difference == 0){
+                    // same frequency, or one of the words isn't there
+                    return;
+                }
+                if (!TwoThreeTree.DataPair.isGone(addPending(pair1, difference))){
+                    if (!TwoThreeTree.DataPair.isGone(addPending(pair2, -difference))){
+                        return;
+                    }
+                    if (TwoThreeTree.DataPair.isGone(addPending(pair1, -difference))){
+                        // retired in the meantime, with the difference already folded in
+                        owing = pair1;
+                        owed = difference;
+                    }
+                }
+            }
+        }
+
+        stamp = lock.writeLock();
+        try{
+            settle();
+            if (owing != null){
+                tree.foldPending(owing, -owed);
+            }
+            tree.swapFrequencies(word1, word2);
+        } finally{
+            lock.unlockWrite(stamp);
+        }
+    } // end of swapFrequencies
+
+} // end of ConcurrentTwoThreeTree class
@@ -0,0 +1,317 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * DurableTwoThreeTree
+ *
+ * PURPOSE: A thread-safe 2-3 Tree of words whose changes survive a crash.
+ *
+ * The tree is kept in a directory with two files:
+ *  - snapshot.bin holds the whole tree as of the last checkpoint, written by
+ *    TreeSnapshot, after the generation of the log that follows it (a long).
+ *  - wal.log is a MutationLog of every addWord, doubleFrequency and
+ *    swapFrequencies since that checkpoint.
+ *
+ * Every change is put in the log and applied to the tree in the same order, then
+ * committed as the SyncPolicy asks. Opening the tree loads the snapshot and replays
+ * the log on top of it. checkpoint() writes a new snapshot and empties the log; if
+ * it crashes halfway, the log's generation tells whether its changes are already in
+ * the snapshot, so they are never applied twice.
+ *
+ * Reads go straight to the in-memory tree, and may see a change a little before it
+ * is committed.
+ */
+public class DurableTwoThreeTree implements GameTree, Closeable {
+
+    private static final String SNAPSHOT = "snapshot.bin";
+    private static final String LOG = "wal.log";
+
+    // default longest time between two forces of the log with SyncPolicy.BATCH
+    private static final long DEFAULT_BATCH_MILLIS = 10;
+
+    private final Path directory;
+    private final ConcurrentTwoThreeTree tree;
+    private final MutationLog log;
+
+    // held while putting a change in the log and applying it, so both see the
+    // changes in the same order
+    private final Object orderLock;
+
+    /**
+     * constructor
+     *
+     * Opens the tree kept in a directory, or starts a new empty one if the directory
+     * has none, forcing the log once per 10 ms with SyncPolicy.BATCH.
+     *
+     * @param directory Where the tree is kept, it must exist
+     * @param policy How hard to try to get each change onto the disk
+     * @throws IOException if the files cannot be read, or are damaged
+     */
+    public DurableTwoThreeTree(Path directory, MutationLog.SyncPolicy policy) throws IOException {
+        this(directory, policy, DEFAULT_BATCH_MILLIS);
+    }
+
+    /**
+     * constructor
+     *
+     * Opens the tree kept in a directory, or starts a new empty one if the directory
+     * has none.
+     *
+     * @param directory Where the tree is kept, it must exist
+     * @param policy How hard to try to get each change onto the disk
+     * @param batchMillis With SyncPolicy.BATCH, the longest time between two forces
+     * @throws IOException if the files cannot be read, or are damaged
+     */
+    public DurableTwoThreeTree(Path directory, MutationLog.SyncPolicy policy, long batchMillis) throws IOException {
+        this.directory = directory;
+        this.orderLock = new Object();
+
+        // load the last checkpoint, if there is one
+        TwoThreeTree loaded = new TwoThreeTree();
+        long generation = 0;
+        Path snapshot = directory.resolve(SNAPSHOT);
+        if (Files.exists(snapshot)){
+            try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)){
+                ByteBuffer header = ByteBuffer.allocate(Long.BYTES);
+                while (header.hasRemaining()){
+                    if (channel.read(header) < 0){
+                        throw new IOException("Damaged snapshot: " + snapshot);
+                    }
+                }
+                generation = header.flip().getLong();
+                loaded = TwoThreeTree.readFrom(channel);
+            }
+        }
+
+        // and replay whatever changed since
+        this.log = new MutationLog(directory.resolve(LOG), generation, policy, batchMillis);
+        final TwoThreeTree replayed = loaded;
+        try{
+            log.replay((kind, word1, word2) -> apply(replayed, kind, word1, word2));
+        } catch (IOException | RuntimeException e){
+            log.close();
+            throw e;
+        }
+        this.tree = new ConcurrentTwoThreeTree(loaded);
+    }
+
+    /**
+     * addWord
+     *
+     * Adds a word to the tree, updating its frequency if it already exists.
+     * Treats all words as case-insensitive.
+     *
+     * @param word The word to add.
+     * @throws UncheckedIOException if the change cannot be written to the log
+     */
+    @Override
+    public void addWord(String word) {
+        long record;
+        synchronized (orderLock){
+            record = log.append(MutationLog.ADD, word, null);
+            tree.addWord(word);
+        }
+        commit(record);
+    } // end of addWord
+
+    /**
+     * doubleFrequency
+     *
+     * Doubles the frequency of a word if the word exists in the tree.
+     *
+     * @param word The word for which we double the frequency
+     * @throws UncheckedIOException if the change cannot be written to the log
+     */
+    @Override
+    public void doubleFrequency(String word) {
+        long record;
+        synchronized (orderLock){
+            if (!tree.containsWord(word)){
+                // nothing changes, nothing to log
+                return;
+            }
+            record = log.append(MutationLog.DOUBLE, word, null);
+            tree.doubleFrequency(word);
+        }
+        commit(record);
+    } // end of doubleFrequency
+
+    /**
+     * swapFrequencies
+     *
+     * Swaps the frequencies of two words, if both the words exist in the tree.
+     *
+     * @param word1 one of the two words for which we swap the frequency
+     * @param word2 one of the two words for which we swap the frequency
+     * @throws UncheckedIOException if the change cannot be written to the log
+     */
+    @Override
+    public void swapFrequencies(String word1, String word2) {
+        long record;
+        synchronized (orderLock){
+            if (!tree.containsWord(word1) || !tree.containsWord(word2)){
+                return;
+            }
+            record = log.append(MutationLog.SWAP, word1, word2);
+            tree.swapFrequencies(word1, word2);
+        }
+        commit(record);
+    } // end of swapFrequencies
+
+    /**
+     * checkpoint
+     *
+     * Writes the whole tree to a new snapshot and empties the log, so opening the
+     * tree doesn't have to replay a long log. Changes wait while it runs, reads don't.
+     *
+     * @throws IOException if the snapshot or the log cannot be written
+     */
+    public void checkpoint() throws IOException {
+        synchronized (orderLock){
+            // everything in the log so far goes into the snapshot
+            log.sync();
+            long next = log.generation() + 1;
+
+            // write the new snapshot next to the old one, then swap it in
+            Path temp = directory.resolve(SNAPSHOT + ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+                ByteBuffer header = ByteBuffer.allocate(Long.BYTES).putLong(next);
+                header.flip();
+                while (header.hasRemaining()){
+                    channel.write(header);
+                }
+                tree.writeTo(Channels.newOutputStream(channel));
+                channel.force(true);
+            }
+            Files.move(temp, directory.resolve(SNAPSHOT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            // the rename is only durable once the directory is forced, and the log
+            // must not be emptied before, or a crash could lose both
+            try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)){
+                dir.force(true);
+            }
+
+            // a crash before this leaves an older log, which the snapshot already has
+            log.restart(next);
+        }
+    } // end of checkpoint
+
+    /**
+     * sync
+     *
+     * Forces every change made so far to the disk, whatever the SyncPolicy.
+     *
+     * @throws IOException if the log cannot be written
+     */
+    public void sync() throws IOException {
+        log.sync();
+    } // end of sync
+
+    /**
+     * close
+     *
+     * Forces every change made so far to the disk and closes the log.
+     *
+     * @throws IOException if the log cannot be written or closed
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (orderLock){
+            log.close();
+        }
+    } // end of close
+
+    /**
+     * Checks if the tree contains the specified word.
+     * @param word The word to check for.
+     * @return true if the word is found in the tree, false otherwise.
+     */
+    @Override
+    public boolean containsWord(String word) {
+        return tree.containsWord(word);
+    } // end of containsWord
+
+    /**
+     * Gets the frequency of a given word in the tree.
+     * @param word The word whose frequency is to be retrieved.
+     * @return The frequency of the word, or 0 if the word is not found.
+     */
+    @Override
+    public int getFrequency(String word) {
+        return tree.getFrequency(word);
+    } // end of getFrequency
+
+    /**
+     * Prints the contents of the tree in lexicographic order.
+     */
+    @Override
+    public void print() {
+        tree.print();
+    } // end of print
+
+    /**
+     * Calculates the height of the tree as the number of edges on the longest branch.
+     * @return The height of the tree.
+     */
+    @Override
+    public int height() {
+        return tree.height();
+    } // end of height
+
+    /**
+     * compare
+     *
+     * Compares the current tree with another tree, listing unique and common words.
+     *
+     * @param otherTree The other tree to compare against.
+     */
+    @Override
+    public void compare(GameTree otherTree) {
+        if (otherTree instanceof DurableTwoThreeTree){
+            // compare the trees underneath, so both get locked properly
+            otherTree = ((DurableTwoThreeTree) otherTree).tree;
+        }
+        tree.compare(otherTree);
+    } // end of compare
+
+    /**
+     * printTree
+     *
+     * Prints a visual representation of the tree structure.
+     */
+    @Override
+    public void printTree() {
+        tree.printTree();
+    } // end of printTree
+
+    // commits a record, turning a failure into an unchecked exception since the
+    // GameTree methods can't throw IOException
+    private void commit(long record) {
+        try{
+            log.commit(record);
+        } catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // applies a change read back from the log
+    private static void apply(TwoThreeTree tree, byte kind, String word1, String word2) {
+        if (kind == MutationLog.ADD){
+            tree.addWord(word1);
+        } else if (kind == MutationLog.DOUBLE){
+            tree.doubleFrequency(word1);
+        } else if (kind == MutationLog.SWAP){
+            tree.swapFrequencies(word1, word2);
+        } else{
+            throw new IllegalStateException("Unknown change in the log: " + kind);
+        }
+    }
+
+} // end of DurableTwoThreeTree class
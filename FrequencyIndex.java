@@ -0,0 +1,139 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.ToIntFunction;
+
+/**
+ * FrequencyIndex
+ *
+ * PURPOSE: Keeps entries grouped by their frequency, so the most frequent entries
+ * can be listed without looking at every entry.
+ *
+ * Entries are kept in buckets, one bucket per frequency, with the buckets in order.
+ * The index doesn't store frequencies itself, it reads the current frequency of an
+ * entry whenever it is told the entry changed, so updates that race with each other
+ * always leave the entry in the bucket of its latest frequency. All methods are
+ * synchronized so entries can be updated from many threads at once, but that also
+ * means threads refiling entries one at a time wait on each other. A caller that
+ * counts from many threads should buffer the changes and hand them over in batches
+ * with updateAll, the way ConcurrentTwoThreeTree does.
+ *
+ * @param <E> The type of the entries
+ */
+public class FrequencyIndex<E> {
+
+    // reads the current frequency of an entry
+    private final ToIntFunction<E> frequencyOf;
+
+    // the entries of each frequency, most frequent last. Within a bucket entries
+    // stay in the order they reached that frequency
+    private final TreeMap<Integer, LinkedHashSet<E>> buckets;
+
+    // the frequency each entry was last filed under
+    private final HashMap<E, Integer> filedUnder;
+
+    // constructor
+    public FrequencyIndex(ToIntFunction<E> frequencyOf) {
+        this.frequencyOf = frequencyOf;
+        this.buckets = new TreeMap<>();
+        this.filedUnder = new HashMap<>();
+    }
+
+    /**
+     * update
+     *
+     * Files an entry under its current frequency, adding it to the index if it is
+     * new. Has to be called after every change to an entry's frequency.
+     *
+     * @param entry The entry whose frequency changed
+     */
+    public synchronized void update(E entry) {
+        refile(entry);
+    } // end of update
+
+    /**
+     * updateAll
+     *
+     * Files a batch of entries under their current frequencies, like update, but
+     * only takes the lock once for the whole batch.
+     *
+     * @param entries The entries whose frequencies changed
+     */
+    public synchronized void updateAll(Iterable<E> entries) {
+        for (E entry : entries){
+            refile(entry);
+        }
+    } // end of updateAll
+
+    // files an entry under its current frequency, the lock must be held
+    private void refile(E entry) {
+        int frequency = frequencyOf.applyAsInt(entry);
+        Integer old = filedUnder.put(entry, frequency);
+        if (old != null){
+            if (old == frequency){
+                // already in the right bucket
+                return;
+            }
+            takeOut(entry, old);
+        }
+        buckets.computeIfAbsent(frequency, f -> new LinkedHashSet<>()).add(entry);
+    }
+
+    /**
+     * remove
+     *
+     * Takes an entry out of the index.
+     *
+     * @param entry The entry to take out
+     */
+    public synchronized void remove(E entry) {
+        Integer old = filedUnder.remove(entry);
+        if (old != null){
+            takeOut(entry, old);
+        }
+    } // end of remove
+
+    /**
+     * topK
+     *
+     * Lists the most frequent entries, most frequent first. Only the buckets that
+     * hold the answer are visited, starting from the highest frequency.
+     *
+     * @param k How many entries are wanted
+     * @return up to k entries, fewer if the index doesn't have that many
+     */
+    public synchronized List<E> topK(int k) {
+        ArrayList<E> top = new ArrayList<>(Math.min(Math.max(k, 0), filedUnder.size()));
+        for (Map.Entry<Integer, LinkedHashSet<E>> bucket : buckets.descendingMap().entrySet()){
+            for (E entry : bucket.getValue()){
+                if (top.size() == k){
+                    return top;
+                }
+                top.add(entry);
+            }
+        }
+        return top;
+    } // end of topK
+
+    /**
+     * size
+     *
+     * @return how many entries are in the index
+     */
+    public synchronized int size() {
+        return filedUnder.size();
+    } // end of size
+
+    // takes an entry out of the bucket it was filed under, dropping the bucket once empty
+    private void takeOut(E entry, int frequency) {
+        LinkedHashSet<E> bucket = buckets.get(frequency);
+        bucket.remove(entry);
+        if (bucket.isEmpty()){
+            buckets.remove(frequency);
+        }
+    }
+
+} // end of FrequencyIndex class
@@ -0,0 +1,85 @@
+/**
+ * GameTree
+ *
+ * PURPOSE: What every tree of words can do: count words, look them up, print them
+ * and compare itself with another tree. All words are case-insensitive.
+ */
+public interface GameTree {
+
+    /**
+     * addWord
+     *
+     * Adds a word to the tree, updating its frequency if it already exists.
+     *
+     * @param word The word to add.
+     */
+    void addWord(String word);
+
+    /**
+     * containsWord
+     *
+     * @param word The word to check for.
+     * @return true if the word is found in the tree, false otherwise.
+     */
+    boolean containsWord(String word);
+
+    /**
+     * getFrequency
+     *
+     * @param word The word whose frequency is to be retrieved.
+     * @return The frequency of the word, or 0 if the word is not found.
+     */
+    int getFrequency(String word);
+
+    /**
+     * print
+     *
+     * Prints the contents of the tree in lexicographic order.
+     */
+    void print();
+
+    /**
+     * height
+     *
+     * @return The height of the tree, the number of edges on the longest branch.
+     */
+    int height();
+
+    /**
+     * compare
+     *
+     * Compares the tree with another tree, listing unique and common words. If the
+     * other tree is not a compatible type, prints a message saying so instead.
+     *
+     * @param otherTree The other tree to compare against.
+     */
+    void compare(GameTree otherTree);
+
+    /**
+     * printTree
+     *
+     * Prints a visual representation of the tree structure, with indentation to
+     * show the hierarchy.
+     */
+    void printTree();
+
+    /**
+     * doubleFrequency
+     *
+     * Doubles the frequency of a word if the word exists in the tree.
+     *
+     * @param word The word for which we double the frequency
+     */
+    void doubleFrequency(String word);
+
+    /**
+     * swapFrequencies
+     *
+     * Swaps the frequencies of two words, if both the words exist in the tree.
+     *
+     * @param word1 one of the two words for which we swap the frequency
+     * @param word2 one of the two words for which we swap the frequency
+     */
+    void swapFrequencies(String word1, String word2);
+
+} // end of GameTree interface
@@ -0,0 +1,161 @@
+import java.util.Arrays;
+import java.util.function.Function;
+
+/**
+ * HotWordCache
+ *
+ * PURPOSE: A small, fixed-size cache of the most used entries by key, so looking up
+ * a hot word doesn't have to walk down the whole tree every time.
+ *
+ * The cache is set-associative: a key can only be in one of 4 slots, picked by its
+ * hash, so a lookup checks at most 4 entries and never allocates. When all 4 slots
+ * are taken, one is freed with the CLOCK algorithm: every hit marks its slot, and a
+ * hand sweeps the slots of the set, unmarking them as it goes, until it finds one
+ * that wasn't hit since the last sweep. Words that keep getting used stay, the rest
+ * are pushed out. Other threads may mark slots again behind the hand, so the hand
+ * goes around the set at most twice and then takes the slot it is on.
+ *
+ * Entries are found by comparing their own key, read through a function, so the
+ * cache stores no keys of its own. The cache does not lock; many threads may use it
+ * at once, and the worst a race can do is lose an entry or a mark, which only costs
+ * a walk down the tree. Callers must make sure an entry they get back is still
+ * live.
+ *
+ * @param <E> The type of the entries
+ */
+public class HotWordCache<E> {
+
+    // how many slots a key can be in
+    private static final int WAYS = 4;
+
+    // the most slots the hand looks at before it takes one, hit or not
+    private static final int MAX_SWEEP = 2 * WAYS;
+
+    // reads the key of an entry
+    private final Function<E, String> keyOf;
+
+    private final Object[] entries;
+    // whether each slot was hit since the hand last passed it
+    private final boolean[] marked;
+    // the next slot the hand looks at, one per set
+    private final byte[] hands;
+    private final int setMask;
+
+    /**
+     * constructor
+     *
+     * @param capacity About how many entries to keep, rounded up to a power of two
+     *        and at least 4
+     * @param keyOf Reads the key of an entry
+     * @throws IllegalArgumentException if the capacity is less than 1 or too big
+     */
+    public HotWordCache(int capacity, Function<E, String> keyOf) {
+        if (capacity < 1 || capacity > 1 << 30){
+            throw new IllegalArgumentException("Capacity out of range: " + capacity);
+        }
+        int sets = Math.max(1, Integer.highestOneBit(capacity - 1) * 2 / WAYS);
+        this.keyOf = keyOf;
+        this.entries = new Object[sets * WAYS];
+        this.marked = new boolean[sets * WAYS];
+        this.hands = new byte[sets];
+        this.setMask = sets - 1;
+    }
+
+    /**
+     * get
+     *
+     * @param key The key to look for
+     * @return the entry with that key, or null if it isn't cached
+     */
+    @SuppressWarnings("unchecked")
+    public E get(String key) {
+        int base = setOf(key) * WAYS;
+        for (int i = base; i < base + WAYS; i++){
+            E entry = (E) entries[i];
+            // key first, a racing put may have published an entry whose key we can't see yet
+            if (entry != null && key.equals(keyOf.apply(entry))){
+                if (!marked[i]){
+                    marked[i] = true;
+                }
+                return entry;
+            }
+        }
+        return null;
+    } // end of get
+
+    /**
+     * put
+     *
+     * Caches an entry under its key, pushing out an entry that wasn't hit lately if
+     * its slots are all taken. Does nothing if the entry is already cached.
+     *
+     * @param entry The entry to cache
+     */
+    public void put(E entry) {
+        int set = setOf(keyOf.apply(entry));
+        int base = set * WAYS;
+        int free = -1;
+        for (int i = base; i < base + WAYS; i++){
+            Object cached = entries[i];
+            if (cached == entry){
+                return;
+            }
+            if (cached == null && free < 0){
+                free = i;
+            }
+        }
+
+        if (free < 0){
+            // sweep the hand until it finds a slot that wasn't hit since last time
+            int hand = hands[set];
+            for (int swept = 0; swept < MAX_SWEEP && marked[base + hand]; swept++){
+                marked[base + hand] = false;
+                hand = (hand + 1) % WAYS;
+            }
+            free = base + hand;
+            hands[set] = (byte) ((hand + 1) % WAYS);
+        }
+        // new entries start unmarked, so one that is never hit again goes first
+        marked[free] = false;
+        entries[free] = entry;
+    } // end of put
+
+    /**
+     * remove
+     *
+     * Takes an entry out of the cache, if it is there.
+     *
+     * @param entry The entry to take out
+     */
+    public void remove(E entry) {
+        int base = setOf(keyOf.apply(entry)) * WAYS;
+        for (int i = base; i < base + WAYS; i++){
+            if (entries[i] == entry){
+                entries[i] = null;
+                marked[i] = false;
+            }
+        }
+    } // end of remove
+
+    /**
+     * clear
+     *
+     * Empties the cache.
+     */
+    public void clear() {
+        Arrays.fill(entries, null);
+        Arrays.fill(marked, false);
+    } // end of clear
+
+    // how many entries the cache can hold
+    public int capacity() {
+        return entries.length;
+    }
+
+    // the set a key belongs to, spreading the high bits of the hash into the low ones
+    private int setOf(String key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & setMask;
+    }
+
+} // end of HotWordCache class
@@ -0,0 +1,812 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/**
+ * MappedTwoThreeTree
+ *
+ * PURPOSE: A 2-3 Tree that contains words as its data, where the nodes and the words
+ * live in memory-mapped files instead of on the heap. This lets the tree hold a
+ * vocabulary that does not fit in the heap, keeps node objects away from the garbage
+ * collector, and lets the tree be reopened right away after a restart without adding
+ * every word again.
+ *
+ * The tree is kept in a directory with two files:
+ *  - nodes.bin holds fixed-size node records. Record 0 is the header (root, node
+ *    count, height, end of the word arena), so node number 0 also means "no node".
+ *  - words.bin is the word arena. Each entry holds the folded key and, if it is
+ *    different, the word as it was first added.
+ *
+ * Changes are written straight into the mapped files. Call force() (or close()) to
+ * make sure they have reached the disk.
+ */
+public class MappedTwoThreeTree implements GameTree, Closeable {
+
+    // file layout
+    private static final int MAGIC = 0x32335452; // "23TR"
+    private static final int VERSION = 1;
+
+    // a node record: number of words, 3 children, 2 frequencies, 2 word references
+    private static final int NODE_SIZE = 40;
+    private static final int NUM_WORDS = 0;
+    private static final int CHILD = 4; // 3 ints
+    private static final int FREQ = 16; // 2 ints
+    private static final int WORD = 24; // 2 longs
+
+    // header fields, stored in record 0
+    private static final int H_MAGIC = 0;
+    private static final int H_VERSION = 4;
+    private static final int H_ROOT = 8;
+    private static final int H_NODE_COUNT = 12;
+    private static final int H_HEIGHT = 16;
+    private static final int H_ARENA_END = 24;
+
+    // files are mapped in chunks, so records and words never straddle a chunk
+    private static final long NODE_CHUNK = (long) NODE_SIZE << 20;
+    private static final long WORD_CHUNK = 1L << 26;
+
+    // a word entry with no separate display word
+    private static final int SAME_AS_KEY = -1;
+
+    // deepest path we ever need, a 2-3 tree with 2^31 nodes is at most 31 high
+    private static final int MAX_DEPTH = 64;
+
+    private final MappedFile nodes;
+    private final MappedFile words;
+
+    // cached copies of the header fields
+    private int root;
+    private int nodeCount;
+    private int height;
+    private long arenaEnd;
+
+    // the path taken by the last descent, used to split back up to the root
+    private final int[] pathNodes = new int[MAX_DEPTH];
+    private final int[] pathPos = new int[MAX_DEPTH];
+
+    /**
+     * Opens the tree stored in the given directory, creating an empty tree there if
+     * the directory does not hold one yet.
+     *
+     * @param directory The directory holding nodes.bin and words.bin
+     * @throws IOException if the files cannot be opened, or do not hold a tree, or
+     * words.bin is missing or shorter than the words the tree refers to
+     */
+    public MappedTwoThreeTree(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        Path nodesFile = directory.resolve("nodes.bin");
+        Path wordsFile = directory.resolve("words.bin");
+        boolean existing = Files.exists(nodesFile);
+        if (existing){
+            // check before mapping, mapping grows the files and closing would write to them
+            ByteBuffer header = readHeader(nodesFile);
+            if (header == null){
+                throw new IOException("Not a 2-3 tree store: " + directory);
+            }
+            checkArena(wordsFile, header.getLong(H_ARENA_END));
+        }
+        nodes = new MappedFile(nodesFile, NODE_CHUNK);
+        words = new MappedFile(wordsFile, WORD_CHUNK);
+
+        if (existing){
+            // reopening, just read the header back
+            root = nodes.getInt(H_ROOT);
+            nodeCount = nodes.getInt(H_NODE_COUNT);
+            height = nodes.getInt(H_HEIGHT);
+            arenaEnd = nodes.getLong(H_ARENA_END);
+        } else{
+            // brand new tree
+            nodes.putInt(H_MAGIC, MAGIC);
+            nodes.putInt(H_VERSION, VERSION);
+            root = 0;
+            nodeCount = 0;
+            height = 0;
+            arenaEnd = 0;
+            writeHeader();
+        }
+    }
+
+    /**
+     * readHeader
+     *
+     * A private method that reads the header at the start of a nodes file with a
+     * plain read, so a file that isn't ours is left untouched.
+     *
+     * @param nodesFile The nodes file to read
+     * @return the header, or null if the file doesn't start with the header of this
+     * version of the store
+     * @throws IOException if the file cannot be read
+     */
+    private static ByteBuffer readHeader(Path nodesFile) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(H_ARENA_END + 8);
+        try (FileChannel channel = FileChannel.open(nodesFile, StandardOpenOption.READ)){
+            while (header.hasRemaining() && channel.read(header) >= 0){
+                // keep reading until the header is in or the file ends
+            }
+        }
+        if (header.hasRemaining() || header.getInt(H_MAGIC) != MAGIC || header.getInt(H_VERSION) != VERSION){
+            return null;
+        }
+        return header;
+    } // end of readHeader
+
+    /**
+     * checkArena
+     *
+     * A private method that checks the word arena holds every word the header says
+     * was written to it. The arena is mapped a whole chunk at a time, so it is
+     * never shorter than that unless it was truncated. It is never created or grown
+     * here, reopening must not paper over lost words.
+     *
+     * @param wordsFile The word arena
+     * @param arenaEnd Where the header says the words written so far end
+     * @throws IOException if the arena is missing or shorter than arenaEnd
+     */
+    private static void checkArena(Path wordsFile, long arenaEnd) throws IOException {
+        if (!Files.exists(wordsFile)){
+            throw new IOException("Missing word arena: " + wordsFile);
+        }
+        long size = Files.size(wordsFile);
+        if (arenaEnd < 0 || size < arenaEnd){
+            throw new IOException("Word arena holds " + size + " bytes but the tree refers to "
+                    + arenaEnd + ": " + wordsFile);
+        }
+    } // end of checkArena
+
+    /**
+     * addWord
+     *
+     * Adds a word to the tree, updating its frequency if it already exists.
+     * Treats all words as case-insensitive. Finds-or-inserts in a single descent,
+     * and if the leaf overflows, splits back up along the path that was taken.
+     *
+     * @param word The word to add.
+     */
+    @Override
+    public void addWord(String word) {
+        String key = TwoThreeTree.foldKey(word);
+
+        if (root == 0){
+            // creating a new root with the word as its only data
+            root = newNode();
+            setWord(root, 0, appendWord(key, word), 1);
+            setNumWords(root, 1);
+            writeHeader();
+            return;
+        }
+
+        // iterate until we either find the word or fall off the tree at a leaf
+        int curr = root;
+        int depth = 0;
+        while (true){
+            pathNodes[depth] = curr;
+            int numWords = numWords(curr);
+            int pos = numWords;
+            for (int i = 0; i < numWords; i++){
+                int cmp = compareKey(key, wordRef(curr, i));
+                if (cmp == 0){
+                    // found it, update its frequency
+                    setFrequency(curr, i, frequency(curr, i) + 1);
+                    return;
+                } else if (cmp < 0){
+                    pos = i;
+                    break;
+                }
+            }
+            pathPos[depth] = pos;
+            int next = child(curr, pos);
+            if (next == 0){
+                break;
+            }
+            curr = next;
+            depth++;
+        }
+
+        // leaf found, insert and split upwards as needed
+        insertUp(depth, appendWord(key, word), 1, 0);
+        writeHeader();
+    } // end of addWord
+
+    /**
+     * insertUp
+     *
+     * A private method that inserts a word (and the child to its right, for internal
+     * nodes) into the node at the given depth of the last descent. If the node
+     * already has two words, it is split: it keeps its first word, a new node takes
+     * its last word, and the middle word moves up into the parent, all the way up to
+     * making a new root if needed.
+     *
+     * @param depth The depth of the node in pathNodes to insert into
+     * @param ref The reference of the word in the arena
+     * @param freq The frequency of the word
+     * @param rightChild The child to the right of the word, or 0 in a leaf
+     */
+    private void insertUp(int depth, long ref, int freq, int rightChild){
+        while (true){
+            int node = pathNodes[depth];
+            int pos = pathPos[depth];
+
+            if (numWords(node) == 1){
+                // room left in this node
+                if (pos == 0){
+                    // move the existing word over to make room in front
+                    setWord(node, 1, wordRef(node, 0), frequency(node, 0));
+                    setChild(node, 2, child(node, 1));
+                    setWord(node, 0, ref, freq);
+                    setChild(node, 1, rightChild);
+                } else{
+                    setWord(node, 1, ref, freq);
+                    setChild(node, 2, rightChild);
+                }
+                setNumWords(node, 2);
+                return;
+            }
+
+            // node is full, line up its 3 words and 4 children in order
+            long[] refs = new long[3];
+            int[] freqs = new int[3];
+            int[] kids = new int[4];
+            kids[0] = child(node, 0);
+            for (int i = 0, j = 0; i < 3; i++){
+                if (i == pos){
+                    refs[i] = ref;
+                    freqs[i] = freq;
+                    kids[i + 1] = rightChild;
+                } else{
+                    refs[i] = wordRef(node, j);
+                    freqs[i] = frequency(node, j);
+                    kids[i + 1] = child(node, j + 1);
+                    j++;
+                }
+            }
+
+            // the node keeps its first word and first two children
+            setWord(node, 0, refs[0], freqs[0]);
+            setChild(node, 0, kids[0]);
+            setChild(node, 1, kids[1]);
+            setChild(node, 2, 0);
+            setNumWords(node, 1);
+
+            // a new node takes the last word and last two children
+            int right = newNode();
+            setWord(right, 0, refs[2], freqs[2]);
+            setChild(right, 0, kids[2]);
+            setChild(right, 1, kids[3]);
+            setNumWords(right, 1);
+
+            if (depth == 0){
+                // splitting the root, the middle word becomes the new root
+                int newRoot = newNode();
+                setWord(newRoot, 0, refs[1], freqs[1]);
+                setChild(newRoot, 0, node);
+                setChild(newRoot, 1, right);
+                setNumWords(newRoot, 1);
+                root = newRoot;
+                height++;
+                return;
+            }
+
+            // the middle word moves up into the parent
+            depth--;
+            ref = refs[1];
+            freq = freqs[1];
+            rightChild = right;
+        }
+    } // end of insertUp
+
+    /**
+     * Checks if the tree contains the specified word.
+     * @param word The word to check for.
+     * @return true if the word is found in the tree, false otherwise.
+     */
+    @Override
+    public boolean containsWord(String word) {
+        return findSlot(TwoThreeTree.foldKey(word)) != -1;
+    } // end of containsWord
+
+    /**
+     * Gets the frequency of a given word in the tree.
+     * @param word The word whose frequency is to be retrieved.
+     * @return The frequency of the word, or 0 if the word is not found.
+     */
+    @Override
+    public int getFrequency(String word) {
+        long slot = findSlot(TwoThreeTree.foldKey(word));
+        int wordFreq = 0;
+        if (slot != -1){
+            wordFreq = frequency((int) (slot >>> 1), (int) (slot & 1));
+        }
+        return wordFreq;
+    } // end of getFrequency
+
+    /**
+     * findSlot
+     *
+     * A private helper method that finds where a word is stored.
+     *
+     * @param key The folded word to look for
+     * @return the node number shifted left by one, plus the slot within the node,
+     *         or -1 if the word is not in the tree
+     */
+    private long findSlot(String key){
+        int curr = root;
+        while (curr != 0){
+            int numWords = numWords(curr);
+            int pos = numWords;
+            for (int i = 0; i < numWords; i++){
+                int cmp = compareKey(key, wordRef(curr, i));
+                if (cmp == 0){
+                    return ((long) curr << 1) | i;
+                } else if (cmp < 0){
+                    pos = i;
+                    break;
+                }
+            }
+            curr = child(curr, pos);
+        }
+        return -1;
+    } // end of findSlot
+
+    /**
+     * Prints the contents of the tree in lexicographic order.
+     */
+    @Override
+    public void print() {
+        if (root != 0){
+            System.out.print("[ ");
+            printHelp(root);
+            System.out.println("]");
+        } else{
+            System.out.println("Tree is empty!");
+        }
+    } // end of print
+
+    /**
+     * printHelp
+     *
+     * A private helper method that recursively traverses the tree IN-ORDER to print
+     * its contents in lexicographic order.
+     *
+     * @param node The node where traversal should begin
+     */
+    private void printHelp(int node){
+        if (node == 0){
+            return;
+        }
+        int numWords = numWords(node);
+        for (int i = 0; i < numWords; i++){
+            printHelp(child(node, i));
+            System.out.print(displayWord(wordRef(node, i)) + "(" + frequency(node, i) + ") ");
+        }
+        printHelp(child(node, numWords));
+    } // end of printHelp
+
+    /**
+     * Calculates the height of the tree as the number of edges on the longest branch.
+     * @return The height of the tree.
+     */
+    @Override
+    public int height() {
+        return height;
+    } // end of height
+
+    /**
+     * compare
+     *
+     * Compares the current tree with another tree, listing unique and common words.
+     * If the other tree is not a compatible type, print a message indicating an invalid comparison.
+     *
+     * @param otherTree The other tree to compare against.
+     */
+    @Override
+    public void compare(GameTree otherTree) {
+        if (otherTree instanceof MappedTwoThreeTree){
+            MappedTwoThreeTree other = (MappedTwoThreeTree) otherTree;
+
+            System.out.print("Common Words: [ ");
+            commonWords(root, other, true);
+            System.out.println("]");
+
+            System.out.print("Unique Words to Curr Tree: [ ");
+            commonWords(root, other, false);
+            System.out.println("]");
+
+            System.out.print("Unique Words to Other Tree: [ ");
+            other.commonWords(other.root, this, false);
+            System.out.println("]");
+        } else{
+            System.out.println("The otherTree is not an instance of a mapped 2-3 Tree. Incompatible Tree Type!");
+        }
+    } // end of compare
+
+    /**
+     * commonWords
+     *
+     * A private helper method that traverses the tree in-order, printing every word
+     * that is (or is not) in the other tree.
+     *
+     * @param node The node where traversal begins
+     * @param otherTree The tree being compared with
+     * @param common true to print common words, false to print unique words
+     */
+    private void commonWords(int node, MappedTwoThreeTree otherTree, boolean common){
+        if (node == 0){
+            return;
+        }
+        int numWords = numWords(node);
+        for (int i = 0; i < numWords; i++){
+            commonWords(child(node, i), otherTree, common);
+            String word = displayWord(wordRef(node, i));
+            if (otherTree.containsWord(word) == common){
+                System.out.print(word + " ");
+            }
+        }
+        commonWords(child(node, numWords), otherTree, common);
+    } // end of commonWords
+
+    /**
+     * printTree
+     *
+     * Prints a visual representation of the tree structure.
+     * Used to display the tree with indentation to show hierarchy.
+     */
+    @Override
+    public void printTree() {
+        if (root != 0){
+            printTreeHelp(root, 0);
+        } else{
+            System.out.println("The tree is empty!");
+        }
+    } // end of printTree
+
+    /**
+     * printTreeHelp
+     *
+     * A private helper method that implements pre-order traversal using recursion to
+     * print the tree with one level of indentation per level of the tree.
+     *
+     * @param node The node where traversal begins
+     * @param i keeps track of the number of times to indent
+     */
+    private void printTreeHelp(int node, int i){
+        int numWords = numWords(node);
+        StringBuilder line = new StringBuilder();
+        for (int j = 0; j < i; j++){
+            line.append("    ");
+        }
+        line.append('[');
+        for (int j = 0; j < numWords; j++){
+            if (j > 0){
+                line.append(", ");
+            }
+            line.append(displayWord(wordRef(node, j))).append('(').append(frequency(node, j)).append(')');
+        }
+        line.append(']');
+        System.out.println(line);
+
+        for (int j = 0; j <= numWords; j++){
+            int next = child(node, j);
+            if (next != 0){
+                printTreeHelp(next, i + 1);
+            }
+        }
+    } // end of printTreeHelp
+
+    /**
+     * doubleFrequency
+     *
+     * Doubles the frequency of a word if the word exists in the tree.
+     *
+     * @param word The word for which we double the frequency
+     */
+    @Override
+    public void doubleFrequency(String word) {
+        long slot = findSlot(TwoThreeTree.foldKey(word));
+        if (slot != -1){
+            int node = (int) (slot >>> 1);
+            int i = (int) (slot & 1);
+            setFrequency(node, i, 2 * frequency(node, i));
+        }
+    } // end of doubleFrequency
+
+    /**
+     * swapFrequencies
+     *
+     * Swaps the frequencies of two words, if both the words exist in the tree.
+     *
+     * @param word1 one of the two words for which we swap the frequency
+     * @param word2 one of the two words for which we swap the frequency
+     */
+    @Override
+    public void swapFrequencies(String word1, String word2) {
+        long slot1 = findSlot(TwoThreeTree.foldKey(word1));
+        long slot2 = findSlot(TwoThreeTree.foldKey(word2));
+        if (slot1 != -1 && slot2 != -1){
+            int node1 = (int) (slot1 >>> 1);
+            int i1 = (int) (slot1 & 1);
+            int node2 = (int) (slot2 >>> 1);
+            int i2 = (int) (slot2 & 1);
+            int temp = frequency(node1, i1);
+            setFrequency(node1, i1, frequency(node2, i2));
+            setFrequency(node2, i2, temp);
+        }
+    } // end of swapFrequencies
+
+    /**
+     * force
+     *
+     * Makes sure every change made so far has been written to the disk.
+     */
+    public void force() {
+        writeHeader();
+        nodes.force();
+        words.force();
+    } // end of force
+
+    /**
+     * close
+     *
+     * Writes any remaining changes to the disk and closes the files. The tree cannot
+     * be used after it has been closed.
+     */
+    @Override
+    public void close() throws IOException {
+        try{
+            force();
+        } finally{
+            nodes.close();
+            words.close();
+        }
+    } // end of close
+
+    /**
+     * writeHeader
+     *
+     * A private method that writes the cached header fields back to record 0.
+     */
+    private void writeHeader(){
+        nodes.putInt(H_ROOT, root);
+        nodes.putInt(H_NODE_COUNT, nodeCount);
+        nodes.putInt(H_HEIGHT, height);
+        nodes.putLong(H_ARENA_END, arenaEnd);
+    } // end of writeHeader
+
+    /**
+     * newNode
+     *
+     * A private method that hands out the next empty node record.
+     *
+     * @return the number of the new node
+     */
+    private int newNode(){
+        if (nodeCount == Integer.MAX_VALUE - 1){
+            throw new IllegalStateException("Too many nodes in the tree");
+        }
+        nodeCount++;
+        // the record may hold leftovers from a run that never saved its header
+        long base = (long) nodeCount * NODE_SIZE;
+        for (int i = 0; i < NODE_SIZE; i += 4){
+            nodes.putInt(base + i, 0);
+        }
+        return nodeCount;
+    } // end of newNode
+
+    /**
+     * appendWord
+     *
+     * A private method that adds a word to the end of the word arena. The folded key
+     * is stored first, followed by the word as it was given if that is different.
+     * An entry never straddles two chunks of the file.
+     *
+     * @param key The folded word
+     * @param word The word as it was given
+     * @return the reference of the new entry
+     */
+    private long appendWord(String key, String word){
+        boolean same = key.equals(word);
+        long size = 8L + 2L * key.length() + (same ? 0 : 2L * word.length());
+        if (size > WORD_CHUNK){
+            throw new IllegalArgumentException("Word is too long to store");
+        }
+        // skip to the next chunk if the entry doesn't fit in this one
+        long room = WORD_CHUNK - (arenaEnd % WORD_CHUNK);
+        if (size > room){
+            arenaEnd += room;
+        }
+        long ref = arenaEnd;
+        long pos = putChars(ref, key);
+        if (same){
+            words.putInt(pos, SAME_AS_KEY);
+        } else{
+            putChars(pos, word);
+        }
+        arenaEnd += size;
+        return ref;
+    } // end of appendWord
+
+    /**
+     * putChars
+     *
+     * A private method that writes a length-prefixed string into the word arena.
+     *
+     * @param pos Where to write the string
+     * @param text The string to write
+     * @return the position just after the string
+     */
+    private long putChars(long pos, String text){
+        words.putInt(pos, text.length());
+        pos += 4;
+        for (int i = 0; i < text.length(); i++){
+            words.putChar(pos, text.charAt(i));
+            pos += 2;
+        }
+        return pos;
+    } // end of putChars
+
+    /**
+     * compareKey
+     *
+     * A private method that compares a folded word with a key in the arena, the same
+     * way String.compareTo would, without building a string for the stored key.
+     *
+     * @param key The folded word
+     * @param ref The reference of the entry in the arena
+     * @return negative, zero or positive as key is less than, equal to or greater
+     *         than the stored key
+     */
+    private int compareKey(String key, long ref){
+        MappedByteBuffer chunk = words.chunk(ref);
+        int off = (int) (ref % WORD_CHUNK);
+        int len = chunk.getInt(off);
+        int min = Math.min(len, key.length());
+        off += 4;
+        for (int i = 0; i < min; i++){
+            int diff = key.charAt(i) - chunk.getChar(off + 2 * i);
+            if (diff != 0){
+                return diff;
+            }
+        }
+        return key.length() - len;
+    } // end of compareKey
+
+    /**
+     * displayWord
+     *
+     * A private method that reads back the word as it was first added.
+     *
+     * @param ref The reference of the entry in the arena
+     * @return the word
+     */
+    private String displayWord(long ref){
+        MappedByteBuffer chunk = words.chunk(ref);
+        int off = (int) (ref % WORD_CHUNK);
+        int keyLen = chunk.getInt(off);
+        int wordOff = off + 4 + 2 * keyLen;
+        int wordLen = chunk.getInt(wordOff);
+        if (wordLen == SAME_AS_KEY){
+            return readChars(chunk, off + 4, keyLen);
+        }
+        return readChars(chunk, wordOff + 4, wordLen);
+    } // end of displayWord
+
+    /**
+     * readChars
+     *
+     * A private method that reads a string out of a chunk of the arena.
+     *
+     * @param chunk The chunk holding the string
+     * @param off Where the characters start
+     * @param len How many characters to read
+     * @return the string
+     */
+    private String readChars(MappedByteBuffer chunk, int off, int len){
+        char[] chars = new char[len];
+        for (int i = 0; i < len; i++){
+            chars[i] = chunk.getChar(off + 2 * i);
+        }
+        return new String(chars);
+    } // end of readChars
+
+    // accessors for the fields of a node record
+
+    private int numWords(int node){
+        return nodes.getInt((long) node * NODE_SIZE + NUM_WORDS);
+    }
+
+    private void setNumWords(int node, int numWords){
+        nodes.putInt((long) node * NODE_SIZE + NUM_WORDS, numWords);
+    }
+
+    private int child(int node, int i){
+        return nodes.getInt((long) node * NODE_SIZE + CHILD + 4 * i);
+    }
+
+    private void setChild(int node, int i, int child){
+        nodes.putInt((long) node * NODE_SIZE + CHILD + 4 * i, child);
+    }
+
+    private int frequency(int node, int i){
+        return nodes.getInt((long) node * NODE_SIZE + FREQ + 4 * i);
+    }
+
+    private void setFrequency(int node, int i, int freq){
+        nodes.putInt((long) node * NODE_SIZE + FREQ + 4 * i, freq);
+    }
+
+    private long wordRef(int node, int i){
+        return nodes.getLong((long) node * NODE_SIZE + WORD + 8 * i);
+    }
+
+    private void setWord(int node, int i, long ref, int freq){
+        nodes.putLong((long) node * NODE_SIZE + WORD + 8 * i, ref);
+        setFrequency(node, i, freq);
+    }
+
+    // A private class that maps a file in fixed-size chunks, growing the file as
+    // chunks past its end get used. A single mapping is limited to 2GB, so chunks
+    // let the file grow past that.
+    private static class MappedFile {
+        private final FileChannel channel;
+        private final long chunkSize;
+        private final ArrayList<MappedByteBuffer> chunks;
+
+        // constructor
+        public MappedFile(Path file, long chunkSize) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.chunkSize = chunkSize;
+            this.chunks = new ArrayList<>();
+        }
+
+        // the chunk holding the given position, mapping it (and growing the file) if needed
+        public MappedByteBuffer chunk(long pos){
+            int index = (int) (pos / chunkSize);
+            try{
+                while (chunks.size() <= index){
+                    chunks.add(channel.map(FileChannel.MapMode.READ_WRITE, chunks.size() * chunkSize, chunkSize));
+                }
+            } catch (IOException e){
+                throw new UncheckedIOException(e);
+            }
+            return chunks.get(index);
+        }
+
+        public int getInt(long pos){
+            return chunk(pos).getInt((int) (pos % chunkSize));
+        }
+
+        public void putInt(long pos, int value){
+            chunk(pos).putInt((int) (pos % chunkSize), value);
+        }
+
+        public long getLong(long pos){
+            return chunk(pos).getLong((int) (pos % chunkSize));
+        }
+
+        public void putLong(long pos, long value){
+            chunk(pos).putLong((int) (pos % chunkSize), value);
+        }
+
+        public void putChar(long pos, char value){
+            chunk(pos).putChar((int) (pos % chunkSize), value);
+        }
+
+        public void force(){
+            for (MappedByteBuffer chunk : chunks){
+                chunk.force();
+            }
+        }
+
+        public void close() throws IOException {
+            channel.close();
+        }
+    } // end of MappedFile class
+
+} // end of MappedTwoThreeTree class
@@ -0,0 +1,439 @@
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * MutationLog
+ *
+ * PURPOSE: An append-only write-ahead log of changes made to a tree of words, so the
+ * changes made since the last snapshot can be replayed after a crash.
+ *
+ * The file starts with a header (magic "23WL", generation as a long) followed by
+ * records: the length of the body (int), CRC32 of the body (int), and the body,
+ * which is the kind of change (byte) and its one or two words, each as a varint
+ * byte length and UTF-8. A record that is cut short or doesn't match its checksum
+ * marks the end of the log; it and anything after it are dropped when the log is
+ * opened, since that is exactly what a crash in the middle of a write leaves behind.
+ *
+ * Records are first put in a memory buffer, and commit writes the buffer to the
+ * file, so once commit returns a record survives the process crashing whatever the
+ * SyncPolicy. How often the file is forced to the disk, so the record also survives
+ * the machine crashing, depends on the SyncPolicy. Writing and forcing are group
+ * committed: while one thread writes the file, other threads keep appending to a
+ * fresh buffer, and the next write covers all of them at once.
+ */
+public class MutationLog implements Closeable {
+
+    // how hard the log tries to get records onto the disk
+    // Whatever the policy, a committed record is in the file and survives the process
+    // crashing; the policy is about the machine crashing or losing power
+    public enum SyncPolicy {
+        // commit waits until the record is forced to the disk, nothing is ever lost
+        ALWAYS,
+        // a background thread forces the file once per batch interval, so a machine
+        // crash can lose the records committed in the last interval or so, plus the
+        // time a force in progress takes
+        BATCH,
+        // the file is never forced, a machine crash can lose whatever the operating
+        // system hadn't written out yet, which may be many seconds of records
+        NEVER
+    }
+
+    // kinds of changes
+    public static final byte ADD = 1;
+    public static final byte DOUBLE = 2;
+    public static final byte SWAP = 3;
+
+    private static final int MAGIC = 0x3233574C; // "23WL"
+    private static final int HEADER_SIZE = 12;
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    // the starting size of the buffers records are put in
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // receives the changes read back from a log
+    public interface Replayer {
+        void replay(byte kind, String word1, String word2);
+    }
+
+    private final FileChannel channel;
+    private final SyncPolicy policy;
+    private long generation;
+
+    // records not written to the file yet, guarded by this
+    private byte[] pending;
+    private int pendingLength;
+    private long appended; // number of records appended so far
+    private final CRC32 crc;
+
+    // the one thread writing to the file holds writeLock, and swaps the pending
+    // buffer for spare so others can keep appending meanwhile
+    private final Object writeLock;
+    private byte[] spare;
+    private volatile long written; // records written to the file
+    private volatile long synced; // records forced to the disk
+
+    // forces the file once per batch interval with BATCH, null otherwise
+    private final ScheduledExecutorService flusher;
+    // why the last background force failed, reported by the next commit
+    private volatile IOException flushFailure;
+
+    /**
+     * constructor
+     *
+     * Opens a log, creating it if it doesn't exist. A log left over from an older
+     * generation than the one given belongs to changes already in a snapshot and
+     * is started over. Call replay before appending to read back what's in it.
+     *
+     * @param file The log file
+     * @param generation The oldest generation of log that is still wanted
+     * @param policy How hard to try to get records onto the disk
+     * @param batchMillis For BATCH, how long at most between two forces
+     * @throws IOException if the file cannot be opened or is not a log
+     * @throws IllegalArgumentException if the policy is BATCH and batchMillis isn't above 0
+     */
+    public MutationLog(Path file, long generation, SyncPolicy policy, long batchMillis) throws IOException {
+        if (policy == SyncPolicy.BATCH && batchMillis <= 0){
+            throw new IllegalArgumentException("Batch interval must be above 0: " + batchMillis);
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.policy = policy;
+        this.pending = new byte[BUFFER_SIZE];
+        this.spare = new byte[BUFFER_SIZE];
+        this.crc = new CRC32();
+        this.writeLock = new Object();
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        if (channel.size() >= HEADER_SIZE){
+            channel.read(header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC){
+                channel.close();
+                throw new IOException("Not a mutation log: " + file);
+            }
+            this.generation = header.getLong();
+        }
+        if (channel.size() < HEADER_SIZE || this.generation < generation){
+            // new, or only holds changes the snapshot already has
+            restart(generation);
+        }
+        channel.position(channel.size());
+
+        if (policy == SyncPolicy.BATCH){
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "mutation-log-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::forceWritten, batchMillis, batchMillis, TimeUnit.MILLISECONDS);
+        } else{
+            flusher = null;
+        }
+    }
+
+    /**
+     * generation
+     *
+     * @return the generation of the log, which goes up every time it is restarted
+     */
+    public long generation() {
+        return generation;
+    } // end of generation
+
+    /**
+     * replay
+     *
+     * Reads back every complete record of the log, in order, and drops whatever
+     * comes after the last complete one. Leaves the log ready to append to.
+     *
+     * @param replayer What to do with each change
+     * @return how many records were replayed
+     * @throws IOException if reading the file fails
+     */
+    public long replay(Replayer replayer) throws IOException {
+        channel.position(HEADER_SIZE);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+        long end = HEADER_SIZE;
+        long count = 0;
+        byte[] body = new byte[256];
+        CRC32 check = new CRC32();
+
+        while (true){
+            int length;
+            int expected;
+            try{
+                length = in.readInt();
+                expected = in.readInt();
+                if (length <= 0 || length > channel.size() - end){
+                    // a damaged length, nothing past here can be trusted
+                    break;
+                }
+                if (length > body.length){
+                    body = new byte[length];
+                }
+                in.readFully(body, 0, length);
+            } catch (EOFException e){
+                // cut short by a crash
+                break;
+            }
+            check.reset();
+            check.update(body, 0, length);
+            if ((int) check.getValue() != expected){
+                break;
+            }
+            RecordReader record = new RecordReader(body, length);
+            byte kind = record.kind();
+            String word1 = record.word();
+            String word2 = kind == SWAP ? record.word() : null;
+            replayer.replay(kind, word1, word2);
+            end += RECORD_HEADER_SIZE + length;
+            count++;
+        }
+
+        // drop the torn tail and carry on from the last good record
+        channel.truncate(end);
+        channel.position(end);
+        channel.force(false);
+        return count;
+    } // end of replay
+
+    /**
+     * append
+     *
+     * Adds a record to the log buffer. The record isn't safe yet, call commit with
+     * the number returned to make it as safe as the SyncPolicy allows.
+     *
+     * @param kind The kind of change, ADD, DOUBLE or SWAP
+     * @param word1 The word changed
+     * @param word2 For SWAP, the other word, otherwise null
+     * @return the number of the record, to pass to commit
+     */
+    public synchronized long append(byte kind, String word1, String word2) {
+        byte[] bytes1 = word1.getBytes(StandardCharsets.UTF_8);
+        byte[] bytes2 = word2 == null ? null : word2.getBytes(StandardCharsets.UTF_8);
+        int length = 1 + 5 + bytes1.length + (bytes2 == null ? 0 : 5 + bytes2.length);
+        if (pendingLength + RECORD_HEADER_SIZE + length > pending.length){
+            pending = Arrays.copyOf(pending, Math.max(2 * pending.length, pendingLength + RECORD_HEADER_SIZE + length));
+        }
+
+        // the body goes in after room for the record header, which needs its length
+        int start = pendingLength;
+        int pos = start + RECORD_HEADER_SIZE;
+        pending[pos++] = kind;
+        pos = putBytes(bytes1, pos);
+        if (bytes2 != null){
+            pos = putBytes(bytes2, pos);
+        }
+        int bodyLength = pos - start - RECORD_HEADER_SIZE;
+        crc.reset();
+        crc.update(pending, start + RECORD_HEADER_SIZE, bodyLength);
+        putInt(start, bodyLength);
+        putInt(start + 4, (int) crc.getValue());
+        pendingLength = pos;
+        return ++appended;
+    } // end of append
+
+    /**
+     * commit
+     *
+     * Makes an appended record as safe as the SyncPolicy allows. The record is
+     * always written to the file before this returns, and with ALWAYS this also
+     * waits until it is on the disk. Either way it shares a single write, or force,
+     * with every other thread committing at the same time.
+     *
+     * @param record The number append returned
+     * @throws IOException if writing or forcing the file fails, or if the last
+     *         background force of BATCH did
+     */
+    public void commit(long record) throws IOException {
+        IOException failure = flushFailure;
+        if (failure != null){
+            throw new IOException("Forcing the log failed", failure);
+        }
+        if (policy == SyncPolicy.ALWAYS){
+            if (synced < record){
+                flush(record, true);
+            }
+        } else if (written < record){
+            flush(record, false);
+        }
+    } // end of commit
+
+    /**
+     * sync
+     *
+     * Writes out and forces every record appended so far, whatever the SyncPolicy.
+     *
+     * @throws IOException if writing or forcing the file fails
+     */
+    public void sync() throws IOException {
+        flush(appendedSoFar(), true);
+    } // end of sync
+
+    /**
+     * restart
+     *
+     * Empties the log and moves it on to a new generation, once everything in it is
+     * safely in a snapshot. Nothing may be appended while it restarts.
+     *
+     * @param newGeneration The generation the log starts over as
+     * @throws IOException if writing the file fails
+     */
+    public void restart(long newGeneration) throws IOException {
+        synchronized (writeLock){
+            synchronized (this){
+                pendingLength = 0;
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putLong(newGeneration).flip();
+            channel.truncate(0);
+            while (header.hasRemaining()){
+                channel.write(header, header.position());
+            }
+            channel.position(HEADER_SIZE);
+            channel.force(true);
+            generation = newGeneration;
+            written = synced = appendedSoFar();
+        }
+    } // end of restart
+
+    /**
+     * close
+     *
+     * Forces everything appended so far to the disk and closes the file.
+     *
+     * @throws IOException if writing or closing the file fails
+     */
+    @Override
+    public void close() throws IOException {
+        if (flusher != null){
+            flusher.shutdown();
+        }
+        try{
+            sync();
+        } finally{
+            channel.close();
+        }
+    } // end of close
+
+    // forces whatever was written but not forced yet, run by the flusher with BATCH.
+    // Nobody waits on this force, so a failure is kept and every later commit fails:
+    // after a failed force there's no telling which records made it to the disk
+    private void forceWritten() {
+        long upTo = written;
+        if (synced < upTo && flushFailure == null && channel.isOpen()){
+            try{
+                flush(upTo, true);
+            } catch (IOException e){
+                flushFailure = e;
+            }
+        }
+    }
+
+    // writes the pending buffer to the file, and forces the file if asked, unless
+    // another thread already did it for us while we waited for the lock
+    private void flush(long record, boolean force) throws IOException {
+        synchronized (writeLock){
+            if (force ? synced >= record : written >= record){
+                return;
+            }
+
+            // take everything appended so far, others append to the spare meanwhile
+            byte[] buffer;
+            int length;
+            long upTo;
+            synchronized (this){
+                buffer = pending;
+                length = pendingLength;
+                upTo = appended;
+                pending = spare;
+                pendingLength = 0;
+            }
+
+            ByteBuffer out = ByteBuffer.wrap(buffer, 0, length);
+            while (out.hasRemaining()){
+                channel.write(out);
+            }
+            spare = buffer;
+            written = upTo;
+            if (force){
+                channel.force(false);
+                synced = upTo;
+            }
+        }
+    }
+
+    private synchronized long appendedSoFar() {
+        return appended;
+    }
+
+    // puts a varint length and the bytes into the pending buffer
+    private int putBytes(byte[] bytes, int pos) {
+        int value = bytes.length;
+        while ((value & ~0x7F) != 0){
+            pending[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        pending[pos++] = (byte) value;
+        System.arraycopy(bytes, 0, pending, pos, bytes.length);
+        return pos + bytes.length;
+    }
+
+    private void putInt(int pos, int value) {
+        pending[pos] = (byte) (value >>> 24);
+        pending[pos + 1] = (byte) (value >>> 16);
+        pending[pos + 2] = (byte) (value >>> 8);
+        pending[pos + 3] = (byte) value;
+    }
+
+    // Reads the kind and the words out of a record body
+    private static class RecordReader {
+        private final byte[] body;
+        private final int length;
+        private int pos = 0;
+
+        // constructor
+        public RecordReader(byte[] body, int length) {
+            this.body = body;
+            this.length = length;
+        }
+
+        public byte kind() {
+            return body[pos++];
+        }
+
+        public String word() throws IOException {
+            int value = 0;
+            for (int shift = 0; ; shift += 7){
+                if (pos == length || shift > 28){
+                    throw new IOException("Damaged log record");
+                }
+                byte b = body[pos++];
+                value |= (b & 0x7F) << shift;
+                if (b >= 0){
+                    break;
+                }
+            }
+            if (value > length - pos){
+                throw new IOException("Damaged log record");
+            }
+            String word = new String(body, pos, value, StandardCharsets.UTF_8);
+            pos += value;
+            return word;
+        }
+    } // end of RecordReader class
+
+} // end of MutationLog class
@@ -0,0 +1,498 @@
+import java.util.ArrayList;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * PersistentTwoThreeTree
+ *
+ * PURPOSE: A 2-3 Tree of words whose nodes never change once built, so readers can
+ * walk it while another thread keeps adding words.
+ *
+ * Changing the tree copies only the nodes on the path from the root down to the
+ * word that changed, reusing every other node, and then swaps in the new root.
+ * Nodes have no parent pointers, since a node is shared by every version of the
+ * tree it appears in. A reader that grabbed the root sees exactly the tree as it was
+ * at that moment, for as long as it likes, without any locking. snapshot() hands
+ * out such a version in O(1).
+ *
+ * Changes are made one at a time (the changing methods are synchronized); reads
+ * never wait.
+ */
+public class PersistentTwoThreeTree implements GameTree {
+
+    // deepest path we ever need, a 2-3 tree with 2^31 words is at most 31 high
+    private static final int MAX_DEPTH = 64;
+
+    // root of the current version of the tree
+    private volatile Node root;
+
+    //constructor
+    public PersistentTwoThreeTree() {
+        root = null;
+    }
+
+    // a tree starting out as a version of another one
+    private PersistentTwoThreeTree(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * snapshot
+     *
+     * Returns the tree as it is right now, in O(1). The snapshot shares all its
+     * nodes with this tree, and neither sees the changes made to the other later.
+     *
+     * @return a tree holding the current version of this one
+     */
+    public PersistentTwoThreeTree snapshot() {
+        return new PersistentTwoThreeTree(root);
+    } // end of snapshot
+
+    /**
+     * addWord
+     *
+     * Adds a word to the tree, updating its frequency if it already exists.
+     * Treats all words as case-insensitive.
+     *
+     * @param word The word to add.
+     */
+    @Override
+    public void addWord(String word) {
+        upsertWord(word);
+    } // end of addWord
+
+    /**
+     * upsertWord
+     *
+     * Adds a word to the tree, updating its frequency if it already exists, and
+     * returns the resulting frequency. Copies the path down to the word, and if a
+     * new word makes nodes overflow, splits them on the way back up.
+     *
+     * @param word The word to add.
+     * @return The frequency of the word after adding it.
+     */
+    public synchronized int upsertWord(String word) {
+        String key = TwoThreeTree.foldKey(word);
+        Node[] path = new Node[MAX_DEPTH];
+        int[] slot = new int[MAX_DEPTH];
+        int depth = 0;
+
+        // iterate until we either find the word or fall off the tree at a leaf
+        Node curr = root;
+        while (curr != null){
+            int i = position(curr, key);
+            if (i < curr.numWords && curr.entry(i).key.equals(key)){
+                // found it, copy the path with the new frequency
+                Entry old = curr.entry(i);
+                Entry updated = new Entry(old.key, old.word, old.frequency + 1);
+                root = copyUp(path, slot, depth, curr.withEntry(i, updated));
+                return updated.frequency;
+            }
+            path[depth] = curr;
+            slot[depth] = i;
+            depth++;
+            curr = curr.child(i);
+        }
+
+        // new word, it goes up into the leaf the same way a split from below would,
+            //just without children
+        Entry up = new Entry(key, word, 1);
+        Node left = null;
+        Node right = null;
+        while (depth > 0){
+            depth--;
+            Node aNode = path[depth];
+            int pos = slot[depth];
+
+            if (aNode.numWords == 1){
+                // room for one more, and the split stops here
+                Node merged;
+                if (pos == 0){
+                    merged = new Node(up, aNode.e0, left, right, aNode.c1);
+                } else{
+                    merged = new Node(aNode.e0, up, aNode.c0, left, right);
+                }
+                root = copyUp(path, slot, depth, merged);
+                return 1;
+            }
+
+            // too full...split into two nodes and send the middle data up
+            Node[] children;
+            Entry first;
+            Entry middle;
+            Entry last;
+            if (pos == 0){
+                //left
+                first = up;
+                middle = aNode.e0;
+                last = aNode.e1;
+                children = new Node[] { left, right, aNode.c1, aNode.c2 };
+            } else if (pos == 1){
+                //middle
+                first = aNode.e0;
+                middle = up;
+                last = aNode.e1;
+                children = new Node[] { aNode.c0, left, right, aNode.c2 };
+            } else{
+                //right
+                first = aNode.e0;
+                middle = aNode.e1;
+                last = up;
+                children = new Node[] { aNode.c0, aNode.c1, left, right };
+            }
+            left = new Node(first, children[0], children[1]);
+            right = new Node(last, children[2], children[3]);
+            up = middle;
+        }
+
+        // the root split, the tree gets one level taller
+        root = new Node(up, left, right);
+        return 1;
+    } // end of upsertWord
+
+    /**
+     * doubleFrequency
+     *
+     * Doubles the frequency of a word if the word exists in the tree.
+     *
+     * @param word The word for which we double the frequency
+     */
+    @Override
+    public synchronized void doubleFrequency(String word) {
+        String key = TwoThreeTree.foldKey(word);
+        Entry found = find(root, key);
+        if (found != null){
+            root = withFrequency(root, key, 2 * found.frequency);
+        }
+    } // end of doubleFrequency
+
+    /**
+     * swapFrequencies
+     *
+     * Swaps the frequencies of two words, if both the words exist in the tree.
+     * Readers see either both frequencies swapped or neither.
+     *
+     * @param word1 one of the two words for which we swap the frequency
+     * @param word2 one of the two words for which we swap the frequency
+     */
+    @Override
+    public synchronized void swapFrequencies(String word1, String word2) {
+        String key1 = TwoThreeTree.foldKey(word1);
+        String key2 = TwoThreeTree.foldKey(word2);
+        Entry found1 = find(root, key1);
+        Entry found2 = find(root, key2);
+        if (found1 != null && found2 != null){
+            // build the whole new version before anyone can see it
+            Node newRoot = withFrequency(root, key1, found2.frequency);
+            root = withFrequency(newRoot, key2, found1.frequency);
+        }
+    } // end of swapFrequencies
+
+    /**
+     * Checks if the tree contains the specified word.
+     * @param word The word to check for.
+     * @return true if the word is found in the tree, false otherwise.
+     */
+    @Override
+    public boolean containsWord(String word) {
+        return find(root, TwoThreeTree.foldKey(word)) != null;
+    } // end of containsWord
+
+    /**
+     * Gets the frequency of a given word in the tree.
+     * @param word The word whose frequency is to be retrieved.
+     * @return The frequency of the word, or 0 if the word is not found.
+     */
+    @Override
+    public int getFrequency(String word) {
+        Entry found = find(root, TwoThreeTree.foldKey(word));
+        return found == null ? 0 : found.frequency;
+    } // end of getFrequency
+
+    /**
+     * forEach
+     *
+     * Hands every word of the tree and its frequency to the given action, in
+     * lexicographic order. Walks the version of the tree current when it starts,
+     * without holding any lock.
+     *
+     * @param action What to do with each word and its frequency
+     */
+    public void forEach(ObjIntConsumer<String> action) {
+        forEachHelp(root, action);
+    } // end of forEach
+
+    /**
+     * Prints the contents of the tree in lexicographic order.
+     */
+    @Override
+    public void print() {
+        Node current = root;
+        // tree is not empty
+        if (current != null){
+            System.out.print("[ ");
+            forEachHelp(current, (word, frequency) -> System.out.print(word + "(" + frequency + ") "));
+            System.out.println("]");
+        } else{
+            System.out.println("Tree is empty!");
+        }
+    } // end of print
+
+    /**
+     * Calculates the height of the tree as the number of edges on the longest branch.
+     * @return The height of the tree.
+     */
+    @Override
+    public int height() {
+        int heightVal = 0;
+        Node aNode = root;
+        // every leaf is on the same level, so just follow the left children
+        while (aNode != null && aNode.c0 != null){
+            heightVal++;
+            aNode = aNode.c0;
+        }
+        return heightVal;
+    } // end of height
+
+    /**
+     * compare
+     *
+     * Compares the current tree with another tree, listing unique and common words.
+     * Both trees are read as they were when the comparison started.
+     *
+     * @param otherTree The other tree to compare against.
+     */
+    @Override
+    public void compare(GameTree otherTree) {
+        // checking for correct tree type
+        if (!(otherTree instanceof PersistentTwoThreeTree)){
+            System.out.println("The otherTree is not an instance of 2-3 Tree. Incompatible Tree Type!");
+            return;
+        }
+
+        ArrayList<Entry> mine = new ArrayList<>();
+        ArrayList<Entry> theirs = new ArrayList<>();
+        collect(root, mine);
+        collect(((PersistentTwoThreeTree) otherTree).root, theirs);
+
+        StringBuilder common = new StringBuilder();
+        StringBuilder uniqueToThis = new StringBuilder();
+        StringBuilder uniqueToOther = new StringBuilder();
+        int i = 0;
+        int j = 0;
+        // step whichever side is behind, or both when they are on the same word
+        while (i < mine.size() && j < theirs.size()){
+            int cmp = mine.get(i).key.compareTo(theirs.get(j).key);
+            if (cmp == 0){
+                common.append(mine.get(i).word).append(' ');
+                i++;
+                j++;
+            } else if (cmp < 0){
+                uniqueToThis.append(mine.get(i++).word).append(' ');
+            } else{
+                uniqueToOther.append(theirs.get(j++).word).append(' ');
+            }
+        }
+        while (i < mine.size()){
+            uniqueToThis.append(mine.get(i++).word).append(' ');
+        }
+        while (j < theirs.size()){
+            uniqueToOther.append(theirs.get(j++).word).append(' ');
+        }
+
+        // same layout as TwoThreeTree.compare
+        if (!mine.isEmpty()){
+            System.out.println("Common Words: [ " + common + "]");
+            System.out.println("Unique Words to Curr Tree: [ " + uniqueToThis + "]");
+        } else{
+            System.out.print("Common Words: [  ]");
+            System.out.print("Unique Words to Curr Tree: [  ]");
+        }
+        if (!theirs.isEmpty()){
+            System.out.println("Unique Words to Other Tree: [ " + uniqueToOther + "]");
+        } else{
+            System.out.print("Unique Words to Other Tree: [  ]");
+        }
+    } // end of compare
+
+    /**
+     * printTree
+     *
+     * Prints a visual representation of the tree structure.
+     */
+    @Override
+    public void printTree() {
+        Node current = root;
+        // tree not empty
+        if (current != null){
+            printTreeHelp(current, 0);
+        } else{
+            System.out.println("The tree is empty!");
+        }
+    } // end of printTree
+
+    // finds the position of the first data in a node that is not less than the key,
+    // which is also the child to go down to if the key isn't in the node
+    private static int position(Node aNode, String key) {
+        int i = 0;
+        while (i < aNode.numWords && key.compareTo(aNode.entry(i).key) > 0){
+            i++;
+        }
+        return i;
+    }
+
+    // looks a key up in a version of the tree
+    private static Entry find(Node aNode, String key) {
+        while (aNode != null){
+            int i = position(aNode, key);
+            if (i < aNode.numWords && aNode.entry(i).key.equals(key)){
+                return aNode.entry(i);
+            }
+            aNode = aNode.child(i);
+        }
+        return null;
+    }
+
+    // returns a new version of the tree where a word that is in it has the given
+    // frequency, copying only the path down to the word
+    private static Node withFrequency(Node top, String key, int frequency) {
+        Node[] path = new Node[MAX_DEPTH];
+        int[] slot = new int[MAX_DEPTH];
+        int depth = 0;
+        Node aNode = top;
+        while (true){
+            int i = position(aNode, key);
+            if (i < aNode.numWords && aNode.entry(i).key.equals(key)){
+                Entry old = aNode.entry(i);
+                return copyUp(path, slot, depth, aNode.withEntry(i, new Entry(old.key, old.word, frequency)));
+            }
+            path[depth] = aNode;
+            slot[depth] = i;
+            depth++;
+            aNode = aNode.child(i);
+        }
+    }
+
+    // copies the nodes of a path from the bottom up, each pointing at the copy below
+    // it, and returns the new root
+    private static Node copyUp(Node[] path, int[] slot, int depth, Node replacement) {
+        for (int d = depth - 1; d >= 0; d--){
+            replacement = path[d].withChild(slot[d], replacement);
+        }
+        return replacement;
+    }
+
+    // in-order traversal
+    private static void forEachHelp(Node aNode, ObjIntConsumer<String> action) {
+        if (aNode != null){
+            forEachHelp(aNode.c0, action);
+            action.accept(aNode.e0.word, aNode.e0.frequency);
+            forEachHelp(aNode.c1, action);
+            if (aNode.numWords == 2){
+                action.accept(aNode.e1.word, aNode.e1.frequency);
+                forEachHelp(aNode.c2, action);
+            }
+        }
+    }
+
+    // in-order traversal collecting the entries
+    private static void collect(Node aNode, ArrayList<Entry> entries) {
+        if (aNode != null){
+            collect(aNode.c0, entries);
+            entries.add(aNode.e0);
+            collect(aNode.c1, entries);
+            if (aNode.numWords == 2){
+                entries.add(aNode.e1);
+                collect(aNode.c2, entries);
+            }
+        }
+    }
+
+    // pre-order traversal, same layout as TwoThreeTree.printTree
+    private static void printTreeHelp(Node aNode, int i) {
+        String space = "    "; // used for indentation
+        if (aNode.numWords == 1){
+            System.out.println(space.repeat(i) + "[" + aNode.e0.word + "(" + aNode.e0.frequency + ")]");
+        } else{
+            System.out.println(space.repeat(i) + "[" + aNode.e0.word + "(" + aNode.e0.frequency + "), " + aNode.e1.word + "(" + aNode.e1.frequency + ")]");
+        }
+        for (int c = 0; c <= aNode.numWords; c++){
+            if (aNode.child(c) != null){
+                printTreeHelp(aNode.child(c), i + 1);
+            }
+        }
+    }
+
+    // A word, its folded key and its frequency. Never changes, a new frequency
+    // means a new entry
+    private static final class Entry {
+        public final String key;
+        public final String word;
+        public final int frequency;
+
+        // constructor
+        public Entry(String key, String word, int frequency) {
+            this.key = key;
+            this.word = word;
+            this.frequency = frequency;
+        }
+    } // end of Entry class
+
+    // A node that never changes. A node with one piece of data only uses e0, c0
+    // and c1; children are all null in a leaf
+    private static final class Node {
+        public final int numWords;
+        public final Entry e0;
+        public final Entry e1;
+        public final Node c0;
+        public final Node c1;
+        public final Node c2;
+
+        // constructor for a node with one piece of data
+        public Node(Entry e0, Node c0, Node c1) {
+            this.numWords = 1;
+            this.e0 = e0;
+            this.e1 = null;
+            this.c0 = c0;
+            this.c1 = c1;
+            this.c2 = null;
+        }
+
+        // constructor for a node with two pieces of data
+        public Node(Entry e0, Entry e1, Node c0, Node c1, Node c2) {
+            this.numWords = 2;
+            this.e0 = e0;
+            this.e1 = e1;
+            this.c0 = c0;
+            this.c1 = c1;
+            this.c2 = c2;
+        }
+
+        public Entry entry(int i) {
+            return i == 0 ? e0 : e1;
+        }
+
+        public Node child(int i) {
+            return i == 0 ? c0 : i == 1 ? c1 : c2;
+        }
+
+        // a copy of this node with one piece of data replaced
+        public Node withEntry(int i, Entry entry) {
+            if (numWords == 1){
+                return new Node(entry, c0, c1);
+            }
+            return i == 0 ? new Node(entry, e1, c0, c1, c2) : new Node(e0, entry, c0, c1, c2);
+        }
+
+        // a copy of this node with one child replaced
+        public Node withChild(int i, Node child) {
+            if (numWords == 1){
+                return i == 0 ? new Node(e0, child, c1) : new Node(e0, c0, child);
+            }
+            if (i == 0){
+                return new Node(e0, e1, child, c1, c2);
+            }
+            return i == 1 ? new Node(e0, e1, c0, child, c2) : new Node(e0, e1, c0, c1, child);
+        }
+    } // end of Node class
+
+} // end of PersistentTwoThreeTree class
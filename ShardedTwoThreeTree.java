@@ -0,0 +1,752 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * ShardedTwoThreeTree
+ *
+ * PURPOSE: A thread-safe tree of words split by key range over several
+ * ConcurrentTwoThreeTrees (shards), so threads adding words in different ranges
+ * never wait on each other's locks.
+ *
+ * Split points divide the folded keys into ranges, shard i holding the words from
+ * split point i - 1 up to (but not including) split point i. They start out either
+ * spread over the first letters a to z, or picked from a sample of words so each
+ * shard gets about as many. addWord, getFrequency and the other single-word methods
+ * go to the one shard holding the word; print, compare and range scans go through
+ * the shards in order, so their output comes out in order too.
+ *
+ * Finding the shard of a word takes no lock: the split points and shards are read
+ * from a volatile field. A writer then takes the shared guard of just that shard,
+ * so writers to different shards share nothing, and checks that the shard wasn't
+ * retired by a rebalance in the meantime, in which case it looks again.
+ *
+ * Every so many new words the shards are compared, and once the biggest holds over
+ * 1.5 times its share of the words, the split points around it are moved: it and
+ * as few of its neighbours as it takes for them to average no more than the
+ * share of every shard get their words spread evenly, rebuilt bottom-up with
+ * bulkLoad as new shards. That only holds up writers to those shards, usually the
+ * biggest and one or two next to it; readers keep going on the old ones.
+ * rebalance() spreads all the words evenly over all the shards.
+ */
+public class ShardedTwoThreeTree implements GameTree {
+
+    // how many new words go in between two looks at the shard sizes
+    private static final int CHECK_EVERY = 4096;
+
+    // how much bigger than its share a shard can get before the shards are rebuilt
+    private static final double MAX_IMBALANCE = 1.5;
+
+    // the split points and the shards, replaced as a whole when rebalancing
+    private volatile Topology topology;
+
+    // held while moving split points, so only one rebalance runs at a time
+    private final ReentrantLock rebalanceLock;
+
+    // new words added so far, striped so threads adding new words don't share a counter
+    private final LongAdder newWords;
+    // how many new words there were when the shard sizes were last looked at
+    private final AtomicLong lastCheck;
+
+    /**
+     * constructor
+     *
+     * Splits the words by their first letter, spreading the letters a to z evenly
+     * over the shards. Words that don't start with a letter a to z end up in the
+     * first shard (digits) or the last one (other letters).
+     *
+     * @param shardCount How many shards, from 1 to 26
+     * @throws IllegalArgumentException if the shard count is out of range
+     */
+    public ShardedTwoThreeTree(int shardCount) {
+        this(firstLetterSplits(shardCount));
+    }
+
+    /**
+     * constructor
+     *
+     * Picks split points from a sample of words, so each shard would get the same
+     * number of the sampled words. If the sample has fewer different words than
+     * needed, there are fewer shards.
+     *
+     * @param shardCount How many shards, at least 1
+     * @param sample Words like the ones that will be added
+     * @throws IllegalArgumentException if the shard count is less than 1
+     */
+    public ShardedTwoThreeTree(int shardCount, Collection<String> sample) {
+        this(sampledSplits(shardCount, sample));
+    }
+
+    // starts with empty shards between the given split points
+    private ShardedTwoThreeTree(String[] splits) {
+        Shard[] shards = new Shard[splits.length + 1];
+        for (int i = 0; i < shards.length; i++){
+            shards[i] = new Shard(new ConcurrentTwoThreeTree());
+        }
+        this.topology = new Topology(splits, shards);
+        this.rebalanceLock = new ReentrantLock();
+        this.newWords = new LongAdder();
+        this.lastCheck = new AtomicLong();
+    }
+
+    /**
+     * addWord
+     *
+     * Adds a word to the tree, updating its frequency if it already exists.
+     * Treats all words as case-insensitive.
+     *
+     * @param word The word to add.
+     */
+    @Override
+    public void addWord(String word) {
+        upsertWord(word);
+    } // end of addWord
+
+    /**
+     * upsertWord
+     *
+     * Adds a word to the tree, updating its frequency if it already exists, and
+     * returns the resulting frequency.
+     *
+     * @param word The word to add.
+     * @return The frequency of the word after adding it.
+     */
+    public int upsertWord(String word) {
+        int wordFreq = write(word, shard -> shard.upsertWord(word));
+
+        // only new words change the sizes, so only they can unbalance the shards
+        if (wordFreq == 1){
+            newWords.increment();
+            long seen = lastCheck.get();
+            long added = newWords.sum();
+            if (added - seen >= CHECK_EVERY && lastCheck.compareAndSet(seen, added)){
+                rebalanceIfNeeded();
+            }
+        }
+        return wordFreq;
+    } // end of upsertWord
+
+    /**
+     * write
+     *
+     * A private method that runs a change on the shard holding a word. The shard is
+     * found without a lock, and its guard is held shared while the change runs so
+     * the shard can't be rebuilt meanwhile. If the shard was retired before the
+     * guard was taken, its words are in new shards already, so it looks again.
+     *
+     * @param word The word the change is for
+     * @param change What to do to the shard
+     * @return what the change returned
+     */
+    private int write(String word, ToIntFunction<ConcurrentTwoThreeTree> change) {
+        String key = TwoThreeTree.foldKey(word);
+        while (true){
+            Shard shard = topology.shardAt(key);
+            long stamp = shard.guard.readLock();
+            try{
+                if (!shard.retired){
+                    return change.applyAsInt(shard.tree);
+                }
+            } finally{
+                shard.guard.unlockRead(stamp);
+            }
+        }
+    } // end of write
+
+    /**
+     * Checks if the tree contains the specified word.
+     * @param word The word to check for.
+     * @return true if the word is found in the tree, false otherwise.
+     */
+    @Override
+    public boolean containsWord(String word) {
+        // readers don't need a guard, retired shards still answer correctly
+        return topology.shardFor(word).containsWord(word);
+    } // end of containsWord
+
+    /**
+     * Gets the frequency of a given word in the tree.
+     * @param word The word whose frequency is to be retrieved.
+     * @return The frequency of the word, or 0 if the word is not found.
+     */
+    @Override
+    public int getFrequency(String word) {
+        return topology.shardFor(word).getFrequency(word);
+    } // end of getFrequency
+
+    /**
+     * doubleFrequency
+     *
+     * Doubles the frequency of a word if the word exists in the tree.
+     *
+     * @param word The word for which we double the frequency
+     */
+    @Override
+    public void doubleFrequency(String word) {
+        write(word, shard -> {
+            shard.doubleFrequency(word);
+            return 0;
+        });
+    } // end of doubleFrequency
+
+    /**
+     * swapFrequencies
+     *
+     * Swaps the frequencies of two words, if both the words exist in the tree. Two
+     * words in different shards are swapped with the guards of both shards held
+     * alone, so no count gets lost in between; writers to other shards go on.
+     *
+     * @param word1 one of the two words for which we swap the frequency
+     * @param word2 one of the two words for which we swap the frequency
+     */
+    @Override
+    public void swapFrequencies(String word1, String word2) {
+        String key1 = TwoThreeTree.foldKey(word1);
+        String key2 = TwoThreeTree.foldKey(word2);
+        while (true){
+            Topology current = topology;
+            int index1 = current.shardIndex(key1);
+            int index2 = current.shardIndex(key2);
+            if (index1 == index2){
+                write(word1, shard -> {
+                    shard.swapFrequencies(word1, word2);
+                    return 0;
+                });
+                return;
+            }
+
+            // always lock the lower shard first, like moving a split point does
+            Shard first = current.shards[Math.min(index1, index2)];
+            Shard second = current.shards[Math.max(index1, index2)];
+            long stamp1 = first.guard.writeLock();
+            try{
+                long stamp2 = second.guard.writeLock();
+                try{
+                    if (first.retired || second.retired){
+                        // rebalanced meanwhile, the words may be in other shards now
+                        continue;
+                    }
+                    ConcurrentTwoThreeTree shard1 = current.shards[index1].tree;
+                    ConcurrentTwoThreeTree shard2 = current.shards[index2].tree;
+                    int freq1 = shard1.getFrequency(word1);
+                    int freq2 = shard2.getFrequency(word2);
+                    if (freq1 > 0 && freq2 > 0){
+                        shard1.adjustFrequency(word1, freq2 - freq1);
+                        shard2.adjustFrequency(word2, freq1 - freq2);
+                    }
+                    return;
+                } finally{
+                    second.guard.unlockWrite(stamp2);
+                }
+            } finally{
+                first.guard.unlockWrite(stamp1);
+            }
+        }
+    } // end of swapFrequencies
+
+    /**
+     * forEach
+     *
+     * Hands every word of the tree and its frequency to the given action, in
+     * lexicographic order, one shard at a time.
+     *
+     * @param action What to do with each word and its frequency
+     */
+    public void forEach(ObjIntConsumer<String> action) {
+        for (Shard shard : topology.shards){
+            shard.tree.forEach(action);
+        }
+    } // end of forEach
+
+    /**
+     * forEachInRange
+     *
+     * Hands every word from one word up to (but not including) another, and its
+     * frequency, to the given action, in lexicographic order. Only the shards whose
+     * range overlaps are visited. Treats all words as case-insensitive.
+     *
+     * @param from The first word of the range
+     * @param to The word the range stops before
+     * @param action What to do with each word and its frequency
+     */
+    public void forEachInRange(String from, String to, ObjIntConsumer<String> action) {
+        Topology current = topology;
+        int first = current.shardIndex(TwoThreeTree.foldKey(from));
+        int last = current.shardIndex(TwoThreeTree.foldKey(to));
+        for (int i = first; i <= last; i++){
+            current.shards[i].tree.forEachInRange(from, to, action);
+        }
+    } // end of forEachInRange
+
+    /**
+     * Prints the contents of the tree in lexicographic order.
+     */
+    @Override
+    public void print() {
+        try{
+            print(System.out);
+        } catch (IOException e){
+            // a PrintStream never throws, it only sets its error flag
+            throw new UncheckedIOException(e);
+        }
+    } // end of print
+
+    /**
+     * print
+     *
+     * Writes the contents of the tree in lexicographic order, the same text print()
+     * prints, to the given Appendable. The shards write one after the other into
+     * the same buffer, which is handed over a chunk at a time, see
+     * TwoThreeTree.print(Appendable).
+     *
+     * @param out Where to write the words
+     * @throws IOException if the Appendable throws it
+     */
+    public void print(Appendable out) throws IOException {
+        StringBuilder buffer = new StringBuilder(TwoThreeTree.OUTPUT_CHUNK + 64);
+        buffer.append("[ ");
+        int count = 0;
+        for (Shard shard : topology.shards){
+            count += shard.tree.appendPairs(buffer, out);
+        }
+        if (count > 0){
+            buffer.append(']').append(TwoThreeTree.NEWLINE);
+        } else{
+            // nothing was handed over yet, so the buffer holds just the "[ "
+            buffer.setLength(0);
+            buffer.append("Tree is empty!").append(TwoThreeTree.NEWLINE);
+        }
+        out.append(buffer);
+    } // end of print
+
+    /**
+     * Calculates the height of the tallest shard, as the number of edges on its
+     * longest branch.
+     * @return The height of the tree.
+     */
+    @Override
+    public int height() {
+        int heightVal = 0;
+        for (Shard shard : topology.shards){
+            heightVal = Math.max(heightVal, shard.tree.height());
+        }
+        return heightVal;
+    } // end of height
+
+    /**
+     * compare
+     *
+     * Compares the current tree with another tree, listing unique and common words.
+     * If the other tree is not a compatible type, print a message indicating an invalid comparison.
+     *
+     * @param otherTree The other tree to compare against.
+     */
+    @Override
+    public void compare(GameTree otherTree) {
+        try{
+            compare(otherTree, System.out);
+        } catch (IOException e){
+            // a PrintStream never throws, it only sets its error flag
+            throw new UncheckedIOException(e);
+        }
+    } // end of compare
+
+    /**
+     * compare
+     *
+     * Compares the current tree with another tree and writes the unique and common
+     * words, the same text compare(GameTree) prints, to the given Appendable. The
+     * text is laid out exactly as TwoThreeTree.compare lays it out, empty trees
+     * included, and handed over a chunk at a time.
+     *
+     * @param otherTree The other tree to compare against.
+     * @param out Where to write the result
+     * @throws IOException if the Appendable throws it
+     */
+    public void compare(GameTree otherTree, Appendable out) throws IOException {
+        StringBuilder buffer = new StringBuilder(TwoThreeTree.OUTPUT_CHUNK + 64);
+        if (otherTree instanceof ShardedTwoThreeTree){
+            WordComparison result = compareWith((ShardedTwoThreeTree) otherTree);
+
+            // curr tree is not empty
+            if (!result.getCommonWords().isEmpty() || !result.getUniqueToThis().isEmpty()){
+                buffer.append("Common Words: [ ");
+                TwoThreeTree.appendWords(buffer, out, result.getCommonWords());
+                buffer.append(']').append(TwoThreeTree.NEWLINE);
+
+                buffer.append("Unique Words to Curr Tree: [ ");
+                TwoThreeTree.appendWords(buffer, out, result.getUniqueToThis());
+                buffer.append(']').append(TwoThreeTree.NEWLINE);
+            } else{
+                buffer.append("Common Words: [  ]");
+                buffer.append("Unique Words to Curr Tree: [  ]");
+            }
+
+            // the unique words for the other tree
+            if (!result.getCommonWords().isEmpty() || !result.getUniqueToOther().isEmpty()){
+                buffer.append("Unique Words to Other Tree: [ ");
+                TwoThreeTree.appendWords(buffer, out, result.getUniqueToOther());
+                buffer.append(']').append(TwoThreeTree.NEWLINE);
+            } else{
+                buffer.append("Unique Words to Other Tree: [  ]");
+            }
+        } else{
+            buffer.append("The otherTree is not an instance of ShardedTwoThreeTree. Incompatible Tree Type!")
+                    .append(TwoThreeTree.NEWLINE);
+        }
+        out.append(buffer);
+    } // end of compare
+
+    /**
+     * compareWith
+     *
+     * Compares the current tree with another tree and returns the common and unique
+     * words instead of printing them. Both trees are listed in order, shard by shard,
+     * with the folded keys the shards already keep, and the lists merged in a single
+     * pass.
+     *
+     * @param otherTree The other tree to compare against.
+     * @return the common words, and the words unique to each tree, all in order
+     */
+    public WordComparison compareWith(ShardedTwoThreeTree otherTree) {
+        List<String> mine = new ArrayList<>();
+        List<String> myKeys = new ArrayList<>();
+        List<String> theirs = new ArrayList<>();
+        List<String> theirKeys = new ArrayList<>();
+        for (Shard shard : topology.shards){
+            shard.tree.collectWords(mine, myKeys);
+        }
+        for (Shard shard : otherTree.topology.shards){
+            shard.tree.collectWords(theirs, theirKeys);
+        }
+
+        ArrayList<String> common = new ArrayList<>();
+        ArrayList<String> uniqueToThis = new ArrayList<>();
+        ArrayList<String> uniqueToOther = new ArrayList<>();
+
+        // step whichever side is behind, or both when they are on the same word
+        int i = 0;
+        int j = 0;
+        while (i < mine.size() && j < theirs.size()){
+            int cmp = myKeys.get(i).compareTo(theirKeys.get(j));
+            if (cmp == 0){
+                common.add(mine.get(i++));
+                j++;
+            } else if (cmp < 0){
+                uniqueToThis.add(mine.get(i++));
+            } else{
+                uniqueToOther.add(theirs.get(j++));
+            }
+        }
+        uniqueToThis.addAll(mine.subList(i, mine.size()));
+        uniqueToOther.addAll(theirs.subList(j, theirs.size()));
+        return new WordComparison(common, uniqueToThis, uniqueToOther);
+    } // end of compareWith
+
+    /**
+     * printTree
+     *
+     * Prints a visual representation of each shard's tree structure, under the range
+     * of words it holds.
+     */
+    @Override
+    public void printTree() {
+        Topology current = topology;
+        for (int i = 0; i < current.shards.length; i++){
+            String from = i == 0 ? "" : current.splits[i - 1];
+            String to = i == current.splits.length ? "" : current.splits[i];
+            System.out.println("Shard " + i + " [" + from + ", " + to + "):");
+            current.shards[i].tree.printTree();
+        }
+    } // end of printTree
+
+    /**
+     * size
+     *
+     * @return how many different words are in the tree
+     */
+    public int size() {
+        int size = 0;
+        for (Shard shard : topology.shards){
+            size += shard.tree.size();
+        }
+        return size;
+    } // end of size
+
+    // how many shards there are right now
+    public int shardCount() {
+        return topology.shards.length;
+    }
+
+    // the folded words the shards are split at right now, in order
+    public List<String> splitPoints() {
+        return List.of(topology.splits);
+    }
+
+    // how many different words each shard holds right now
+    public int[] shardSizes() {
+        return topology.sizes();
+    }
+
+    /**
+     * rebalance
+     *
+     * Splits the words evenly over the shards again, whatever their sizes. Writers
+     * wait while the new shards are built.
+     */
+    public void rebalance() {
+        rebalanceLock.lock();
+        try{
+            Topology current = topology;
+            long[] stamps = lockAll(current.shards, 0, current.shards.length);
+            try{
+                rebuild(current, 0, current.shards.length);
+            } finally{
+                unlockAll(current.shards, 0, stamps);
+            }
+        } finally{
+            rebalanceLock.unlock();
+        }
+    } // end of rebalance
+
+    /**
+     * rebalanceIfNeeded
+     *
+     * A private method that, if the biggest shard holds over 1.5 times its share of
+     * the words, spreads its words over it and its neighbours, taking in the smaller
+     * neighbour each time until together they hold no more than their share. Only
+     * writers to those shards wait. If another thread is already rebalancing, it
+     * leaves it to that one.
+     */
+    private void rebalanceIfNeeded() {
+        if (!rebalanceLock.tryLock()){
+            return;
+        }
+        try{
+            Topology current = topology;
+            int[] sizes = current.sizes();
+            int biggest = biggestIfUnbalanced(sizes);
+            if (biggest < 0){
+                return;
+            }
+            long total = 0;
+            for (int size : sizes){
+                total += size;
+            }
+            // grow the run of shards from the biggest until it is down to its share
+            int first = biggest;
+            int last = biggest;
+            long inRun = sizes[biggest];
+            while (inRun * sizes.length > total * (last - first + 1)){
+                if (last == sizes.length - 1 || (first > 0 && sizes[first - 1] <= sizes[last + 1])){
+                    inRun += sizes[--first];
+                } else{
+                    inRun += sizes[++last];
+                }
+            }
+            long[] stamps = lockAll(current.shards, first, last + 1);
+            try{
+                rebuild(current, first, last + 1);
+            } finally{
+                unlockAll(current.shards, first, stamps);
+            }
+        } finally{
+            rebalanceLock.unlock();
+        }
+    } // end of rebalanceIfNeeded
+
+    // the shard holding too many of the words, or -1 if none does
+    private static int biggestIfUnbalanced(int[] sizes) {
+        long total = 0;
+        int biggest = 0;
+        for (int i = 0; i < sizes.length; i++){
+            total += sizes[i];
+            if (sizes[i] > sizes[biggest]){
+                biggest = i;
+            }
+        }
+        return sizes.length > 1 && sizes[biggest] > MAX_IMBALANCE * total / sizes.length ? biggest : -1;
+    }
+
+    // takes the guards of shards from up to (not including) to alone, lowest first
+    private static long[] lockAll(Shard[] shards, int from, int to) {
+        long[] stamps = new long[to - from];
+        for (int i = from; i < to; i++){
+            stamps[i - from] = shards[i].guard.writeLock();
+        }
+        return stamps;
+    }
+
+    // lets go of the guards lockAll took
+    private static void unlockAll(Shard[] shards, int from, long[] stamps) {
+        for (int i = stamps.length - 1; i >= 0; i--){
+            shards[from + i].guard.unlockWrite(stamps[i]);
+        }
+    }
+
+    /**
+     * rebuild
+     *
+     * A private method that takes every word out of a run of neighbouring shards,
+     * in order, picks new split points between them so each gets the same number of
+     * words, and builds them again bottom-up as new shards. The new topology is in
+     * place before the old shards are retired, so a writer that finds one retired
+     * finds the new one when it looks again. Must be called holding the rebalance
+     * lock and the guards of those shards alone.
+     *
+     * @param current The topology holding the shards
+     * @param from The first shard to rebuild
+     * @param to The shard after the last one to rebuild
+     */
+    private void rebuild(Topology current, int from, int to) {
+        int count = to - from;
+        int total = 0;
+        for (int i = from; i < to; i++){
+            total += current.shards[i].tree.size();
+        }
+        if (total < count){
+            // too few words to give every shard one
+            return;
+        }
+
+        String[] words = new String[total];
+        int[] frequencies = new int[total];
+        int[] next = new int[1];
+        for (int i = from; i < to; i++){
+            current.shards[i].tree.forEach((word, frequency) -> {
+                words[next[0]] = word;
+                frequencies[next[0]] = frequency;
+                next[0]++;
+            });
+        }
+
+        String[] splits = current.splits.clone();
+        Shard[] shards = current.shards.clone();
+        int start = 0;
+        for (int i = 0; i < count; i++){
+            int end = (int) ((long) total * (i + 1) / count);
+            if (i > 0){
+                splits[from + i - 1] = TwoThreeTree.foldKey(words[start]);
+            }
+            shards[from + i] = new Shard(new ConcurrentTwoThreeTree(TwoThreeTree.bulkLoad(
+                    Arrays.copyOfRange(words, start, end), Arrays.copyOfRange(frequencies, start, end))));
+            start = end;
+        }
+        topology = new Topology(splits, shards);
+        for (int i = from; i < to; i++){
+            current.shards[i].retired = true;
+        }
+    } // end of rebuild
+
+    /**
+     * firstLetterSplits
+     *
+     * A private method that spreads the letters a to z evenly over the shards.
+     *
+     * @param shardCount How many shards, from 1 to 26
+     * @return the split points
+     * @throws IllegalArgumentException if the shard count is out of range
+     */
+    private static String[] firstLetterSplits(int shardCount) {
+        if (shardCount < 1 || shardCount > 26){
+            throw new IllegalArgumentException("Splitting by first letter needs 1 to 26 shards: " + shardCount);
+        }
+        String[] splits = new String[shardCount - 1];
+        for (int i = 1; i < shardCount; i++){
+            splits[i - 1] = String.valueOf((char) ('a' + i * 26 / shardCount));
+        }
+        return splits;
+    } // end of firstLetterSplits
+
+    /**
+     * sampledSplits
+     *
+     * A private method that picks split points so the different words of a sample
+     * are shared out evenly over the shards.
+     *
+     * @param shardCount How many shards, at least 1
+     * @param sample Words like the ones that will be added
+     * @return the split points, fewer if the sample has too few different words
+     * @throws IllegalArgumentException if the shard count is less than 1
+     */
+    private static String[] sampledSplits(int shardCount, Collection<String> sample) {
+        if (shardCount < 1){
+            throw new IllegalArgumentException("Need at least 1 shard: " + shardCount);
+        }
+        TreeSet<String> keys = new TreeSet<>();
+        for (String word : sample){
+            keys.add(TwoThreeTree.foldKey(word));
+        }
+        String[] sorted = keys.toArray(new String[0]);
+        int count = Math.max(1, Math.min(shardCount, sorted.length));
+        String[] splits = new String[count - 1];
+        for (int i = 1; i < count; i++){
+            splits[i - 1] = sorted[(int) ((long) sorted.length * i / count)];
+        }
+        return splits;
+    } // end of sampledSplits
+
+    // One shard and the guard writers hold shared while they change it
+    private static class Shard {
+        final ConcurrentTwoThreeTree tree;
+        // held alone while the shard is rebuilt, or for a swap across shards
+        final StampedLock guard;
+        // set once the shard's words were moved to new shards, under the guard
+        volatile boolean retired;
+
+        // constructor
+        Shard(ConcurrentTwoThreeTree tree) {
+            this.tree = tree;
+            this.guard = new StampedLock();
+        }
+    } // end of Shard class
+
+    // The split points and the shards between them, never changed once made
+    private static class Topology {
+        final String[] splits; // folded, in order
+        final Shard[] shards; // one more than splits
+
+        // constructor
+        Topology(String[] splits, Shard[] shards) {
+            this.splits = splits;
+            this.shards = shards;
+        }
+
+        // the tree of the shard holding a word
+        ConcurrentTwoThreeTree shardFor(String word) {
+            return shardAt(TwoThreeTree.foldKey(word)).tree;
+        }
+
+        // the shard holding a folded word
+        Shard shardAt(String key) {
+            return shards[shardIndex(key)];
+        }
+
+        // the index of the shard holding a folded word: how many split points are
+        // at or before it
+        int shardIndex(String key) {
+            int i = Arrays.binarySearch(splits, key);
+            return i >= 0 ? i + 1 : -i - 1;
+        }
+
+        // how many different words each shard holds
+        int[] sizes() {
+            int[] sizes = new int[shards.length];
+            for (int i = 0; i < shards.length; i++){
+                sizes[i] = shards[i].tree.size();
+            }
+            return sizes;
+        }
+    } // end of Topology class
+
+} // end of ShardedTwoThreeTree class
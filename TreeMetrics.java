@@ -0,0 +1,354 @@
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * TreeMetrics
+ *
+ * PURPOSE: Counters and a latency histogram for the operations of a TwoThreeTree,
+ * to see where the time goes.
+ *
+ * A tree only keeps metrics after TwoThreeTree.enableMetrics is called, and only
+ * checks a field for null when they are off, so the off path costs nothing. The
+ * counters are LongAdders, so threads counting at the same time don't fight over a
+ * cache line. Read them one at a time through the getters, all together through
+ * snapshot(), or over JMX after register().
+ *
+ * Latencies go into power-of-two buckets (bucket b counts the latencies from 2^b
+ * up to 2^(b+1) - 1 nanoseconds), so a percentile is only known to within a factor
+ * of two, and is reported as the top of its bucket.
+ */
+public class TreeMetrics implements TreeMetricsMXBean {
+
+    // the six ways a node can split, named after the TwoThreeTree helper for each
+    public enum SplitCase {
+        SINGLE_NODE,
+        ROOT_NODE,
+        PARENT_NODE_ONE_DATA_LEAF,
+        PARENT_NODE_TWO_DATA_LEAF,
+        PARENT_NODE_ONE_DATA_INTERNAL,
+        PARENT_NODE_TWO_DATA_INTERNAL
+    }
+
+    private static final int BUCKETS = 64;
+
+    private final LongAdder addWords;
+    private final LongAdder newWords;
+    private final LongAdder lookups;
+    private final LongAdder nodesVisited;
+    private final LongAdder comparisons;
+    private final LongAdder cacheHits;
+    private final LongAdder cacheMisses;
+    private final LongAdder[] splits;
+    private final LongAdder[] latency;
+
+    // read from the tree when asked, without locking, so they may be a little stale
+    private final IntSupplier nodeCount;
+    private final IntSupplier wordCount;
+    private final IntSupplier height;
+
+    // the name the metrics are registered under over JMX, or null
+    private ObjectName registeredAs;
+
+    // constructor
+    TreeMetrics(IntSupplier nodeCount, IntSupplier wordCount, IntSupplier height) {
+        this.addWords = new LongAdder();
+        this.newWords = new LongAdder();
+        this.lookups = new LongAdder();
+        this.nodesVisited = new LongAdder();
+        this.comparisons = new LongAdder();
+        this.cacheHits = new LongAdder();
+        this.cacheMisses = new LongAdder();
+        this.splits = new LongAdder[SplitCase.values().length];
+        for (int i = 0; i < splits.length; i++){
+            splits[i] = new LongAdder();
+        }
+        this.latency = new LongAdder[BUCKETS];
+        for (int i = 0; i < latency.length; i++){
+            latency[i] = new LongAdder();
+        }
+        this.nodeCount = nodeCount;
+        this.wordCount = wordCount;
+        this.height = height;
+    }
+
+    /*
+     * Recording, called by the tree.
+     */
+
+    // an addWord that walked the given number of nodes and made the given number
+    // of key comparisons, taking the given time
+    void addWord(boolean newWord, int nodes, int compares, long nanos) {
+        addWords.increment();
+        if (newWord){
+            newWords.increment();
+        }
+        nodesVisited.add(nodes);
+        comparisons.add(compares);
+        latency[63 - Long.numberOfLeadingZeros(Math.max(nanos, 1))].increment();
+    }
+
+    // a lookup (containsWord, getFrequency, ...) that walked the given number of nodes
+    void lookup(int nodes) {
+        lookups.increment();
+        nodesVisited.add(nodes);
+    }
+
+    // a look in the hot word cache, see TwoThreeTree.enableCache
+    void cacheLookup(boolean hit) {
+        (hit ? cacheHits : cacheMisses).increment();
+    }
+
+    // a node split
+    void split(SplitCase splitCase) {
+        splits[splitCase.ordinal()].increment();
+    }
+
+    /*
+     * Reading.
+     */
+
+    /**
+     * snapshot
+     *
+     * Reads every metric at once, as name and value, in the order of the getters.
+     * The counters keep running while they are read, so the values are not all from
+     * the exact same moment.
+     *
+     * @return the metrics by name
+     */
+    public Map<String, Number> snapshot() {
+        LinkedHashMap<String, Number> values = new LinkedHashMap<>();
+        values.put("addWordCount", getAddWordCount());
+        values.put("newWordCount", getNewWordCount());
+        values.put("lookupCount", getLookupCount());
+        values.put("nodesVisited", getNodesVisited());
+        values.put("comparisons", getComparisons());
+        values.put("comparisonsPerAddWord", getComparisonsPerAddWord());
+        values.put("cacheHits", getCacheHits());
+        values.put("cacheMisses", getCacheMisses());
+        for (SplitCase splitCase : SplitCase.values()){
+            values.put("splits." + splitCase.name(), getSplits(splitCase));
+        }
+        values.put("nodeCount", getNodeCount());
+        values.put("wordCount", getWordCount());
+        values.put("height", getHeight());
+        values.put("addWordLatencyP50Nanos", getAddWordLatencyP50Nanos());
+        values.put("addWordLatencyP99Nanos", getAddWordLatencyP99Nanos());
+        values.put("addWordLatencyP999Nanos", getAddWordLatencyP999Nanos());
+        return values;
+    } // end of snapshot
+
+    /**
+     * register
+     *
+     * Publishes the metrics over JMX, under "TwoThreeTree:type=TreeMetrics,name=" and
+     * the given name. Registering again first takes down the old registration.
+     *
+     * @param name A name telling this tree apart from others
+     * @throws IllegalStateException if the name is not valid or is already taken
+     */
+    public synchronized void register(String name) {
+        unregister();
+        try{
+            ObjectName objectName = new ObjectName("TwoThreeTree:type=TreeMetrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            registeredAs = objectName;
+        } catch (JMException e){
+            throw new IllegalStateException("Cannot register the metrics as " + name, e);
+        }
+    } // end of register
+
+    /**
+     * unregister
+     *
+     * Takes the metrics off JMX, if they were registered.
+     */
+    public synchronized void unregister() {
+        if (registeredAs != null){
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            try{
+                server.unregisterMBean(registeredAs);
+            } catch (JMException e){
+                // already gone
+            }
+            registeredAs = null;
+        }
+    } // end of unregister
+
+    /**
+     * getSplits
+     *
+     * @param splitCase Which kind of split
+     * @return how many splits of that kind happened
+     */
+    public long getSplits(SplitCase splitCase) {
+        return splits[splitCase.ordinal()].sum();
+    } // end of getSplits
+
+    /**
+     * getAddWordLatencyPercentile
+     *
+     * @param percentile The percentile wanted, from 0 to 100
+     * @return the top of the latency bucket holding that percentile, in
+     *         nanoseconds, or 0 if no words were added
+     */
+    public long getAddWordLatencyPercentile(double percentile) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int b = 0; b < BUCKETS; b++){
+            counts[b] = latency[b].sum();
+            total += counts[b];
+        }
+        if (total == 0){
+            return 0;
+        }
+
+        // the rank of the latency wanted, counting from 1
+        long wanted = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++){
+            seen += counts[b];
+            if (seen >= wanted){
+                return b == 62 ? Long.MAX_VALUE : (2L << b) - 1;
+            }
+        }
+        return Long.MAX_VALUE;
+    } // end of getAddWordLatencyPercentile
+
+    // how many addWord calls were made
+    @Override
+    public long getAddWordCount() {
+        return addWords.sum();
+    }
+
+    // how many of the addWord calls added a word that wasn't in the tree yet
+    @Override
+    public long getNewWordCount() {
+        return newWords.sum();
+    }
+
+    // how many lookups were made
+    @Override
+    public long getLookupCount() {
+        return lookups.sum();
+    }
+
+    // how many nodes addWord calls and lookups walked through, all together
+    @Override
+    public long getNodesVisited() {
+        return nodesVisited.sum();
+    }
+
+    // how many key comparisons addWord calls made, all together
+    @Override
+    public long getComparisons() {
+        return comparisons.sum();
+    }
+
+    // the average number of key comparisons per addWord
+    @Override
+    public double getComparisonsPerAddWord() {
+        long count = getAddWordCount();
+        return count == 0 ? 0 : (double) getComparisons() / count;
+    }
+
+    // how many looks in the hot word cache found the word
+    @Override
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    // how many looks in the hot word cache didn't find the word
+    @Override
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    @Override
+    public long getSingleNodeSplits() {
+        return getSplits(SplitCase.SINGLE_NODE);
+    }
+
+    @Override
+    public long getRootNodeSplits() {
+        return getSplits(SplitCase.ROOT_NODE);
+    }
+
+    @Override
+    public long getParentNodeOneDataLeafSplits() {
+        return getSplits(SplitCase.PARENT_NODE_ONE_DATA_LEAF);
+    }
+
+    @Override
+    public long getParentNodeTwoDataLeafSplits() {
+        return getSplits(SplitCase.PARENT_NODE_TWO_DATA_LEAF);
+    }
+
+    @Override
+    public long getParentNodeOneDataInternalSplits() {
+        return getSplits(SplitCase.PARENT_NODE_ONE_DATA_INTERNAL);
+    }
+
+    @Override
+    public long getParentNodeTwoDataInternalSplits() {
+        return getSplits(SplitCase.PARENT_NODE_TWO_DATA_INTERNAL);
+    }
+
+    // how many nodes the tree has right now
+    @Override
+    public int getNodeCount() {
+        return nodeCount.getAsInt();
+    }
+
+    // how many different words the tree has right now
+    @Override
+    public int getWordCount() {
+        return wordCount.getAsInt();
+    }
+
+    // the height of the tree right now
+    @Override
+    public int getHeight() {
+        return height.getAsInt();
+    }
+
+    @Override
+    public long getAddWordLatencyP50Nanos() {
+        return getAddWordLatencyPercentile(50);
+    }
+
+    @Override
+    public long getAddWordLatencyP99Nanos() {
+        return getAddWordLatencyPercentile(99);
+    }
+
+    @Override
+    public long getAddWordLatencyP999Nanos() {
+        return getAddWordLatencyPercentile(99.9);
+    }
+
+    // sets every counter and the histogram back to 0
+    @Override
+    public void reset() {
+        addWords.reset();
+        newWords.reset();
+        lookups.reset();
+        nodesVisited.reset();
+        comparisons.reset();
+        cacheHits.reset();
+        cacheMisses.reset();
+        for (LongAdder adder : splits){
+            adder.reset();
+        }
+        for (LongAdder adder : latency){
+            adder.reset();
+        }
+    }
+
+} // end of TreeMetrics class
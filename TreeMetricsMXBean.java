@@ -0,0 +1,51 @@
+/**
+ * TreeMetricsMXBean
+ *
+ * PURPOSE: The management interface TreeMetrics is published under over JMX, see
+ * TreeMetrics for what each value means.
+ */
+public interface TreeMetricsMXBean {
+
+    long getAddWordCount();
+
+    long getNewWordCount();
+
+    long getLookupCount();
+
+    long getNodesVisited();
+
+    long getComparisons();
+
+    double getComparisonsPerAddWord();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    long getSingleNodeSplits();
+
+    long getRootNodeSplits();
+
+    long getParentNodeOneDataLeafSplits();
+
+    long getParentNodeTwoDataLeafSplits();
+
+    long getParentNodeOneDataInternalSplits();
+
+    long getParentNodeTwoDataInternalSplits();
+
+    int getNodeCount();
+
+    int getWordCount();
+
+    int getHeight();
+
+    long getAddWordLatencyP50Nanos();
+
+    long getAddWordLatencyP99Nanos();
+
+    long getAddWordLatencyP999Nanos();
+
+    void reset();
+
+} // end of TreeMetricsMXBean interface
@@ -0,0 +1,225 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * TreeSetOperations
+ *
+ * PURPOSE: Intersection, difference and union of two 2-3 Trees, computed in parallel.
+ *
+ * The key space is cut into ranges at the data of the upper levels of the bigger
+ * tree, which are natural split points since the subtrees under one level hold about
+ * the same number of words. Each range is merged on its own fork-join task, walking
+ * both trees in order over just that range, and the sorted results are joined and
+ * bulk loaded into a new tree. Neither tree may be changed while an operation runs.
+ *
+ * Words found in both trees keep the spelling they have in the first tree, and their
+ * frequencies from both trees are added together. A sum too big for an int is held
+ * at Integer.MAX_VALUE rather than wrapping around or failing the whole operation,
+ * so the word still comes out as frequent as a frequency can say.
+ */
+public class TreeSetOperations {
+
+    // which set operation a task is doing
+    private enum Operation { INTERSECTION, DIFFERENCE, UNION }
+
+    // ranges per thread, so a thread that finishes early can pick up more work
+    private static final int RANGES_PER_THREAD = 4;
+
+    // not meant to be created
+    private TreeSetOperations() {
+    }
+
+    /**
+     * intersection
+     *
+     * @param first One of the trees
+     * @param second The other tree
+     * @return a new tree with the words found in both trees
+     */
+    public static TwoThreeTree intersection(TwoThreeTree first, TwoThreeTree second) {
+        return run(Operation.INTERSECTION, first, second);
+    } // end of intersection
+
+    /**
+     * difference
+     *
+     * @param first The tree to take words from
+     * @param second The tree whose words are left out
+     * @return a new tree with the words of the first tree that are not in the second,
+     *         with their frequencies from the first tree
+     */
+    public static TwoThreeTree difference(TwoThreeTree first, TwoThreeTree second) {
+        return run(Operation.DIFFERENCE, first, second);
+    } // end of difference
+
+    /**
+     * union
+     *
+     * @param first One of the trees
+     * @param second The other tree
+     * @return a new tree with the words found in either tree
+     */
+    public static TwoThreeTree union(TwoThreeTree first, TwoThreeTree second) {
+        return run(Operation.UNION, first, second);
+    } // end of union
+
+    /**
+     * run
+     *
+     * A private method that splits the key space into ranges, merges the ranges in
+     * parallel on the common fork-join pool, and builds the resulting tree.
+     *
+     * @param op The set operation to do
+     * @param first The first tree
+     * @param second The second tree
+     * @return the new tree
+     */
+    private static TwoThreeTree run(Operation op, TwoThreeTree first, TwoThreeTree second) {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int wanted = pool.getParallelism() * RANGES_PER_THREAD;
+
+        // split at the bigger tree's data, the taller one is the bigger one
+        TwoThreeTree bigger = first.height() >= second.height() ? first : second;
+        String[] splitKeys = bigger.splitKeys(wanted);
+
+        ArrayList<Chunk> chunks = pool.invoke(new RangeTask(op, first, second, splitKeys, 0, splitKeys.length + 1));
+
+        // join the chunks, which are already in order
+        int size = 0;
+        for (Chunk chunk : chunks){
+            size += chunk.size;
+        }
+        String[] words = new String[size];
+        int[] frequencies = new int[size];
+        int pos = 0;
+        for (Chunk chunk : chunks){
+            System.arraycopy(chunk.words, 0, words, pos, chunk.size);
+            System.arraycopy(chunk.frequencies, 0, frequencies, pos, chunk.size);
+            pos += chunk.size;
+        }
+        return TwoThreeTree.bulkLoad(words, frequencies, size);
+    } // end of run
+
+    // A task that merges the key ranges from range number "from" up to (not
+    // including) "to". Range r covers the keys from splitKeys[r - 1] up to (not
+    // including) splitKeys[r], with the first and last ranges being open-ended.
+    // Splits itself in half until it is down to a single range.
+    private static class RangeTask extends RecursiveTask<ArrayList<Chunk>> {
+        private static final long serialVersionUID = 1L;
+
+        private final Operation op;
+        private final TwoThreeTree first;
+        private final TwoThreeTree second;
+        private final String[] splitKeys;
+        private final int from;
+        private final int to;
+
+        // constructor
+        public RangeTask(Operation op, TwoThreeTree first, TwoThreeTree second, String[] splitKeys, int from, int to) {
+            this.op = op;
+            this.first = first;
+            this.second = second;
+            this.splitKeys = splitKeys;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected ArrayList<Chunk> compute() {
+            if (to - from > 1){
+                // more than one range, split the work in half
+                int middle = (from + to) >>> 1;
+                RangeTask left = new RangeTask(op, first, second, splitKeys, from, middle);
+                RangeTask right = new RangeTask(op, first, second, splitKeys, middle, to);
+                left.fork();
+                ArrayList<Chunk> chunks = right.compute();
+                ArrayList<Chunk> leftChunks = left.join();
+                leftChunks.addAll(chunks);
+                return leftChunks;
+            }
+
+            ArrayList<Chunk> chunks = new ArrayList<>();
+            chunks.add(merge());
+            return chunks;
+        }
+
+        // walks both trees over this task's range side by side, keeping the words
+        // the operation asks for
+        private Chunk merge() {
+            String fromKey = from == 0 ? null : splitKeys[from - 1];
+            String toKey = from == splitKeys.length ? null : splitKeys[from];
+            TwoThreeTree.WordCursor mine = first.cursor(fromKey, toKey);
+            TwoThreeTree.WordCursor theirs = second.cursor(fromKey, toKey);
+            boolean moreMine = mine.next();
+            boolean moreTheirs = theirs.next();
+            Chunk chunk = new Chunk();
+
+            while (moreMine && moreTheirs){
+                int cmp = mine.key().compareTo(theirs.key());
+                if (cmp == 0){
+                    // in both trees
+                    if (op != Operation.DIFFERENCE){
+                        chunk.add(mine.word(), sum(mine.frequency(), theirs.frequency()));
+                    }
+                    moreMine = mine.next();
+                    moreTheirs = theirs.next();
+                } else if (cmp < 0){
+                    // only in the first tree
+                    if (op != Operation.INTERSECTION){
+                        chunk.add(mine.word(), mine.frequency());
+                    }
+                    moreMine = mine.next();
+                } else{
+                    // only in the second tree
+                    if (op == Operation.UNION){
+                        chunk.add(theirs.word(), theirs.frequency());
+                    }
+                    moreTheirs = theirs.next();
+                }
+            }
+
+            // whatever is left over is only in one of the trees
+            while (moreMine && op != Operation.INTERSECTION){
+                chunk.add(mine.word(), mine.frequency());
+                moreMine = mine.next();
+            }
+            while (moreTheirs && op == Operation.UNION){
+                chunk.add(theirs.word(), theirs.frequency());
+                moreTheirs = theirs.next();
+            }
+            return chunk;
+        }
+    } // end of RangeTask class
+
+    // the sum of two frequencies, held at Integer.MAX_VALUE instead of overflowing
+    private static int sum(int frequency1, int frequency2) {
+        return (int) Math.min((long) frequency1 + frequency2, Integer.MAX_VALUE);
+    }
+
+    // A growable run of words and frequencies, in order
+    private static class Chunk {
+        public String[] words;
+        public int[] frequencies;
+        public int size;
+
+        // constructor
+        public Chunk() {
+            this.words = new String[16];
+            this.frequencies = new int[16];
+            this.size = 0;
+        }
+
+        public void add(String word, int frequency) {
+            if (size == words.length){
+                words = Arrays.copyOf(words, 2 * size);
+                frequencies = Arrays.copyOf(frequencies, 2 * size);
+            }
+            words[size] = word;
+            frequencies[size] = frequency;
+            size++;
+        }
+    } // end of Chunk class
+
+} // end of TreeSetOperations class
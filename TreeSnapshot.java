@@ -0,0 +1,414 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * TreeSnapshot
+ *
+ * PURPOSE: Saves a 2-3 Tree of words to a stream in a compact binary format and
+ * loads it back.
+ *
+ * The words are written in order, straight off a cursor, and loaded back with
+ * TwoThreeTree.bulkLoad, so both directions take linear time. The format is:
+ *
+ *   header:  magic "23TS", version (int), number of words (int), CRC32 of the
+ *            three ints before it (int)
+ *   blocks:  number of words in the block (int), length of the payload (int),
+ *            the payload, CRC32 of the payload (int)
+ *   end:     a block with 0 words and an empty payload
+ *
+ * Each payload holds up to BLOCK_WORDS words, front-coded: every word is stored as
+ * how many characters it shares with the word before it (varint), the length of the
+ * rest in bytes (varint), the rest in UTF-8, and then its frequency (varint). The
+ * first word of a block shares nothing, so every block can be checked and decoded
+ * on its own. All ints are big-endian. A lone surrogate, which has no UTF-8 form,
+ * is written as the three bytes UTF-8 would use for its code point if it had one,
+ * so every word comes back exactly as it was.
+ *
+ * Version 1 had no header checksum and wrote lone surrogates as '?'; it is still
+ * read. Nothing read from the stream is trusted to size anything before it is
+ * checked: the word arrays grow as checked blocks come in, and a payload buffer
+ * only as its bytes actually arrive.
+ */
+public class TreeSnapshot {
+
+    // "23TS"
+    private static final int MAGIC = 0x32335453;
+    private static final int VERSION = 2;
+    // the last version without a header checksum
+    private static final int VERSION_NO_HEADER_CRC = 1;
+
+    private static final int HEADER_SIZE = 12;
+    private static final int BLOCK_HEADER_SIZE = 8;
+
+    // words per block, enough that the block overhead doesn't matter
+    private static final int BLOCK_WORDS = 4096;
+
+    // not meant to be created
+    private TreeSnapshot() {
+    }
+
+    /**
+     * write
+     *
+     * Writes a tree to a stream. The stream is flushed but not closed. The tree must
+     * not be changed while it is being written. A frequency that was counted past
+     * Integer.MAX_VALUE and wrapped around negative is written as Integer.MAX_VALUE,
+     * the way TreeSetOperations holds its sums, since read refuses anything below 1.
+     *
+     * @param tree The tree to write
+     * @param out Where to write it
+     * @throws IOException if writing to the stream fails
+     */
+    public static void write(TwoThreeTree tree, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+        byte[] header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).putInt(tree.size()).array();
+        CRC32 crc = new CRC32();
+        crc.update(header);
+        data.write(header);
+        data.writeInt((int) crc.getValue());
+
+        BlockWriter block = new BlockWriter();
+        TwoThreeTree.WordCursor cursor = tree.cursor();
+        while (cursor.next()){
+            int frequency = cursor.frequency();
+            block.add(cursor.word(), frequency < 0 ? Integer.MAX_VALUE : frequency);
+            if (block.count == BLOCK_WORDS){
+                block.writeTo(data);
+            }
+        }
+        if (block.count > 0){
+            block.writeTo(data);
+        }
+
+        // the end block
+        block.writeTo(data);
+        data.flush();
+    } // end of write
+
+    /**
+     * read
+     *
+     * Reads a tree written by write. Reads exactly up to the end of the snapshot,
+     * apart from whatever the read buffer pulls in past it, and doesn't close the
+     * stream.
+     *
+     * @param in Where to read the tree from
+     * @return the tree
+     * @throws IOException if reading fails, or the snapshot is cut short, damaged
+     *         (a checksum doesn't match) or not a snapshot at all
+     */
+    public static TwoThreeTree read(InputStream in) throws IOException {
+        return read(in, null, 0);
+    } // end of read
+
+    /**
+     * read
+     *
+     * Reads a tree written by write from a file channel, starting at the channel's
+     * position. Afterwards the channel is positioned right after the snapshot, even
+     * though the read buffer pulled in more, so whatever follows can be read next.
+     * The channel is not closed.
+     *
+     * @param channel Where to read the tree from
+     * @return the tree
+     * @throws IOException if reading fails, or the snapshot is cut short, damaged
+     *         (a checksum doesn't match) or not a snapshot at all
+     */
+    public static TwoThreeTree read(FileChannel channel) throws IOException {
+        return read(Channels.newInputStream(channel), channel, channel.position());
+    } // end of read
+
+    // reads a snapshot, and if it came from a channel, puts the channel back right
+    // after its end, which is the given start plus every byte the snapshot took
+    private static TwoThreeTree read(InputStream in, FileChannel channel, long start) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+        int magic = data.readInt();
+        if (magic != MAGIC){
+            throw new IOException("Not a tree snapshot");
+        }
+        int version = data.readInt();
+        if (version != VERSION && version != VERSION_NO_HEADER_CRC){
+            throw new IOException("Unsupported snapshot version " + version);
+        }
+        int expected = data.readInt();
+        long consumed = HEADER_SIZE;
+        CRC32 crc = new CRC32();
+        if (version != VERSION_NO_HEADER_CRC){
+            crc.update(ByteBuffer.allocate(HEADER_SIZE).putInt(magic).putInt(version).putInt(expected).array());
+            if ((int) crc.getValue() != data.readInt()){
+                throw new IOException("Snapshot header checksum mismatch");
+            }
+            consumed += 4;
+        }
+        if (expected < 0){
+            throw new IOException("Damaged snapshot header");
+        }
+
+        // even a checked count is only a hint, the arrays grow as the words come in
+        int capacity = Math.min(expected, BLOCK_WORDS);
+        String[] words = new String[capacity];
+        int[] frequencies = new int[capacity];
+        int size = 0;
+        byte[] payload = new byte[1 << 16];
+
+        while (true){
+            int count = data.readInt();
+            int length = data.readInt();
+            // every word takes at least three bytes, one per varint
+            if (count < 0 || length < 0 || count > expected - size || count > length / 3){
+                throw new IOException("Damaged snapshot block header");
+            }
+            payload = readPayload(data, payload, length);
+            crc.reset();
+            crc.update(payload, 0, length);
+            if ((int) crc.getValue() != data.readInt()){
+                throw new IOException("Snapshot block checksum mismatch");
+            }
+            consumed += BLOCK_HEADER_SIZE + length + 4;
+            if (count == 0){
+                // the end block
+                break;
+            }
+            if (size + count > words.length){
+                int grown = (int) Math.min(expected, Math.max(2L * words.length, size + count));
+                words = Arrays.copyOf(words, grown);
+                frequencies = Arrays.copyOf(frequencies, grown);
+            }
+            new BlockReader(payload, length).readInto(words, frequencies, size, count);
+            size += count;
+        }
+
+        if (size != expected){
+            throw new EOFException("Snapshot has " + size + " of " + expected + " words");
+        }
+        if (channel != null){
+            channel.position(start + consumed);
+        }
+        try{
+            return TwoThreeTree.bulkLoad(words, frequencies, size);
+        } catch (IllegalArgumentException e){
+            // the checksums matched, but the words are not a valid tree
+            throw new IOException("Damaged snapshot: " + e.getMessage(), e);
+        }
+    } // end of read
+
+    // reads a payload into the buffer, growing it only as the bytes actually arrive,
+    // so a damaged length runs into the end of the stream instead of a huge array
+    private static byte[] readPayload(DataInputStream data, byte[] payload, int length) throws IOException {
+        int read = 0;
+        while (read < length){
+            if (read == payload.length){
+                payload = Arrays.copyOf(payload, (int) Math.min(length, 2L * payload.length));
+            }
+            int chunk = Math.min(length, payload.length) - read;
+            data.readFully(payload, read, chunk);
+            read += chunk;
+        }
+        return payload;
+    }
+
+    // Front-codes one block of words into a reusable buffer
+    private static class BlockWriter {
+        private byte[] buffer = new byte[1 << 16];
+        private int length = 0;
+        private int count = 0;
+        private String previous = "";
+        private final CRC32 crc = new CRC32();
+
+        public void add(String word, int frequency) {
+            int shared = sharedPrefix(previous, word);
+            int restLength = utf8Length(word, shared);
+            ensureRoom(3 * 5 + restLength);
+            putVarint(shared);
+            putVarint(restLength);
+            putUtf8(word, shared);
+            putVarint(frequency);
+            previous = word;
+            count++;
+        }
+
+        // writes the block out and starts a new one
+        public void writeTo(DataOutputStream data) throws IOException {
+            crc.reset();
+            crc.update(buffer, 0, length);
+            data.writeInt(count);
+            data.writeInt(length);
+            data.write(buffer, 0, length);
+            data.writeInt((int) crc.getValue());
+            length = 0;
+            count = 0;
+            previous = "";
+        }
+
+        // how many characters two words share at the start, never ending in the
+        // middle of a surrogate pair so the rest is always valid UTF-16 on its own
+        private static int sharedPrefix(String a, String b) {
+            int max = Math.min(a.length(), b.length());
+            int shared = 0;
+            while (shared < max && a.charAt(shared) == b.charAt(shared)){
+                shared++;
+            }
+            if (shared > 0 && Character.isHighSurrogate(b.charAt(shared - 1))){
+                shared--;
+            }
+            return shared;
+        }
+
+        // how many bytes the word takes in UTF-8 from the given character on
+        private static int utf8Length(String word, int from) {
+            int bytes = 0;
+            for (int i = from; i < word.length(); i++){
+                char c = word.charAt(i);
+                if (c < 0x80){
+                    bytes++;
+                } else if (c < 0x800){
+                    bytes += 2;
+                } else if (Character.isHighSurrogate(c) && i + 1 < word.length() && Character.isLowSurrogate(word.charAt(i + 1))){
+                    bytes += 4;
+                    i++;
+                } else{
+                    // a lone surrogate takes three bytes like the rest, see putUtf8
+                    bytes += 3;
+                }
+            }
+            return bytes;
+        }
+
+        // writes the word from the given character on in UTF-8, straight into the
+        // buffer so no substring or byte array is made per word
+        private void putUtf8(String word, int from) {
+            for (int i = from; i < word.length(); i++){
+                char c = word.charAt(i);
+                if (c < 0x80){
+                    buffer[length++] = (byte) c;
+                } else if (c < 0x800){
+                    buffer[length++] = (byte) (0xC0 | (c >> 6));
+                    buffer[length++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < word.length() && Character.isLowSurrogate(word.charAt(i + 1))){
+                    int cp = Character.toCodePoint(c, word.charAt(++i));
+                    buffer[length++] = (byte) (0xF0 | (cp >> 18));
+                    buffer[length++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    buffer[length++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    buffer[length++] = (byte) (0x80 | (cp & 0x3F));
+                } else{
+                    // a lone surrogate is written as if it were a code point of its
+                    // own, which String.getBytes would turn into '?'
+                    buffer[length++] = (byte) (0xE0 | (c >> 12));
+                    buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    buffer[length++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+        }
+
+        private void putVarint(int value) {
+            while ((value & ~0x7F) != 0){
+                buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[length++] = (byte) value;
+        }
+
+        private void ensureRoom(int needed) {
+            if (length + needed > buffer.length){
+                buffer = Arrays.copyOf(buffer, Math.max(2 * buffer.length, length + needed));
+            }
+        }
+    } // end of BlockWriter class
+
+    // Decodes the words of one block
+    private static class BlockReader {
+        private final byte[] payload;
+        private final int length;
+        private int pos = 0;
+
+        // constructor
+        public BlockReader(byte[] payload, int length) {
+            this.payload = payload;
+            this.length = length;
+        }
+
+        public void readInto(String[] words, int[] frequencies, int from, int count) throws IOException {
+            String previous = "";
+            for (int i = from; i < from + count; i++){
+                int shared = getVarint();
+                int restLength = getVarint();
+                if (shared > previous.length() || restLength > length - pos){
+                    throw new IOException("Damaged snapshot block");
+                }
+                String rest = decode(pos, restLength);
+                pos += restLength;
+                previous = shared == 0 ? rest : previous.substring(0, shared).concat(rest);
+                words[i] = previous;
+                frequencies[i] = getVarint();
+            }
+            if (pos != length){
+                throw new IOException("Damaged snapshot block");
+            }
+        }
+
+        // decodes UTF-8, also taking back the lone surrogates BlockWriter writes.
+        // Those all start with 0xED, so words without that byte go the fast way
+        private String decode(int from, int bytes) throws IOException {
+            int end = from + bytes;
+            int i = from;
+            while (i < end && payload[i] != (byte) 0xED){
+                i++;
+            }
+            if (i == end){
+                return new String(payload, from, bytes, StandardCharsets.UTF_8);
+            }
+
+            StringBuilder word = new StringBuilder(bytes);
+            i = from;
+            while (i < end){
+                int b = payload[i] & 0xFF;
+                int extra = b < 0x80 ? 0 : b >= 0xF8 ? -1 : b >= 0xF0 ? 3 : b >= 0xE0 ? 2 : b >= 0xC0 ? 1 : -1;
+                if (extra < 0 || extra > end - i - 1){
+                    throw new IOException("Damaged snapshot block");
+                }
+                int cp = extra == 0 ? b : b & (0x3F >> extra);
+                for (int k = 1; k <= extra; k++){
+                    int next = payload[i + k] & 0xFF;
+                    if ((next & 0xC0) != 0x80){
+                        throw new IOException("Damaged snapshot block");
+                    }
+                    cp = (cp << 6) | (next & 0x3F);
+                }
+                if (cp > Character.MAX_CODE_POINT){
+                    throw new IOException("Damaged snapshot block");
+                }
+                word.appendCodePoint(cp);
+                i += extra + 1;
+            }
+            return word.toString();
+        }
+
+        private int getVarint() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7){
+                if (pos == length){
+                    throw new IOException("Damaged snapshot block");
+                }
+                byte b = payload[pos++];
+                value |= (b & 0x7F) << shift;
+                if (b >= 0){
+                    return value;
+                }
+            }
+            throw new IOException("Damaged snapshot block");
+        }
+    } // end of BlockReader class
+
+} // end of TreeSnapshot class
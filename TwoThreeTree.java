@@ -1,3 +1,20 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Queue;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.Stream;
+
 /**
  * TwoThreeTree
  * 
@@ -6,14 +23,250 @@
 
 public class TwoThreeTree implements GameTree{
     
+    // how many characters print, printTree and compare gather before handing them on.
+    // Package-private, like NEWLINE, so ShardedTwoThreeTree writes the same way
+    static final int OUTPUT_CHUNK = 8192;
+
+    // what println ends a line with
+    static final String NEWLINE = System.lineSeparator();
+
     // root of the tree
     private Node root;
 
+    // the words grouped by frequency, only kept once enableTopK is called
+    private FrequencyIndex<DataPair> index;
+
+    // counters for the operations, only kept once enableMetrics is called
+    private TreeMetrics metrics;
+
+    // the data pairs of recently used words, only kept once enableCache is called
+    private HotWordCache<DataPair> cache;
+
+    // number of nodes in the tree
+    private int nodeCount;
+
     //constructor
     public TwoThreeTree() {
         root = null;
+        index = null;
+        metrics = null;
+        cache = null;
+        nodeCount = 0;
     }
 
+    /**
+     * bulkLoad
+     * 
+     * Builds a tree from words that are already in order, together with their
+     * frequencies. Instead of adding the words one at a time (which means a descent
+     * and possibly a chain of splits for every word), the tree is built bottom-up in
+     * linear time with no splits at all.
+     * 
+     * @param words The words, in case-insensitive order with no repeats
+     * @param frequencies The frequency of each word, at least 1
+     * @return a new tree holding the words
+     * @throws IllegalArgumentException if the arrays have different lengths, the
+     *         words are out of order or repeated, or a frequency is less than 1
+     */
+    public static TwoThreeTree bulkLoad(String[] words, int[] frequencies){
+        if(words.length != frequencies.length){
+            throw new IllegalArgumentException("Need exactly one frequency per word");
+        }
+        return bulkLoad(words, frequencies, words.length);
+    } // end of bulkLoad
+
+    /**
+     * bulkLoad
+     * 
+     * Builds a tree from the first size words of the arrays, see bulkLoad(String[], int[]).
+     * 
+     * @param words The words, in case-insensitive order with no repeats
+     * @param frequencies The frequency of each word, at least 1
+     * @param size How many of the words to use
+     * @return a new tree holding the words
+     * @throws IllegalArgumentException if the words are out of order or repeated,
+     *         or a frequency is less than 1
+     */
+    public static TwoThreeTree bulkLoad(String[] words, int[] frequencies, int size){
+        TwoThreeTree tree = new TwoThreeTree();
+        if(size == 0){
+            return tree;
+        }
+
+        // make the data pairs first, checking the words really are in order
+        DataPair[] pairs = new DataPair[size];
+        for(int i = 0; i < size; i++){
+            if(frequencies[i] < 1){
+                throw new IllegalArgumentException("Frequency of " + words[i] + " must be at least 1");
+            }
+            DataPair pair = new DataPair();
+            pair.word = words[i];
+            pair.key = foldKey(words[i]);
+            pair.frequency = frequencies[i];
+            if(i > 0 && pairs[i - 1].key.compareTo(pair.key) >= 0){
+                throw new IllegalArgumentException("Words must be in order with no repeats: "
+                        + words[i - 1] + ", " + words[i]);
+            }
+            pairs[i] = pair;
+        }
+
+        tree.buildFrom(pairs, size);
+        return tree;
+    } // end of bulkLoad
+
+    /**
+     * buildFrom
+     * 
+     * A private helper method that replaces the whole tree with a tree built
+     * bottom-up out of data pairs that are already in order.
+     * 
+     * @param pairs The data pairs, in order with no repeats
+     * @param size How many of the data pairs to use
+     */
+    private void buildFrom(DataPair[] pairs, int size){
+        if(size == 0){
+            root = null;
+            nodeCount = 0;
+            return;
+        }
+
+        // find the smallest height that can hold all the words
+            // maxWords[h] is how many words a tree of height h holds when every node is full
+        long[] maxWords = new long[32];
+        maxWords[0] = 2;
+        int height = 0;
+        while(maxWords[height] < size){
+            height++;
+            maxWords[height] = 3 * maxWords[height - 1] + 2;
+        }
+
+        root = buildSubtree(pairs, 0, size, height, maxWords);
+        nodeCount = countNodes(root);
+    } // end of buildFrom
+
+    /**
+     * countNodes
+     * 
+     * A private helper method that counts the nodes of a subtree.
+     * 
+     * @param aNode The root of the subtree
+     * @return the number of nodes in it
+     */
+    private static int countNodes(Node aNode){
+        int count = 1;
+        for(int i = 0; i <= aNode.numWords && aNode.children[i] != null; i++){
+            count += countNodes(aNode.children[i]);
+        }
+        return count;
+    } // end of countNodes
+
+    /**
+     * buildSubtree
+     * 
+     * A private helper method for bulkLoad that recursively builds a subtree of the
+     * given height out of a run of data pairs. The node gets 2 children if the words
+     * fit in 2 full subtrees, otherwise 3, and the words are shared out evenly between
+     * the children. Sharing them out evenly keeps every child within what a subtree of
+     * its height can hold, so all the leaves end up on the same level.
+     * 
+     * @param pairs The data pairs, in order
+     * @param from The first data pair of the run
+     * @param count How many data pairs are in the run
+     * @param height The height of the subtree to build
+     * @param maxWords How many words a full subtree of each height holds
+     * @return the root of the new subtree
+     */
+    private static Node buildSubtree(DataPair[] pairs, int from, int count, int height, long[] maxWords){
+        Node newNode = new Node();
+
+        if(height == 0){
+            // a leaf gets the whole run, which is 1 or 2 words
+            for(int i = 0; i < count; i++){
+                newNode.data[i] = pairs[from + i];
+            }
+            newNode.numWords = count;
+            refreshCounts(newNode);
+            return newNode;
+        }
+
+        // one word per child goes up into this node, apart from the last child
+        int numChildren = (count - 1 <= 2 * maxWords[height - 1]) ? 2 : 3;
+        int rest = count - (numChildren - 1);
+        int pos = from;
+        for(int c = 0; c < numChildren; c++){
+            // the first few children get one extra word if it doesn't divide evenly
+            int share = rest / numChildren + (c < rest % numChildren ? 1 : 0);
+            Node child = buildSubtree(pairs, pos, share, height - 1, maxWords);
+            child.parent = newNode;
+            newNode.children[c] = child;
+            pos += share;
+
+            if(c < numChildren - 1){
+                // the word between this child and the next one
+                newNode.data[c] = pairs[pos];
+                pos++;
+            }
+        }
+        newNode.numWords = numChildren - 1;
+        refreshCounts(newNode);
+        return newNode;
+    } // end of buildSubtree
+
+    /**
+     * writeTo
+     * 
+     * Saves the tree to a stream in the compact format described in TreeSnapshot,
+     * walking the words in order. The stream is flushed but not closed.
+     * 
+     * @param out Where to save the tree
+     * @throws IOException if writing fails
+     */
+    public void writeTo(OutputStream out) throws IOException{
+        TreeSnapshot.write(this, out);
+    } // end of writeTo
+
+    /**
+     * writeTo
+     * 
+     * Saves the tree to a file channel, starting at the channel's position, see
+     * writeTo(OutputStream). The channel is not closed.
+     * 
+     * @param channel Where to save the tree
+     * @throws IOException if writing fails
+     */
+    public void writeTo(FileChannel channel) throws IOException{
+        writeTo(Channels.newOutputStream(channel));
+    } // end of writeTo
+
+    /**
+     * readFrom
+     * 
+     * Loads a tree saved by writeTo, building it bottom-up in linear time. The
+     * stream is not closed.
+     * 
+     * @param in Where to load the tree from
+     * @return the loaded tree
+     * @throws IOException if reading fails or the saved tree is cut short or damaged
+     */
+    public static TwoThreeTree readFrom(InputStream in) throws IOException{
+        return TreeSnapshot.read(in);
+    } // end of readFrom
+
+    /**
+     * readFrom
+     * 
+     * Loads a tree saved by writeTo from a file channel, starting at the channel's
+     * position, and leaves the channel positioned right after the saved tree. The
+     * channel is not closed.
+     * 
+     * @param channel Where to load the tree from
+     * @return the loaded tree
+     * @throws IOException if reading fails or the saved tree is cut short or damaged
+     */
+    public static TwoThreeTree readFrom(FileChannel channel) throws IOException{
+        return TreeSnapshot.read(channel);
+    } // end of readFrom
+
     /**
      * addWord
      * 
@@ -24,100 +277,320 @@ public class TwoThreeTree implements GameTree{
      */
     @Override
     public void addWord(String word) {
-        // check if the word exists already
-        if(containsWord(word)){
-            //find the node and update its frequency
-            Node targetNode = findNode(word);
-            // within the node, find the correct data piece to update
-            for(int i = 0; i < targetNode.data.length; i++){
-                if(targetNode.data[i].word != null){
-                    if (targetNode.data[i].word.equalsIgnoreCase(word)){
-                        targetNode.data[i].frequency++;
-                    }
+        upsertWord(word);
+    } // end of addWord
+
+    /**
+     * upsertWord
+     * 
+     * Adds a word to the tree, updating its frequency if it already exists, and
+     * returns the resulting frequency. Unlike looking the word up first and then
+     * inserting it, this finds-or-inserts in a single descent from the root, comparing
+     * the word against each piece of data only once per level.
+     * Treats all words as case-insensitive.
+     * 
+     * @param word The word to add.
+     * @return The frequency of the word after adding it.
+     */
+    public int upsertWord(String word){
+        // only time the call when metrics are on
+        long start = metrics == null ? 0 : System.nanoTime();
+        // fold the case once, everything below compares the folded key
+        String key = foldKey(word);
+
+        // a hot word needs no descent at all
+        DataPair hot = cachedPair(key);
+        if (hot != null){
+            int wordFreq = addToFrequency(hot.owner, hot, 1);
+            recordAddWord(start, false, 0, 0);
+            return wordFreq;
+        }
+
+        if (root == null){
+            // creating a new root and updating its first data value
+            DataPair newData = new DataPair();
+            newData.word = word;
+            newData.key = key;
+            newData.frequency++;
+            Node newNode = new Node();
+            newNode.data[0] = newData;
+            newNode.numWords++;
+            refreshCounts(newNode);
+            root = newNode;
+            nodeCount++;
+            frequencyChanged(newData);
+            recordAddWord(start, true, 0, 0);
+            return newNode.data[0].frequency;
+        }
+
+        Node curr = root;
+        Node prev = null;
+        // position of the child we moved to, which is also the insert position
+            //once we fall off the tree at a leaf
+        int pos = 0;
+        // nodes walked through and comparisons made, for the metrics
+        int nodes = 0;
+        int compares = 0;
+
+        // iterate until we either find the word or fall off the tree at a leaf
+        while (curr != null){
+            prev = curr;
+            nodes++;
+            compares++;
+            int cmp = key.compareTo(curr.data[0].key);
+            if (cmp == 0){
+                // found it, update its frequency
+                remember(curr.data[0]);
+                int wordFreq = addToFrequency(curr, curr.data[0], 1);
+                recordAddWord(start, false, nodes, compares);
+                return wordFreq;
+            } else if (cmp < 0){
+                //left
+                pos = 0;
+            } else if (curr.numWords == 1){
+                //right
+                pos = 1;
+            } else {
+                // node has two pieces of data, check the second one
+                compares++;
+                cmp = key.compareTo(curr.data[1].key);
+                if (cmp == 0){
+                    remember(curr.data[1]);
+                    int wordFreq = addToFrequency(curr, curr.data[1], 1);
+                    recordAddWord(start, false, nodes, compares);
+                    return wordFreq;
+                } else if (cmp < 0){
+                    //middle
+                    pos = 1;
+                } else{
+                    //right
+                    pos = 2;
                 }
             }
-        } else{
-            //insert
-            if (root == null){
-                // creating a new root and updating its first data value
+            curr = curr.children[pos];
+        }
+
+        // leaf node found, and now we add the new data piece
+        DataPair newData = new DataPair();
+        newData.word = word;
+        newData.key = key;
+        newData.frequency++;
+        insertIntoLeaf(prev, pos, newData);
+
+        // if the node where we inserted value has 3 pieces of data,
+            //then we split
+        if(prev.numWords == 3){
+            //too full...split and rebalance
+            prev = splitNode(prev);
+        }
+        // one more word below every node from here up to the root
+        refreshUp(prev);
+        frequencyChanged(newData);
+        recordAddWord(start, true, nodes, compares);
+        return newData.frequency;
+    } // end of upsertWord
+
+    /**
+     * recordAddWord
+     * 
+     * A private helper method that counts an addWord in the metrics, if they are on.
+     * 
+     * @param start When the call started, from System.nanoTime
+     * @param newWord Whether the word was new to the tree
+     * @param nodes How many nodes the call walked through
+     * @param compares How many key comparisons the call made
+     */
+    private void recordAddWord(long start, boolean newWord, int nodes, int compares){
+        TreeMetrics current = metrics;
+        if(current != null){
+            current.addWord(newWord, nodes, compares, System.nanoTime() - start);
+        }
+    } // end of recordAddWord
+
+    /**
+     * insertIntoLeaf
+     * 
+     * A private method that puts a new data piece into a leaf at the given position,
+     * shifting the data after it one spot to the right. The leaf may end up with 3
+     * pieces of data, in which case the caller has to split it.
+     * 
+     * @param leaf The leaf node we are inserting into
+     * @param pos The position the new data piece goes to
+     * @param newData The new data piece
+     */
+    private void insertIntoLeaf(Node leaf, int pos, DataPair newData){
+        // move everything from pos onwards one spot over
+        for(int i = leaf.numWords; i > pos; i--){
+            leaf.data[i] = leaf.data[i - 1];
+        }
+        leaf.data[pos] = newData;
+        //increment numwords
+        leaf.numWords++;
+    } // end of insertIntoLeaf
+
+    /**
+     * addAll
+     * 
+     * Adds a whole batch of words to the tree, the same as calling addWord for each
+     * of them but cheaper. The batch is first counted locally, collapsing repeats of
+     * a word into one count, and sorted. The words are then merged into the tree in
+     * order, starting each search from where the previous word ended up instead of
+     * from the root, since the next word in order is usually close by.
+     * 
+     * @param words The words to add.
+     */
+    public void addAll(Iterable<String> words){
+        DataPair[] batch = sortBatch(words);
+        addSorted(batch, batch.length);
+    } // end of addAll
+
+    /**
+     * addAll
+     * 
+     * Adds a whole stream of words to the tree, see addAll(Iterable).
+     * 
+     * @param words The words to add.
+     */
+    public void addAll(Stream<String> words){
+        addAll((Iterable<String>) words::iterator);
+    } // end of addAll
+
+    /**
+     * sortBatch
+     * 
+     * A helper method that counts a batch of words, folding each word only once,
+     * and returns one data pair per distinct word in order, with its count in the
+     * batch as its frequency. Package-private so ConcurrentTwoThreeTree can do this
+     * before taking its lock.
+     * 
+     * @param words The words in the batch
+     * @return the distinct words of the batch in order, with their counts
+     */
+    static DataPair[] sortBatch(Iterable<String> words){
+        HashMap<String, DataPair> counts = new HashMap<>();
+        for(String word : words){
+            String key = foldKey(word);
+            DataPair pair = counts.get(key);
+            if(pair == null){
+                // first time in this batch, keep the word as it was first given
+                pair = new DataPair();
+                pair.word = word;
+                pair.key = key;
+                counts.put(key, pair);
+            }
+            pair.frequency++;
+        }
+
+        DataPair[] batch = counts.values().toArray(new DataPair[0]);
+        Arrays.sort(batch, (a, b) -> a.key.compareTo(b.key));
+        return batch;
+    } // end of sortBatch
+
+    /**
+     * addSorted
+     * 
+     * A helper method that merges data pairs, sorted by key with no repeats, into the
+     * tree. A data pair whose word is not in the tree yet is put into the tree as is,
+     * otherwise its frequency is added to the word's frequency. Package-private so the
+     * other classes that build up sorted batches can use it.
+     * 
+     * @param batch The data pairs, in order
+     * @param size How many of the data pairs to merge
+     */
+    void addSorted(DataPair[] batch, int size){
+        Node finger = root;
+        for(int i = 0; i < size; i++){
+            if(finger == null){
+                // empty tree, the first word becomes the root
                 Node newNode = new Node();
-                newNode.data[0].word = word;
-                newNode.data[0].frequency++;
+                newNode.data[0] = batch[i];
                 newNode.numWords++;
+                refreshCounts(newNode);
                 root = newNode;
-            } else {
-                // tree is not empty
-                //find the leaf node where the initial vaue insert happens before the 
-                    //potential split
-                Node curr = root;
-                Node prev = null;
-
-                // iterate until we fall of the tree and find the leaf node
-                while (curr != null){
-                    prev = curr;
-                    if(curr.numWords == 2){
-                        // dealing with a node that that two pieces of data
-                        curr = twoDataNodeHelp(curr, word);
-                    } else{
-                        // node only has one piece of data
-                        curr = oneDataNodeHelp(curr, word);
-                    }
-                }
+                nodeCount++;
+                frequencyChanged(batch[i]);
+                finger = newNode;
+            } else{
+                finger = mergeFrom(climbFrom(finger, batch[i].key), batch[i]);
+            }
+        }
+    } // end of addSorted
 
-                // leaf node found, and now we add the new data piece
-                DataPair newData = new DataPair();
-                newData.word = word;
-                newData.frequency++;
-
-                // the leaf node we found has two pieces of data already
-                if(prev.numWords == 2){
-                    if(word.compareToIgnoreCase(prev.data[0].word) < 0){
-                        // inserting in front..leftmost
-                        // move pos 1 to 2
-                        DataPair temp1 = prev.data[1];
-                        prev.data[2] = temp1;
-                        // move pos 0 to 1
-                        DataPair temp2 = prev.data[0];
-                        prev.data[1] = temp2;
-                        // insert at pos 0
-                        prev.data[0] = newData;
-                    } else if(word.compareToIgnoreCase(prev.data[1].word) > 0){
-                        // inserting at the end..rightmost
-                        // insert at pos 2
-                        prev.data[2] = newData;
-                    } else{
-                        // inserting in the middle
-                        // move pos 1 to 2
-                        DataPair temp3 = prev.data[1];
-                        prev.data[2] = temp3;
-                        // insert at pos 1
-                        prev.data[1] = newData;
-                    }
-                } else{
-                    // the leaf node we found has one piece of data 
-                    if(word.compareToIgnoreCase(prev.data[0].word) < 0){
-                        // move the word over and insert in the front
-                        DataPair temp = prev.data[0];
-                        prev.data[1] = temp;
-                        prev.data[0] = newData;
-                    } else{
-                        //insert at spot 1..ie the end
-                        prev.data[1] = newData;
-                    }
-                }
-                //increment numwords
-                prev.numWords++;
-            
-                // if the node where we inserted value has 3 pieces of data,
-                    //then we split
-                if(prev.numWords == 3){
-                    //too full...split and rebalance
-                    //call split method
-                    splitNode(prev);
+    /**
+     * climbFrom
+     * 
+     * A private helper method for addSorted. Starting from the node the previous
+     * (smaller) word ended up in, climbs up the tree until reaching a node whose
+     * subtree can hold the key. The previous word is inside the subtree, so the key
+     * is always above the subtree's lower bound, and we only need to check that it
+     * is below the parent's data right after it.
+     * 
+     * @param finger The node where the previous word ended up
+     * @param key The folded word to look for next
+     * @return the node to start searching from
+     */
+    private Node climbFrom(Node finger, String key){
+        Node curr = finger;
+        while(curr.parent != null){
+            Node parent = curr.parent;
+            // find which child we are, the data right after it is our upper bound
+            int i = 0;
+            while(parent.children[i] != curr){
+                i++;
+            }
+            if(i < parent.numWords && key.compareTo(parent.data[i].key) < 0){
+                // the key falls inside this subtree
+                break;
+            }
+            curr = parent;
+        }
+        return curr;
+    } // end of climbFrom
+
+    /**
+     * mergeFrom
+     * 
+     * A private helper method for addSorted that finds-or-inserts a data pair,
+     * searching down from the given node rather than from the root.
+     * 
+     * @param start The node to start searching from
+     * @param newData The data pair to merge in
+     * @return the node the word ended up in, or if inserting it caused a split, the
+     *         node where the split stopped
+     */
+    private Node mergeFrom(Node start, DataPair newData){
+        String key = newData.key;
+        Node curr = start;
+        Node prev = null;
+        int pos = 0;
+
+        // iterate until we either find the word or fall off the tree at a leaf
+        while (curr != null){
+            prev = curr;
+            pos = curr.numWords;
+            for(int i = 0; i < curr.numWords; i++){
+                int cmp = key.compareTo(curr.data[i].key);
+                if(cmp == 0){
+                    // found it, add the batch count to its frequency
+                    addToFrequency(curr, curr.data[i], newData.frequency);
+                    return curr;
+                } else if(cmp < 0){
+                    pos = i;
+                    break;
                 }
             }
+            curr = curr.children[pos];
         }
-    } // end of addWord
+
+        // leaf node found, insert and split if too full
+        insertIntoLeaf(prev, pos, newData);
+        if(prev.numWords == 3){
+            prev = splitNode(prev);
+        }
+        refreshUp(prev);
+        frequencyChanged(newData);
+        return prev;
+    } // end of mergeFrom
 
     /**
      * splitNode
@@ -126,8 +599,10 @@ public class TwoThreeTree implements GameTree{
      * of a 2-3 Tree, by considering every possible scenario. 
      * 
      * @param aNode The node being split
+     * @return The last node looked at, which is no longer full and is still part of
+     *         the tree. Everything moved by the split is inside its subtree.
      */
-    private void splitNode(Node aNode){
+    private Node splitNode(Node aNode){
         /*
          * we split the node as long as the node has 3 pieces of data. This strategy helps 
          * make sure that the entire tree is balanced, i.e. we don't just split one node, 
@@ -141,9 +616,11 @@ public class TwoThreeTree implements GameTree{
             if(aNode.parent == null ){ 
                 if(isLeaf(aNode)){ 
                     //either a single node in the tree (root but no children)
+                    countSplit(TreeMetrics.SplitCase.SINGLE_NODE);
                     aNode = singleNode(aNode); 
                 } else{
                     // or root node (no parent but children)
+                    countSplit(TreeMetrics.SplitCase.ROOT_NODE);
                     aNode = rootNode(aNode);
                 }
             } else{ 
@@ -152,25 +629,51 @@ public class TwoThreeTree implements GameTree{
                     // if a leaf node
                     if(aNode.parent.numWords == 1){
                         // leaf node's parent has 1 data only
+                        countSplit(TreeMetrics.SplitCase.PARENT_NODE_ONE_DATA_LEAF);
                         aNode = parentNodeOneDataLeaf(aNode);
                     } else{
                         // leaf node's parent has 2 data
+                        countSplit(TreeMetrics.SplitCase.PARENT_NODE_TWO_DATA_LEAF);
                         aNode = parentNodeTwoDataLeaf(aNode);
                     }
                 } else{
                     // if an internal node
                     if(aNode.parent.numWords == 1){
                         // internal node's parent has 1 data only
+                        countSplit(TreeMetrics.SplitCase.PARENT_NODE_ONE_DATA_INTERNAL);
                         aNode = parentNodeOneDataInternal(aNode);
                     } else{
                         // internal node's parent has 2 data
+                        countSplit(TreeMetrics.SplitCase.PARENT_NODE_TWO_DATA_INTERNAL);
                         aNode = parentNodeTwoDataInternal(aNode);
                     }
                 }
             }
+
+            // the split node and its new sibling now hold different words,
+                //recount the children of the parent (the parent itself is
+                //recounted on the next loop, or by the caller)
+            for(int i = 0; i <= aNode.numWords; i++){
+                refreshCounts(aNode.children[i]);
+            }
         }
+        return aNode;
     } // end of splitNode
 
+    /**
+     * countSplit
+     * 
+     * A private helper method that counts a split in the metrics, if they are on.
+     * 
+     * @param splitCase Which of the split helpers is doing the split
+     */
+    private void countSplit(TreeMetrics.SplitCase splitCase){
+        TreeMetrics current = metrics;
+        if(current != null){
+            current.split(splitCase);
+        }
+    } // end of countSplit
+
     /**
      * isLeaf
      * 
@@ -197,21 +700,17 @@ public class TwoThreeTree implements GameTree{
         // create the new root, which is the middle value of the node being split
         Node newNode = new Node();
         root = newNode;
+        nodeCount++;
         newNode.data[0] = aNode.data[1];
         newNode.numWords++;
 
         // split the node into two children
-        //new child 1 - left child
-        Node newChild1 = new Node();
-        newChild1.data[0] = aNode.data[0];
-        newChild1.numWords++;
-        newChild1.parent = newNode;
-        newNode.children[0] = newChild1;
+        //the node being split keeps its first value and becomes the left child
+        Node newChild2 = splitOffRight(aNode);
+        aNode.parent = newNode;
+        newNode.children[0] = aNode;
 
         // new child 2 - right child
-        Node newChild2 = new Node();
-        newChild2.data[0] = aNode.data[2];
-        newChild2.numWords++;
         newChild2.parent = newNode;
         newNode.children[1] = newChild2;
         
@@ -231,6 +730,7 @@ public class TwoThreeTree implements GameTree{
         // create the new root, which is the middle value of the root node being split
         Node newRoot = new Node();
         root = newRoot;
+        nodeCount++;
         newRoot.data[0] = aNode.data[1];
         newRoot.numWords++;
 
@@ -238,29 +738,16 @@ public class TwoThreeTree implements GameTree{
          * split the node into two children, and further update the children connection 
          * for those new children because when we split the root node, it had 4 children
          */
-        //new child 1 - left child
-        Node newChild1 = new Node();
-        newChild1.data[0] = aNode.data[0];
-        newChild1.numWords++;
-        newChild1.parent = newRoot;
-        newRoot.children[0] = newChild1;
-        // making sure to not break the connection with the rest of the tree
-        newChild1.children[0] = aNode.children[0];
-        newChild1.children[0].parent = newChild1;
-        newChild1.children[1] = aNode.children[1];
-        newChild1.children[1].parent = newChild1;
+        //the node being split keeps its first value and first two children, and
+            //becomes the left child
+        Node newChild2 = splitOffRight(aNode);
+        moveRightChildren(aNode, newChild2);
+        aNode.parent = newRoot;
+        newRoot.children[0] = aNode;
         
         // new child 2 - right child
-        Node newChild2 = new Node();
-        newChild2.data[0] = aNode.data[2];
-        newChild2.numWords++;
         newChild2.parent = newRoot;
         newRoot.children[1] = newChild2;
-        // making sure to not break the connection with the rest of the tree
-        newChild2.children[0] = aNode.children[2];
-        newChild2.children[0].parent = newChild2;
-        newChild2.children[1] = aNode.children[3];
-        newChild2.children[1].parent = newChild2;
         
         return newRoot;
     } // end of rootNode
@@ -285,32 +772,18 @@ public class TwoThreeTree implements GameTree{
          */
         if(aNode.parent.children[0] == aNode){
             // if left child
-            DataPair newPair = new DataPair();
-            newPair = aNode.parent.data[0];
             //move data from pos 0 value to pos 1 - ordered insert
-            aNode.parent.data[1] = newPair; 
+            aNode.parent.data[1] = aNode.parent.data[0]; 
             aNode.parent.data[0] = aNode.data[1];
 
             // creating room to add the new middle child
             // sp move child 1 to 2 (new right child)
-            Node newNode = new Node();
-            newNode = aNode.parent.children[1];
-            aNode.parent.children[2] = newNode; 
+            aNode.parent.children[2] = aNode.parent.children[1]; 
 
             // splitting remianing values into  two children
-            //new child 1 - left child
-            Node newChild1 = new Node();
-            newChild1.data[0] = aNode.data[0];
-            newChild1.numWords++;
-            newChild1.parent = aNode.parent;
-            aNode.parent.children[0] = newChild1;
-
+            // the node being split stays the left child
             // new child 2 - middle child
-            Node newChild2 = new Node();
-            newChild2.data[0] = aNode.data[2];
-            newChild2.numWords++;
-            newChild2.parent = aNode.parent;
-            aNode.parent.children[1] = newChild2;
+            aNode.parent.children[1] = splitOffRight(aNode);
 
         } else{
             // if right child
@@ -318,21 +791,11 @@ public class TwoThreeTree implements GameTree{
             aNode.parent.data[1] = aNode.data[1];
             
             // splitting remianing values into two children
-            // left child remains the same
-
-            //new child 1 - middle child
-            Node newChild3 = new Node();
-            newChild3.data[0] = aNode.data[0];
-            newChild3.numWords++;
-            newChild3.parent = aNode.parent;
-            aNode.parent.children[1] = newChild3;
+            // left child remains the same, and the node being split stays
+                //the middle child
 
             // new child 2 - right child
-            Node newChild4 = new Node();
-            newChild4.data[0] = aNode.data[2];
-            newChild4.numWords++;
-            newChild4.parent = aNode.parent;
-            aNode.parent.children[2] = newChild4;
+            aNode.parent.children[2] = splitOffRight(aNode);
         }
         return aNode.parent;
     } // end of parentNodeOneDataLeaf
@@ -359,78 +822,44 @@ public class TwoThreeTree implements GameTree{
             // if left child
             // updating parent node
             // move pos 1 to 2
-            DataPair newPair1 = new DataPair();
-            newPair1 = aNode.parent.data[1];
-            aNode.parent.data[2] = newPair1;
+            aNode.parent.data[2] = aNode.parent.data[1];
 
             // move pos 0 to 1
-            DataPair newPair2 = new DataPair();
-            newPair2 = aNode.parent.data[0];
-            aNode.parent.data[1] = newPair2;
+            aNode.parent.data[1] = aNode.parent.data[0];
 
             // insert at pos 0
             aNode.parent.data[0] = aNode.data[1];
 
-            //splitting the remaining values in the node in two new children.
+            //splitting the remaining values in the node in two children.
             // making room in the front of the children array
 
             // move child 2 to 3
-            Node newNode1 = new Node();
-            newNode1 = aNode.parent.children[2];
-            aNode.parent.children[3] = newNode1;
+            aNode.parent.children[3] = aNode.parent.children[2];
 
             // move child 1 to 2
-            Node newNode2 = new Node();
-            newNode2 = aNode.parent.children[1];
-            aNode.parent.children[2] = newNode2;
-
-            // inserting new child at pos 0
-            //new child 1 - left child
-            Node newChild1 = new Node();
-            newChild1.data[0] = aNode.data[0];
-            newChild1.numWords++;
-            newChild1.parent = aNode.parent;
-            aNode.parent.children[0] = newChild1;
-
-            // inserting new child at pos 1
-            // new child 2 - middle child
-            Node newChild2 = new Node();
-            newChild2.data[0] = aNode.data[2];
-            newChild2.numWords++;
-            newChild2.parent = aNode.parent;
-            aNode.parent.children[1] = newChild2;
+            aNode.parent.children[2] = aNode.parent.children[1];
+
+            // the node being split stays at pos 0 - left child
+            // new child 2 insert at pos 1 - middle child
+            aNode.parent.children[1] = splitOffRight(aNode);
             
         } else if(aNode.parent.children[1] == aNode){
             // if middle child
 
             // updating parent node
             // move data 1 to 2
-            DataPair newPair3 = new DataPair();
-            newPair3 = aNode.parent.data[1];
-            aNode.parent.data[2] = newPair3;
+            aNode.parent.data[2] = aNode.parent.data[1];
 
             // insert at pos 1
             aNode.parent.data[1] = aNode.data[1];
 
-            //splitting the remaining values in the node in two new children.
+            //splitting the remaining values in the node in two children.
             // move child from pos 2 to 3
-            Node newNode3 = new Node();
-            newNode3 = aNode.parent.children[2];
-            aNode.parent.children[3] = newNode3;
-
-            //new child 1 insert at pos 1 - middle child
-            Node newChild3 = new Node();
-            newChild3.data[0] = aNode.data[0];
-            newChild3.numWords++;
-            newChild3.parent = aNode.parent;
-            aNode.parent.children[1] = newChild3;
+            aNode.parent.children[3] = aNode.parent.children[2];
 
+            // the node being split stays at pos 1 - middle child
             // new child 2 insert at pos 2 - right child
-            Node newChild4 = new Node();
-            newChild4.data[0] = aNode.data[2];
-            newChild4.numWords++;
-            newChild4.parent = aNode.parent;
-            aNode.parent.children[2] = newChild4;
+            aNode.parent.children[2] = splitOffRight(aNode);
 
         } else {
             // if right child
@@ -438,21 +867,11 @@ public class TwoThreeTree implements GameTree{
             // insert value at pos 2..pos should be empty already
             aNode.parent.data[2] = aNode.data[1];
 
-            //splitting the remaining values in the node in two new children.
-
-            //new child 1 insert at pos 2 - right child
-            Node newChild5 = new Node();
-            newChild5.data[0] = aNode.data[0];
-            newChild5.numWords++;
-            newChild5.parent = aNode.parent;
-            aNode.parent.children[2] = newChild5;
+            //splitting the remaining values in the node in two children.
 
+            // the node being split stays at pos 2 - right child
             // new child 2 insert at pos 3 - place holder child
-            Node newChild6 = new Node();
-            newChild6.data[0] = aNode.data[2];
-            newChild6.numWords++;
-            newChild6.parent = aNode.parent;
-            aNode.parent.children[3] = newChild6;
+            aNode.parent.children[3] = splitOffRight(aNode);
         }
         return aNode.parent;
     } // end of parentNodeTwoDataLeaf
@@ -482,40 +901,19 @@ public class TwoThreeTree implements GameTree{
 
         if(aNode.parent.children[0] == aNode){
             //if left child
-            DataPair newPair = new DataPair();
-            newPair = aNode.parent.data[0];
             //move pos 0 value to pos 1
-            aNode.parent.data[1] = newPair; 
+            aNode.parent.data[1] = aNode.parent.data[0]; 
             // middle value goes up
             aNode.parent.data[0] = aNode.data[1];
 
             // move child 1 to 2 making room for new middle child
-            Node newNode = new Node();
-            newNode = aNode.parent.children[1];
-            aNode.parent.children[2] = newNode; 
-
-            //new child 1 insert at pos 0 - left child
-            Node newChild1 = new Node();
-            newChild1.data[0] = aNode.data[0];
-            newChild1.numWords++;
-            newChild1.parent = aNode.parent;
-            //updating children connection
-            newChild1.children[0] = aNode.children[0];
-            newChild1.children[0].parent = newChild1;
-            newChild1.children[1] = aNode.children[1];
-            newChild1.children[1].parent = newChild1;
-            aNode.parent.children[0] = newChild1;
-
-            // new child 2 insert at pos 1 - right child
-            Node newChild2 = new Node();
-            newChild2.data[0] = aNode.data[2];
-            newChild2.numWords++;
-            newChild2.parent = aNode.parent;
+            aNode.parent.children[2] = aNode.parent.children[1]; 
+
+            // the node being split stays at pos 0 - left child
+            // new child 2 insert at pos 1 - middle child
+            Node newChild2 = splitOffRight(aNode);
             //updating children connection
-            newChild2.children[0] = aNode.children[2];
-            newChild2.children[0].parent = newChild2;
-            newChild2.children[1] = aNode.children[3];
-            newChild2.children[1].parent = newChild2;
+            moveRightChildren(aNode, newChild2);
             aNode.parent.children[1] = newChild2;
 
         } else{
@@ -523,28 +921,11 @@ public class TwoThreeTree implements GameTree{
             // insert data in empty position
             aNode.parent.data[1] = aNode.data[1];
 
-            //new child 1 insert at pos 0 - left child
-            Node newChild3 = new Node();
-            newChild3.data[0] = aNode.data[0];
-            newChild3.numWords++;
-            newChild3.parent = aNode.parent;
-            //update children connection
-            newChild3.children[0] = aNode.children[0];
-            newChild3.children[0].parent = newChild3;
-            newChild3.children[1] = aNode.children[1];
-            newChild3.children[1].parent = newChild3;
-            aNode.parent.children[1] = newChild3;
-
-            // new child 2 insert at pos 1 - middle child
-            Node newChild4 = new Node();
-            newChild4.data[0] = aNode.data[2];
-            newChild4.numWords++;
-            newChild4.parent = aNode.parent;
+            // the node being split stays at pos 1 - middle child
+            // new child 2 insert at pos 2 - right child
+            Node newChild4 = splitOffRight(aNode);
             //update children connection
-            newChild4.children[0] = aNode.children[2];
-            newChild4.children[0].parent = newChild4;
-            newChild4.children[1] = aNode.children[3];
-            newChild4.children[1].parent = newChild4;
+            moveRightChildren(aNode, newChild4);
             aNode.parent.children[2] = newChild4;
           
         }
@@ -578,50 +959,25 @@ public class TwoThreeTree implements GameTree{
             // if left child
             // updating parent node
             // move pos 1 to 2
-            DataPair newPair1 = new DataPair();
-            newPair1 = aNode.parent.data[1];
-            aNode.parent.data[2] = newPair1;
+            aNode.parent.data[2] = aNode.parent.data[1];
 
             // move pos 0 to 1
-            DataPair newPair2 = new DataPair();
-            newPair2 = aNode.parent.data[0];
-            aNode.parent.data[1] = newPair2;
+            aNode.parent.data[1] = aNode.parent.data[0];
 
             // insert at 0
             aNode.parent.data[0] = aNode.data[1];
 
             //move child at pos 2 to 3
-            Node newNode1 = new Node();
-            newNode1 = aNode.parent.children[2];
-            aNode.parent.children[3] = newNode1;
+            aNode.parent.children[3] = aNode.parent.children[2];
 
             // move child at pos 1 to 2
-            Node newNode2 = new Node();
-            newNode2 = aNode.parent.children[1];
-            aNode.parent.children[2] = newNode2;
-
-            //new child 1 insert at pos 0 - left child
-            Node newChild1 = new Node();
-            newChild1.data[0] = aNode.data[0];
-            newChild1.numWords++;
-            newChild1.parent = aNode.parent;
-            //update children connection
-            newChild1.children[0] = aNode.children[0];
-            newChild1.children[0].parent = newChild1;
-            newChild1.children[1] = aNode.children[1];
-            newChild1.children[1].parent = newChild1;
-            aNode.parent.children[0] = newChild1;
+            aNode.parent.children[2] = aNode.parent.children[1];
 
+            // the node being split stays at pos 0 - left child
             // new child 2 insert at pos 1 - middle child
-            Node newChild2 = new Node();
-            newChild2.data[0] = aNode.data[2];
-            newChild2.numWords++;
-            newChild2.parent = aNode.parent;
+            Node newChild2 = splitOffRight(aNode);
             //update children connection
-            newChild2.children[0] = aNode.children[2];
-            newChild2.children[0].parent = newChild2;
-            newChild2.children[1] = aNode.children[3];
-            newChild2.children[1].parent = newChild2;
+            moveRightChildren(aNode, newChild2);
             aNode.parent.children[1] = newChild2;
             
         } else if(aNode.parent.children[1] == aNode){
@@ -629,40 +985,19 @@ public class TwoThreeTree implements GameTree{
 
             // updating parent node
             // move pos 1 to 2
-            DataPair newPair3 = new DataPair();
-            newPair3 = aNode.parent.data[1];
-            aNode.parent.data[2] = newPair3;
+            aNode.parent.data[2] = aNode.parent.data[1];
 
             // insert at pos 1
             aNode.parent.data[1] = aNode.data[1];
 
             // move child at pos 2 to 3
-            Node newNode3 = new Node();
-            newNode3 = aNode.parent.children[2];
-            aNode.parent.children[3] = newNode3;
-
-            //new child 1 insert at pos 1 - middle child
-            Node newChild3 = new Node();
-            newChild3.data[0] = aNode.data[0];
-            newChild3.numWords++;
-            newChild3.parent = aNode.parent;
-            //update children connection
-            newChild3.children[0] = aNode.children[0];
-            newChild3.children[0].parent = newChild3;
-            newChild3.children[1] = aNode.children[1];
-            newChild3.children[1].parent = newChild3;
-            aNode.parent.children[1] = newChild3;
+            aNode.parent.children[3] = aNode.parent.children[2];
 
+            // the node being split stays at pos 1 - middle child
             // new child 2 insert at pos 2 - right child
-            Node newChild4 = new Node();
-            newChild4.data[0] = aNode.data[2];
-            newChild4.numWords++;
-            newChild4.parent = aNode.parent;
+            Node newChild4 = splitOffRight(aNode);
             //update children connection
-            newChild4.children[0] = aNode.children[2];
-            newChild4.children[0].parent = newChild4;
-            newChild4.children[1] = aNode.children[3];
-            newChild4.children[1].parent = newChild4;
+            moveRightChildren(aNode, newChild4);
             aNode.parent.children[2] = newChild4;
     
         } else {
@@ -671,134 +1006,1110 @@ public class TwoThreeTree implements GameTree{
             // insert at empty pos 2
             aNode.parent.data[2] = aNode.data[1];
 
-            //new child 1 insert at pos 2 - right child
-            Node newChild5 = new Node();
-            newChild5.data[0] = aNode.data[0];
-            newChild5.numWords++;
-            newChild5.parent = aNode.parent;
+            // the node being split stays at pos 2 - right child
+            // new child 2 insert at pos 3 - placeholder
+            Node newChild6 = splitOffRight(aNode);
             //update children connection
-            newChild5.children[0] = aNode.children[0];
-            newChild5.children[0].parent = newChild5;
-            newChild5.children[1] = aNode.children[1];
-            newChild5.children[1].parent = newChild5;
-            aNode.parent.children[2] = newChild5;
-
-            // new child 2insert at pos 3 - placeholder
-            Node newChild6 = new Node();
-            newChild6.data[0] = aNode.data[2];
-            newChild6.numWords++;
-            newChild6.parent = aNode.parent;
-            //update children connection
-            newChild6.children[0] = aNode.children[2];
-            newChild6.children[0].parent = newChild6;
-            newChild6.children[1] = aNode.children[3];
-            newChild6.children[1].parent = newChild6;
+            moveRightChildren(aNode, newChild6);
             aNode.parent.children[3] = newChild6;   
         }
         return aNode.parent;
     } // end of parentNodeTwoDataInternal
 
     /**
-     * Checks if the tree contains the specified word.
-     * @param word The word to check for.
-     * @return true if the word is found in the tree, false otherwise.
+     * splitOffRight
+     * 
+     * A private method used by the split helpers. Instead of building two brand new
+     * children, the node being split keeps its first value and a new node is only
+     * created for its last value. The middle value has to be moved up by the caller
+     * before calling this, since it gets cleared out of the node here.
+     * 
+     * @param aNode The node being split, left with only its first value
+     * @return The new node holding the last value of the node being split
      */
-    @Override
-    public boolean containsWord(String word) {
-        boolean found = false;
-        // proceed if tree is not empty
-        if(root != null){
-            Node target = findNode(word);
-            // if target is null that means we didn't find the word
-            if (target != null){
-                found = true;
-            }
-        }
-        return found;
-    } // end of containsWord
+    private Node splitOffRight(Node aNode){
+        Node newChild = new Node();
+        nodeCount++;
+        newChild.data[0] = aNode.data[2];
+        newChild.numWords++;
+        newChild.parent = aNode.parent;
+
+        // the node being split keeps only its first value
+        aNode.data[1] = null;
+        aNode.data[2] = null;
+        aNode.numWords = 1;
+        return newChild;
+    } // end of splitOffRight
 
     /**
-     * Gets the frequency of a given word in the tree.
-     * @param word The word whose frequency is to be retrieved.
-     * @return The frequency of the word, or 0 if the word is not found.
+     * moveRightChildren
+     * 
+     * A private method used when splitting an internal node. The node being split
+     * had 4 children, so the last two are handed over to the new right node, making
+     * sure to not break the connection with the rest of the tree.
+     * 
+     * @param aNode The internal node being split
+     * @param newChild The new node created for the last value of aNode
      */
-    @Override
-    public int getFrequency(String word) {
-        int wordFreq = 0;
-        // proceed only if the tree contains the word
-        if(containsWord(word)){
+    private void moveRightChildren(Node aNode, Node newChild){
+        newChild.children[0] = aNode.children[2];
+        newChild.children[0].parent = newChild;
+        newChild.children[1] = aNode.children[3];
+        newChild.children[1].parent = newChild;
 
-            // find the correct node
-            Node targetNode = findNode(word);
+        aNode.children[2] = null;
+        aNode.children[3] = null;
+    } // end of moveRightChildren
 
-            // then find the correct data pair to get the frequency from
-            for(int i = 0; i < targetNode.data.length; i++){
-                if(targetNode.data[i].word != null){
-                    if (targetNode.data[i].word.equalsIgnoreCase(word)){
-                        wordFreq = targetNode.data[i].frequency;
-                    }
-                } 
-            }
+    /**
+     * refreshCounts
+     * 
+     * A private helper method that recounts how many words are in the subtree of a
+     * node, and the total of their frequencies, from the node's own data and the
+     * counts already kept by its children. Also points the node's data pairs back
+     * at it, for the hot word cache.
+     * 
+     * @param aNode The node to recount
+     */
+    private static void refreshCounts(Node aNode){
+        int size = aNode.numWords;
+        long total = 0;
+        for(int i = 0; i < aNode.numWords; i++){
+            total += aNode.data[i].frequency;
+            // every node whose data changed gets recounted, so this keeps owner right
+            aNode.data[i].owner = aNode;
         }
-        return wordFreq;
-    } // end of getFrequency
+        for(int i = 0; i <= aNode.numWords && aNode.children[i] != null; i++){
+            size += aNode.children[i].size;
+            total += aNode.children[i].total;
+        }
+        aNode.size = size;
+        aNode.total = total;
+    } // end of refreshCounts
 
     /**
-     * findNode
+     * refreshUp
      * 
-     * A private helper method that finds the Node that has the specified word
-     * as its data.
-     *  
-     * @param word the word that the node must have as its data
-     * @return returns the Node if found, or null otherwise
+     * A private helper method that recounts a node and all the nodes above it, after
+     * words were added to or taken out of its subtree.
+     * 
+     * @param aNode The lowest node whose counts changed
      */
-    private Node findNode(String word){
-        Node target = root;
-        boolean found = false;
-
-        // iterate until we find the node, or we reach the end without finding
-        while (target != null && !found){
-            if(target.data[1].word != null){
-                // node has two data values
-                if(target.data[0].word.equalsIgnoreCase(word) || target.data[1].word.equalsIgnoreCase(word)){
-                    found = true;
-                } else{
-                    //move curr to left, middle or right
-                    target = twoDataNodeHelp(target, word);
-                }
-            } else{
-                // node has one data value
-                // normal bst search
-                if(target.data[0].word.compareToIgnoreCase(word) == 0){
-                    found = true;
-                } else {
-                      target = oneDataNodeHelp(target, word);
-                }           
-            }
+    private void refreshUp(Node aNode){
+        while(aNode != null){
+            refreshCounts(aNode);
+            aNode = aNode.parent;
         }
-        return target;
-    } // end of findNode
+    } // end of refreshUp
 
     /**
-     * twoDataNodeHelp
+     * addToTotals
      * 
-     * This is a private method that helps iterate through the tree in the right
-     * order based on the word we are looking for, if we come across a node that
-     * has two pieces of data in it and we need to decide if we should move to
-     * the left, middle, or right child
+     * A private helper method that adds a change in the frequency of a word to the
+     * frequency totals of its node and every node above it. The totals are updated
+     * atomically, so frequencies may change from many threads at once as long as the
+     * shape of the tree doesn't.
      * 
-     * @param target The node we have come to that has two pieces of data in it
-     * @param word The word that helps dictate which direction we go to
-     * @return the node we move to next
+     * @param aNode The node holding the word
+     * @param delta How much the frequency changed by
      */
-    private Node twoDataNodeHelp(Node target, String word){
-        Node newCurr = null;
+    private static void addToTotals(Node aNode, long delta){
+        while(aNode != null){
+            Node.TOTAL.getAndAdd(aNode, delta);
+            aNode = aNode.parent;
+        }
+    } // end of addToTotals
 
-        if(target.data[0].word.compareToIgnoreCase(word) > 0){
-            //left
-            newCurr = target.children[0];
-        } else if(target.data[1].word.compareToIgnoreCase(word) < 0){
-            //right
+    /**
+     * addToFrequency
+     * 
+     * A private helper method that changes the frequency of a word already in the
+     * tree, keeping the frequency totals and the top-K index up to date. The update
+     * is atomic, so it may run from many threads at once as long as the shape of the
+     * tree doesn't change.
+     * 
+     * @param aNode The node holding the word
+     * @param pair The data pair of the word
+     * @param delta How much to change the frequency by
+     * @return The frequency of the word afterwards
+     */
+    private int addToFrequency(Node aNode, DataPair pair, int delta){
+        int wordFreq = pair.addFrequency(delta);
+        addToTotals(aNode, delta);
+        frequencyChanged(pair);
+        return wordFreq;
+    } // end of addToFrequency
+
+    /**
+     * frequencyChanged
+     * 
+     * A private helper method that refiles a word in the top-K index, if there is
+     * one, after its frequency changed or it was added.
+     * 
+     * @param pair The data pair of the word
+     */
+    private void frequencyChanged(DataPair pair){
+        if(index != null){
+            index.update(pair);
+        }
+    } // end of frequencyChanged
+
+    /**
+     * foldPending
+     * 
+     * A helper method that adds counts made outside the tree (see DataPair.pending)
+     * to the frequency of a word, keeping the frequency totals and the top-K index
+     * up to date. Does nothing once the word was removed. Package-private so
+     * ConcurrentTwoThreeTree can fold in what it counted without a lock, under its
+     * write lock.
+     * 
+     * @param pair The data pair of the word
+     * @param pending The counts taken out of the data pair, may be below 0
+     */
+    void foldPending(DataPair pair, long pending){
+        if(applyPending(pair, pending)){
+            frequencyChanged(pair);
+        }
+    } // end of foldPending
+
+    /**
+     * foldPending
+     * 
+     * Folds in the pending counts of every data pair taken from the queue, like
+     * foldPending for each of them, except that the words are refiled in the top-K
+     * index as one batch at the end, so it is only locked once.
+     * 
+     * @param dirty The data pairs with counts pending, emptied on the way
+     */
+    void foldPending(Queue<DataPair> dirty){
+        ArrayList<DataPair> changed = index == null ? null : new ArrayList<>();
+        for(DataPair pair = dirty.poll(); pair != null; pair = dirty.poll()){
+            if(applyPending(pair, pair.takePending()) && changed != null){
+                changed.add(pair);
+            }
+        }
+        if(changed != null && !changed.isEmpty()){
+            index.updateAll(changed);
+        }
+    } // end of foldPending
+
+    // adds pending counts to the frequency and the totals, returns whether anything changed
+    private static boolean applyPending(DataPair pair, long pending){
+        Node owner = pair.owner;
+        if(pending == 0 || DataPair.isGone(pending) || owner == null){
+            return false;
+        }
+        pair.frequency += (int) pending;
+        addToTotals(owner, pending);
+        return true;
+    }
+
+    /**
+     * enableTopK
+     * 
+     * Starts keeping the words grouped by frequency, so topK can answer without
+     * walking the whole tree. Every frequency change after this also refiles the word
+     * in the index, which makes adding words a little slower, so it is off by
+     * default. Calling it again does nothing.
+     */
+    public void enableTopK(){
+        if(index == null){
+            index = new FrequencyIndex<>(DataPair::getFrequency);
+            WordCursor cursor = new WordCursor(null, null);
+            while(cursor.next()){
+                index.update(cursor.current);
+            }
+        }
+    } // end of enableTopK
+
+    /**
+     * topK
+     * 
+     * Lists the most frequent words of the tree, most frequent first. Words with the
+     * same frequency are listed in the order they reached it. Needs enableTopK to
+     * have been called, and then only looks at the words it returns.
+     * 
+     * @param k How many words are wanted
+     * @return up to k words, as they were first added
+     * @throws IllegalStateException if enableTopK was never called
+     */
+    public List<String> topK(int k){
+        if(index == null){
+            throw new IllegalStateException("Call enableTopK first");
+        }
+        List<DataPair> top = index.topK(k);
+        ArrayList<String> words = new ArrayList<>(top.size());
+        for(DataPair pair : top){
+            words.add(pair.word);
+        }
+        return words;
+    } // end of topK
+
+    /**
+     * enableMetrics
+     * 
+     * Starts counting what the tree does, see TreeMetrics. While metrics are off,
+     * the only cost is checking that they are off. Calling it again returns the
+     * metrics already being kept.
+     * 
+     * @return the metrics of the tree
+     */
+    public TreeMetrics enableMetrics(){
+        if(metrics == null){
+            metrics = new TreeMetrics(() -> nodeCount, this::size, this::height);
+        }
+        return metrics;
+    } // end of enableMetrics
+
+    /**
+     * disableMetrics
+     * 
+     * Stops counting what the tree does, taking the metrics off JMX if they were
+     * registered.
+     */
+    public void disableMetrics(){
+        if(metrics != null){
+            metrics.unregister();
+            metrics = null;
+        }
+    } // end of disableMetrics
+
+    /**
+     * getMetrics
+     * 
+     * @return the metrics of the tree, or null if they are off
+     */
+    public TreeMetrics getMetrics(){
+        return metrics;
+    } // end of getMetrics
+
+    /**
+     * enableCache
+     * 
+     * Starts keeping the data pairs of recently used words in a small cache, see
+     * HotWordCache, so adding or looking up a hot word goes straight to its data
+     * pair instead of walking down the tree. Words only get cached once they are
+     * found in the tree, so a word seen just once never takes a slot. Calling it
+     * again starts over with an empty cache of the new size.
+     * 
+     * @param capacity About how many words to keep, rounded up to a power of two
+     * @throws IllegalArgumentException if the capacity is less than 1 or too big
+     */
+    public void enableCache(int capacity){
+        cache = new HotWordCache<>(capacity, pair -> pair.key);
+    } // end of enableCache
+
+    /**
+     * disableCache
+     * 
+     * Stops caching words and lets go of the cache.
+     */
+    public void disableCache(){
+        cache = null;
+    } // end of disableCache
+
+    /**
+     * cachedPair
+     * 
+     * A private helper method that looks a word up in the hot word cache, counting
+     * the hit or miss in the metrics.
+     * 
+     * @param key The folded word
+     * @return the data pair of the word, or null if the cache is off, the word isn't
+     *         cached, or it was removed from the tree since
+     */
+    private DataPair cachedPair(String key){
+        HotWordCache<DataPair> current = cache;
+        if(current == null){
+            return null;
+        }
+        DataPair pair = current.get(key);
+        if(pair != null && pair.owner == null){
+            // removed from the tree after it was cached
+            pair = null;
+        }
+        TreeMetrics currentMetrics = metrics;
+        if(currentMetrics != null){
+            currentMetrics.cacheLookup(pair != null);
+        }
+        return pair;
+    } // end of cachedPair
+
+    // puts the data pair of a word that was just found in the hot word cache
+    private void remember(DataPair pair){
+        HotWordCache<DataPair> current = cache;
+        if(current != null){
+            current.put(pair);
+        }
+    }
+
+    // marks the data pair of a removed word as gone, and takes it out of the cache
+    private void forget(DataPair pair){
+        pair.owner = null;
+        HotWordCache<DataPair> current = cache;
+        if(current != null){
+            current.remove(pair);
+        }
+    }
+
+    /**
+     * size
+     * 
+     * @return how many different words are in the tree
+     */
+    public int size(){
+        return root == null ? 0 : root.size;
+    } // end of size
+
+    /**
+     * totalFrequency
+     * 
+     * @return the frequencies of all the words in the tree added together
+     */
+    public long totalFrequency(){
+        return root == null ? 0 : root.total;
+    } // end of totalFrequency
+
+    /**
+     * rank
+     * 
+     * Finds how many words of the tree come before a word in lexicographic order,
+     * which is also the position the word has (or would have) in the tree. Takes a
+     * single descent, adding up the counts of the subtrees passed on the left.
+     * Treats all words as case-insensitive.
+     * 
+     * @param word The word to look for, it doesn't have to be in the tree
+     * @return the number of words in the tree less than the word
+     */
+    public int rank(String word){
+        String key = foldKey(word);
+        int rank = 0;
+        Node curr = root;
+        while(curr != null){
+            int i = 0;
+            int cmp = 1;
+            // skip over the data (and the subtrees before it) that is less than the key
+            while(i < curr.numWords && (cmp = key.compareTo(curr.data[i].key)) > 0){
+                rank += sizeOf(curr.children[i]) + 1;
+                i++;
+            }
+            if(cmp == 0){
+                // found the word, only the subtree right before it is left to count
+                return rank + sizeOf(curr.children[i]);
+            }
+            curr = curr.children[i];
+        }
+        return rank;
+    } // end of rank
+
+    /**
+     * select
+     * 
+     * Finds the word at a given position of the tree in lexicographic order, so
+     * select(0) is the first word. Takes a single descent, using the counts of the
+     * subtrees to skip over them.
+     * 
+     * @param index The position of the word, from 0
+     * @return the word at that position, as it was first added
+     * @throws IndexOutOfBoundsException if the index is negative or not less than size()
+     */
+    public String select(int index){
+        if(index < 0 || index >= size()){
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for " + size() + " words");
+        }
+        Node curr = root;
+        while(true){
+            int i = 0;
+            while(true){
+                int left = sizeOf(curr.children[i]);
+                if(index < left){
+                    // in the subtree before this data
+                    break;
+                } else if(index == left){
+                    // this data is the word
+                    return curr.data[i].word;
+                }
+                // skip the subtree and the data
+                index -= left + 1;
+                i++;
+            }
+            curr = curr.children[i];
+        }
+    } // end of select
+
+    /**
+     * sumFrequencies
+     * 
+     * Adds up the frequencies of the words from one word up to (but not including)
+     * another, using the frequency totals of the subtrees so only two descents are
+     * needed. Treats all words as case-insensitive.
+     * 
+     * @param from The first word of the range
+     * @param to The word the range stops before
+     * @return the frequencies of the words in range added together, 0 if the range is empty
+     */
+    public long sumFrequencies(String from, String to){
+        long sum = frequenciesBefore(foldKey(to)) - frequenciesBefore(foldKey(from));
+        return Math.max(sum, 0);
+    } // end of sumFrequencies
+
+    /**
+     * frequenciesBefore
+     * 
+     * A private helper method for sumFrequencies that adds up the frequencies of all
+     * the words less than a key, the same way rank counts them.
+     * 
+     * @param key The folded word to stop before
+     * @return the frequencies of the words less than the key added together
+     */
+    private long frequenciesBefore(String key){
+        long sum = 0;
+        Node curr = root;
+        while(curr != null){
+            int i = 0;
+            int cmp = 1;
+            while(i < curr.numWords && (cmp = key.compareTo(curr.data[i].key)) > 0){
+                sum += totalOf(curr.children[i]) + curr.data[i].frequency;
+                i++;
+            }
+            if(cmp == 0){
+                return sum + totalOf(curr.children[i]);
+            }
+            curr = curr.children[i];
+        }
+        return sum;
+    } // end of frequenciesBefore
+
+    // the number of words under a child, which is 0 below a leaf
+    private static int sizeOf(Node aNode){
+        return aNode == null ? 0 : aNode.size;
+    } // end of sizeOf
+
+    // the frequency total under a child, which is 0 below a leaf
+    private static long totalOf(Node aNode){
+        return aNode == null ? 0 : aNode.total;
+    } // end of totalOf
+
+    /**
+     * removeWord
+     * 
+     * Removes a word from the tree, whatever its frequency, while preserving the
+     * properties of a 2-3 Tree. Treats all words as case-insensitive.
+     * 
+     * @param word The word to remove.
+     * @return true if the word was in the tree, false otherwise
+     */
+    public boolean removeWord(String word){
+        String key = foldKey(word);
+        Node target = findNode(key);
+        if(target == null){
+            return false;
+        }
+        for(int i = 0; i < target.numWords; i++){
+            if(target.data[i].key.equals(key)){
+                // removeAt may have merged or reused target, don't look at it again
+                removeAt(target, i);
+                return true;
+            }
+        }
+        return false;
+    } // end of removeWord
+
+    /**
+     * decrementFrequency
+     * 
+     * Lowers the frequency of a word by one, removing the word from the tree once its
+     * frequency would reach 0. Treats all words as case-insensitive.
+     * 
+     * @param word The word whose frequency is lowered
+     * @return The frequency of the word afterwards, 0 if it was removed or was never
+     *         in the tree
+     */
+    public int decrementFrequency(String word){
+        String key = foldKey(word);
+        Node target = findNode(key);
+        int wordFreq = 0;
+        if(target != null){
+            DataPair pair = pairIn(target, key);
+            if(pair.frequency > 1){
+                wordFreq = addToFrequency(target, pair, -1);
+            } else{
+                removeWord(word);
+            }
+        }
+        return wordFreq;
+    } // end of decrementFrequency
+
+    /**
+     * pruneBelow
+     * 
+     * Removes every word whose frequency is below the given minimum, to keep the tree
+     * from growing forever. When only a few words go, they are removed one at a time;
+     * when a big share of the tree goes, it is quicker to rebuild the tree bottom-up
+     * from the words that stay, in linear time.
+     * 
+     * @param minFrequency The lowest frequency a word needs to stay in the tree
+     * @return how many words were removed
+     */
+    public int pruneBelow(int minFrequency){
+        // find the words that stay and the words that go, in order
+        ArrayList<DataPair> keep = new ArrayList<>();
+        ArrayList<DataPair> remove = new ArrayList<>();
+        WordCursor cursor = new WordCursor(null, null);
+        while(cursor.next()){
+            if(cursor.current.frequency < minFrequency){
+                remove.add(cursor.current);
+            } else{
+                keep.add(cursor.current);
+            }
+        }
+
+        if(remove.size() * 4 > keep.size() + remove.size()){
+            // more than a quarter of the words go, rebuild from the rest
+            buildFrom(keep.toArray(new DataPair[0]), keep.size());
+            for(DataPair pair : remove){
+                if(index != null){
+                    index.remove(pair);
+                }
+                forget(pair);
+            }
+        } else{
+            for(DataPair pair : remove){
+                removeWord(pair.key);
+            }
+        }
+        return remove.size();
+    } // end of pruneBelow
+
+    /**
+     * removeAt
+     * 
+     * A private method that removes a piece of data from a node. Data can only be
+     * taken straight out of a leaf, so data in an internal node first swaps places
+     * with the data right after it in order, which is the left-most data of the
+     * subtree to its right and is always in a leaf. If the leaf ends up empty, the
+     * tree is fixed up.
+     * 
+     * @param target The node holding the data
+     * @param i The position of the data in the node
+     */
+    private void removeAt(Node target, int i){
+        DataPair removed = target.data[i];
+        if(index != null){
+            index.remove(removed);
+        }
+        forget(removed);
+        Node leaf = target;
+        if(!isLeaf(target)){
+            // find the next data in order, left-most in the subtree to the right
+            leaf = target.children[i + 1];
+            while(!isLeaf(leaf)){
+                leaf = leaf.children[0];
+            }
+            // swap the data pairs themselves so they keep their identity
+            DataPair next = leaf.data[0];
+            leaf.data[0] = target.data[i];
+            target.data[i] = next;
+            i = 0;
+        }
+
+        // take the data out of the leaf, moving the data after it over
+        for(int j = i; j < leaf.numWords - 1; j++){
+            leaf.data[j] = leaf.data[j + 1];
+        }
+        leaf.numWords--;
+        leaf.data[leaf.numWords] = null;
+
+        if(leaf.numWords == 0){
+            //too empty...borrow or merge to rebalance
+            leaf = fixNode(leaf);
+        }
+        // one word less below every node from here up to the root (this also
+            //covers the data swapped between the leaf and the target above it)
+        refreshUp(leaf);
+    } // end of removeAt
+
+    /**
+     * fixNode
+     * 
+     * A private method that fixes up a Node left with no data, while preserving the
+     * properties of a 2-3 Tree, by considering every possible scenario. It mirrors
+     * splitNode: an empty node either borrows data from a sibling that has two pieces
+     * of data, which fixes things right away, or merges with a sibling that has only
+     * one, which takes a piece of data away from the parent. If that leaves the parent
+     * empty, the parent becomes the new node to fix, up to the root.
+     * 
+     * An empty internal node always has exactly one child, in position 0. Every
+     * node a step changes below the parent is recounted right away, the parent is
+     * recounted by the next step or by the caller.
+     * 
+     * @param aNode The empty node
+     * @return The last node looked at, which is no longer empty and is still part of
+     *         the tree, or null if the tree is now empty
+     */
+    private Node fixNode(Node aNode){
+        while(aNode != null && aNode.numWords == 0){
+            if(aNode.parent == null){
+                // the root is empty, its only child becomes the root
+                aNode = emptyRoot(aNode);
+            } else{
+                // find which child of the parent the empty node is
+                int pos = 0;
+                while(aNode.parent.children[pos] != aNode){
+                    pos++;
+                }
+                Node parent = aNode.parent;
+
+                if(pos > 0 && parent.children[pos - 1].numWords == 2){
+                    // left sibling can spare a piece of data
+                    aNode = borrowFromLeft(aNode, pos);
+                } else if(pos < parent.numWords && parent.children[pos + 1].numWords == 2){
+                    // right sibling can spare a piece of data
+                    aNode = borrowFromRight(aNode, pos);
+                } else if(pos > 0){
+                    // no sibling can spare any, merge into the left sibling
+                    aNode = mergeWithLeft(aNode, pos);
+                } else{
+                    // left-most child, merge into the right sibling
+                    aNode = mergeWithRight(aNode, pos);
+                }
+            }
+        }
+        return aNode;
+    } // end of fixNode
+
+    /**
+     * emptyRoot
+     * 
+     * A private method that helps the fixNode method when the root has no data left.
+     * Its only child (if any) becomes the new root, so the tree gets one level shorter.
+     * 
+     * @param aNode The empty root
+     * @return The new root, or null if the tree is now empty
+     */
+    private Node emptyRoot(Node aNode){
+        nodeCount--;
+        root = aNode.children[0];
+        if(root != null){
+            root.parent = null;
+        }
+        return root;
+    } // end of emptyRoot
+
+    /**
+     * borrowFromLeft
+     * 
+     * A private method that helps the fixNode method when the left sibling of the
+     * empty node has two pieces of data. The parent's data between the two comes down
+     * into the empty node, and the left sibling's last data goes up to replace it.
+     * 
+     * @param aNode The empty node
+     * @param pos The position of the empty node among its parent's children
+     * @return The parent of the node that was fixed
+     */
+    private Node borrowFromLeft(Node aNode, int pos){
+        Node left = aNode.parent.children[pos - 1];
+
+        // rotate the data through the parent
+        aNode.data[0] = aNode.parent.data[pos - 1];
+        aNode.numWords++;
+        aNode.parent.data[pos - 1] = left.data[1];
+        left.data[1] = null;
+        left.numWords--;
+
+        if(!isLeaf(left)){
+            // the left sibling's last child moves over in front of our only child
+            aNode.children[1] = aNode.children[0];
+            aNode.children[0] = left.children[2];
+            aNode.children[0].parent = aNode;
+            left.children[2] = null;
+        }
+        refreshCounts(left);
+        refreshCounts(aNode);
+        return aNode.parent;
+    } // end of borrowFromLeft
+
+    /**
+     * borrowFromRight
+     * 
+     * A private method that helps the fixNode method when the right sibling of the
+     * empty node has two pieces of data. The parent's data between the two comes down
+     * into the empty node, and the right sibling's first data goes up to replace it.
+     * 
+     * @param aNode The empty node
+     * @param pos The position of the empty node among its parent's children
+     * @return The parent of the node that was fixed
+     */
+    private Node borrowFromRight(Node aNode, int pos){
+        Node right = aNode.parent.children[pos + 1];
+
+        // rotate the data through the parent
+        aNode.data[0] = aNode.parent.data[pos];
+        aNode.numWords++;
+        aNode.parent.data[pos] = right.data[0];
+        right.data[0] = right.data[1];
+        right.data[1] = null;
+        right.numWords--;
+
+        if(!isLeaf(right)){
+            // the right sibling's first child moves over after our only child
+            aNode.children[1] = right.children[0];
+            aNode.children[1].parent = aNode;
+            right.children[0] = right.children[1];
+            right.children[1] = right.children[2];
+            right.children[2] = null;
+        }
+        refreshCounts(right);
+        refreshCounts(aNode);
+        return aNode.parent;
+    } // end of borrowFromRight
+
+    /**
+     * mergeWithLeft
+     * 
+     * A private method that helps the fixNode method when the empty node has a left
+     * sibling with only one piece of data. The parent's data between the two comes
+     * down into the left sibling, which also takes over the empty node's only child,
+     * and the empty node is dropped.
+     * 
+     * @param aNode The empty node
+     * @param pos The position of the empty node among its parent's children
+     * @return The parent, which now has one piece of data less
+     */
+    private Node mergeWithLeft(Node aNode, int pos){
+        Node left = aNode.parent.children[pos - 1];
+
+        left.data[1] = aNode.parent.data[pos - 1];
+        left.numWords++;
+        if(!isLeaf(left)){
+            left.children[2] = aNode.children[0];
+            left.children[2].parent = left;
+        }
+        refreshCounts(left);
+
+        removeFromParent(aNode.parent, pos - 1, pos);
+        return aNode.parent;
+    } // end of mergeWithLeft
+
+    /**
+     * mergeWithRight
+     * 
+     * A private method that helps the fixNode method when the empty node is the
+     * left-most child and its right sibling has only one piece of data. The parent's
+     * data between the two comes down into the front of the right sibling, which also
+     * takes over the empty node's only child, and the empty node is dropped.
+     * 
+     * @param aNode The empty node
+     * @param pos The position of the empty node among its parent's children
+     * @return The parent, which now has one piece of data less
+     */
+    private Node mergeWithRight(Node aNode, int pos){
+        Node right = aNode.parent.children[pos + 1];
+
+        // make room in the front of the right sibling
+        right.data[1] = right.data[0];
+        right.data[0] = aNode.parent.data[pos];
+        right.numWords++;
+        if(!isLeaf(right)){
+            right.children[2] = right.children[1];
+            right.children[1] = right.children[0];
+            right.children[0] = aNode.children[0];
+            right.children[0].parent = right;
+        }
+        refreshCounts(right);
+
+        removeFromParent(aNode.parent, pos, pos);
+        return aNode.parent;
+    } // end of mergeWithRight
+
+    /**
+     * removeFromParent
+     * 
+     * A private method used after a merge, to take a piece of data and a child out of
+     * the parent, moving the data and children after them over.
+     * 
+     * @param parent The parent node
+     * @param dataPos The position of the data to take out
+     * @param childPos The position of the child to take out
+     */
+    private void removeFromParent(Node parent, int dataPos, int childPos){
+        for(int j = dataPos; j < parent.numWords - 1; j++){
+            parent.data[j] = parent.data[j + 1];
+        }
+        for(int j = childPos; j < parent.numWords; j++){
+            parent.children[j] = parent.children[j + 1];
+        }
+        parent.numWords--;
+        parent.data[parent.numWords] = null;
+        parent.children[parent.numWords + 1] = null;
+        // the child taken out is dropped from the tree
+        nodeCount--;
+    } // end of removeFromParent
+
+    /**
+     * Checks if the tree contains the specified word.
+     * @param word The word to check for.
+     * @return true if the word is found in the tree, false otherwise.
+     */
+    @Override
+    public boolean containsWord(String word) {
+        // if we can't find its data pair, the word is not in the tree
+        return findPair(word) != null;
+    } // end of containsWord
+
+    /**
+     * Gets the frequency of a given word in the tree.
+     * @param word The word whose frequency is to be retrieved.
+     * @return The frequency of the word, or 0 if the word is not found.
+     */
+    @Override
+    public int getFrequency(String word) {
+        int wordFreq = 0;
+        // proceed only if the tree contains the word
+        DataPair pair = findPair(word);
+        if(pair != null){
+            wordFreq = pair.frequency;
+        }
+        return wordFreq;
+    } // end of getFrequency
+
+    /**
+     * findPair
+     * 
+     * A helper method that finds the data pair holding the specified word, with a
+     * single descent from the root. Package-private so ConcurrentTwoThreeTree can
+     * find a word's data pair and then update its frequency in place.
+     * 
+     * @param word the word to look for
+     * @return the data pair of the word if found, or null otherwise
+     */
+    DataPair findPair(String word){
+        String key = foldKey(word);
+        Node target = findNode(key);
+        return target == null ? null : pairIn(target, key);
+    } // end of findPair
+
+    /**
+     * peekPair
+     * 
+     * A helper method that finds the data pair of a folded word with a single
+     * descent, like findPair, but changes nothing on the way: it doesn't look in or
+     * add to the hot word cache, and doesn't count the lookup in the metrics. So it
+     * can run under an optimistic read that may still turn out to be invalid.
+     * Package-private so ConcurrentTwoThreeTree can look words up without a lock,
+     * see also peekCached and noteFound.
+     * 
+     * @param key the folded word to look for
+     * @return the data pair of the word if found, or null otherwise
+     */
+    DataPair peekPair(String key){
+        Node curr = root;
+        while(curr != null){
+            int pos = curr.numWords;
+            for(int i = 0; i < curr.numWords; i++){
+                int cmp = key.compareTo(curr.data[i].key);
+                if(cmp == 0){
+                    return curr.data[i];
+                } else if(cmp < 0){
+                    pos = i;
+                    break;
+                }
+            }
+            curr = curr.children[pos];
+        }
+        return null;
+    } // end of peekPair
+
+    // the data pair of a folded word if the hot word cache has it, without counting
+    // the hit or miss in the metrics, see peekPair. Package-private for ConcurrentTwoThreeTree
+    DataPair peekCached(String key){
+        HotWordCache<DataPair> current = cache;
+        if(current == null){
+            return null;
+        }
+        DataPair pair = current.get(key);
+        return pair == null || pair.owner == null ? null : pair;
+    }
+
+    /**
+     * noteFound
+     * 
+     * A helper method that does what a lookup leaves out when it is done with
+     * peekCached and peekPair: counts the lookup in the metrics, and puts a word
+     * found in the tree into the hot word cache. Package-private so
+     * ConcurrentTwoThreeTree can call it once it knows its lookup was valid, so a
+     * lookup that raced with a writer never changes the cache or the metrics.
+     * 
+     * @param pair The data pair that was found, or null if there was none
+     * @param cached Whether it came from the hot word cache
+     */
+    void noteFound(DataPair pair, boolean cached){
+        TreeMetrics current = metrics;
+        if(current != null){
+            if(cache != null){
+                current.cacheLookup(cached);
+            }
+            if(!cached){
+                // same as findNode, a hit in the cache walks no nodes and isn't a lookup
+                current.lookup(nodesWalked(pair));
+            }
+        }
+        if(cache != null && pair != null && !cached && pair.owner != null){
+            remember(pair);
+        }
+    } // end of noteFound
+
+    /**
+     * noteCounted
+     * 
+     * Like noteFound, for a word ConcurrentTwoThreeTree counted without going
+     * through upsertWord: counts an addWord in the metrics, and puts a word found in
+     * the tree into the hot word cache. The comparisons of the descent aren't known
+     * here, so none are counted.
+     * 
+     * @param pair The data pair that was counted
+     * @param cached Whether it came from the hot word cache
+     * @param start When the count started, from System.nanoTime, or 0 if the metrics
+     *        were off then
+     */
+    void noteCounted(DataPair pair, boolean cached, long start){
+        TreeMetrics current = metrics;
+        if(current != null && start != 0){
+            if(cache != null){
+                current.cacheLookup(cached);
+            }
+            recordAddWord(start, false, cached ? 0 : nodesWalked(pair), 0);
+        }
+        if(cache != null && !cached && pair.owner != null){
+            remember(pair);
+        }
+    } // end of noteCounted
+
+    // the nodes a descent walks through to find a data pair, or all the way down
+    // to a leaf to find out a word isn't in the tree
+    private int nodesWalked(DataPair pair){
+        Node node = pair == null ? null : pair.owner;
+        if(node == null){
+            return root == null ? 0 : height() + 1;
+        }
+        int nodes = 0;
+        while(node != null){
+            nodes++;
+            node = node.parent;
+        }
+        return nodes;
+    }
+
+    /**
+     * pairIn
+     * 
+     * A private helper method that picks the data pair of a word out of the node
+     * findNode found for it.
+     * 
+     * @param target The node holding the word
+     * @param key The folded word
+     * @return the data pair of the word
+     */
+    private DataPair pairIn(Node target, String key){
+        return target.data[0].key.equals(key) ? target.data[0] : target.data[1];
+    } // end of pairIn
+
+    /**
+     * adjustFrequency
+     * 
+     * A helper method that changes the frequency of a word by the given amount, only
+     * if the word is already in the tree, keeping the frequency totals and the top-K
+     * index up to date. It never changes the shape of the tree. Package-private so
+     * ShardedTwoThreeTree can swap the frequencies of words kept in different trees.
+     * 
+     * @param word The word whose frequency changes
+     * @param delta How much to change it by, the frequency must stay above 0
+     * @return The frequency of the word afterwards, or 0 if it is not in the tree
+     */
+    int adjustFrequency(String word, int delta){
+        String key = foldKey(word);
+        Node target = findNode(key);
+        if(target == null){
+            return 0;
+        }
+        return addToFrequency(target, pairIn(target, key), delta);
+    } // end of adjustFrequency
+
+    /**
+     * findNode
+     * 
+     * A private helper method that finds the Node that has the specified word
+     * as its data.
+     *  
+     * @param key the folded word (see foldKey) that the node must have as its data
+     * @return returns the Node if found, or null otherwise
+     */
+    private Node findNode(String key){
+        // a hot word knows its node, read it once since a racing writer may clear it
+        DataPair hot = cachedPair(key);
+        if(hot != null){
+            Node owner = hot.owner;
+            if(owner != null){
+                return owner;
+            }
+        }
+
+        Node target = root;
+        boolean found = false;
+        int nodes = 0; // for the metrics
+
+        // iterate until we find the node, or we reach the end without finding
+        while (target != null && !found){
+            nodes++;
+            if(target.numWords == 2){
+                // node has two data values
+                if(target.data[0].key.equals(key) || target.data[1].key.equals(key)){
+                    found = true;
+                } else{
+                    //move curr to left, middle or right
+                    target = twoDataNodeHelp(target, key);
+                }
+            } else{
+                // node has one data value
+                // normal bst search
+                if(target.data[0].key.equals(key)){
+                    found = true;
+                } else {
+                      target = oneDataNodeHelp(target, key);
+                }           
+            }
+        }
+
+        TreeMetrics current = metrics;
+        if(current != null){
+            current.lookup(nodes);
+        }
+        if(target != null){
+            remember(pairIn(target, key));
+        }
+        return target;
+    } // end of findNode
+
+    /**
+     * twoDataNodeHelp
+     * 
+     * This is a private method that helps iterate through the tree in the right
+     * order based on the word we are looking for, if we come across a node that
+     * has two pieces of data in it and we need to decide if we should move to
+     * the left, middle, or right child
+     * 
+     * @param target The node we have come to that has two pieces of data in it
+     * @param key The folded word that helps dictate which direction we go to
+     * @return the node we move to next
+     */
+    private Node twoDataNodeHelp(Node target, String key){
+        Node newCurr = null;
+
+        if(target.data[0].key.compareTo(key) > 0){
+            //left
+            newCurr = target.children[0];
+        } else if(target.data[1].key.compareTo(key) < 0){
+            //right
             newCurr = target.children[2];
         } else{
             //middle
@@ -816,12 +2127,12 @@ public class TwoThreeTree implements GameTree{
      * the left or right child.
      * 
      * @param target The node we have come to that has one piece of data in it
-     * @param word The word that helps dictate which direction we go to
+     * @param key The folded word that helps dictate which direction we go to
      * @return the node we move to next
      */
-    private Node oneDataNodeHelp(Node target, String word){
+    private Node oneDataNodeHelp(Node target, String key){
         Node newCurr = null;
-        if (target.data[0].word.compareToIgnoreCase(word) < 0){
+        if (target.data[0].key.compareTo(key) < 0){
             //right child
             newCurr = target.children[1]; 
         } else{
@@ -836,53 +2147,229 @@ public class TwoThreeTree implements GameTree{
      */
     @Override
     public void print() {
+        try{
+            print(System.out);
+        } catch (IOException e){
+            // a PrintStream never throws, it only sets its error flag
+            throw new UncheckedIOException(e);
+        }
+    } // end of print
+
+    /**
+     * print
+     * 
+     * Writes the contents of the tree in lexicographic order, the same text print()
+     * prints, to the given Appendable (a Writer, a StringBuilder, a PrintStream...).
+     * The text is gathered in a buffer and handed over a chunk at a time, so a big
+     * tree doesn't cost a call to the Appendable for every word.
+     * 
+     * @param out Where to write the words
+     * @throws IOException if the Appendable throws it
+     */
+    public void print(Appendable out) throws IOException {
+        StringBuilder buffer = new StringBuilder(OUTPUT_CHUNK + 64);
         // tree is not empty
         if (root != null){
-            System.out.print("[ ");
-            printHelp(root);
-            System.out.println("]");
+            buffer.append("[ ");
+            appendPairs(buffer, out);
+            buffer.append(']').append(NEWLINE);
         } else{
-            System.out.println("Tree is empty!");
+            buffer.append("Tree is empty!").append(NEWLINE);
         }
+        out.append(buffer);
     } // end of print
 
     /**
-     * printHelp
+     * appendPairs
      * 
-     * This is a private helper method. This method recursively traverses
-     * the entire tree IN-ORDER to print the contents of the tree in 
-     * lexicographic order.
+     * A helper method that writes every word of the tree as word(frequency), each
+     * followed by a space, handing the buffer over whenever it fills up.
+     * Package-private so ShardedTwoThreeTree can write all its shards through one
+     * buffer.
      * 
-     * @param aNode The node where traversal should begin
+     * @param buffer Where to write the words
+     * @param out Where the buffer goes once full
+     * @return how many words were written
+     * @throws IOException if the Appendable throws it
      */
-    private void printHelp(Node aNode){
+    int appendPairs(StringBuilder buffer, Appendable out) throws IOException {
+        int count = 0;
+        WordCursor cursor = new WordCursor(null, null);
+        while (cursor.next()){
+            appendPair(buffer, cursor.current).append(' ');
+            flushIfFull(buffer, out);
+            count++;
+        }
+        return count;
+    } // end of appendPairs
 
-        if (aNode == null){
-            // empty string and end
-            System.out.print("");
+    /**
+     * appendPair
+     * 
+     * A private helper method that writes a word and its frequency as word(frequency),
+     * without building any strings along the way.
+     * 
+     * @param buffer Where to write it
+     * @param pair The data pair of the word
+     * @return the buffer
+     */
+    private static StringBuilder appendPair(StringBuilder buffer, DataPair pair){
+        return buffer.append(pair.word).append('(').append(pair.frequency).append(')');
+    } // end of appendPair
+
+    // hands the buffer over once it holds a full chunk, and empties it
+    static void flushIfFull(StringBuilder buffer, Appendable out) throws IOException {
+        if(buffer.length() >= OUTPUT_CHUNK){
+            out.append(buffer);
+            buffer.setLength(0);
+        }
+    }
 
-        } else if(aNode.numWords == 1){ // node has 1 piece of data
-            //left
-            printHelp(aNode.children[0]);
-            // me
-            System.out.print(aNode.data[0].word + "(" + aNode.data[0].frequency + ") ");
-            //right
-            printHelp(aNode.children[1]);
+    /**
+     * cursor
+     * 
+     * Returns a cursor that steps through the words of the tree in lexicographic
+     * order, together with their frequencies. The tree must not be changed while the
+     * cursor is in use.
+     * 
+     * @return a cursor positioned before the first word
+     */
+    public WordCursor cursor(){
+        return new WordCursor(null, null);
+    } // end of cursor
 
-        } else{
-            // node has 2 pieces of data
-            //left
-            printHelp(aNode.children[0]);
-            //data 1
-            System.out.print(aNode.data[0].word + "(" + aNode.data[0].frequency + ") "); //data#1
-            // middle
-            printHelp(aNode.children[1]);
-            //data 2
-            System.out.print(aNode.data[1].word + "(" + aNode.data[1].frequency + ") "); //data#2
-            // right
-            printHelp(aNode.children[2]);
-        }    
-    } // end of printHelp
+    /**
+     * range
+     * 
+     * Returns a cursor over the words from one word up to (but not including) another,
+     * in lexicographic order. Treats all words as case-insensitive. The cursor descends
+     * once to the first word in range and then walks in order, stopping at the end of
+     * the range without visiting the rest of the tree. The tree must not be changed
+     * while the cursor is in use.
+     * 
+     * @param from The first word of the range
+     * @param to The word the range stops before
+     * @return a cursor positioned before the first word in range
+     */
+    public WordCursor range(String from, String to){
+        return new WordCursor(foldKey(from), foldKey(to));
+    } // end of range
+
+    /**
+     * prefix
+     * 
+     * Returns a cursor over the words that start with the given prefix, in
+     * lexicographic order. Treats all words as case-insensitive. The tree must not be
+     * changed while the cursor is in use.
+     * 
+     * @param prefix The start shared by all the words wanted
+     * @return a cursor positioned before the first word with the prefix
+     */
+    public WordCursor prefix(String prefix){
+        String fromKey = foldKey(prefix);
+        return new WordCursor(fromKey, prefixEnd(fromKey));
+    } // end of prefix
+
+    /**
+     * prefixEnd
+     * 
+     * A private helper method that finds the smallest key that comes after every
+     * key starting with the given prefix, by bumping up the last character of the
+     * prefix that can still be bumped up.
+     * 
+     * @param prefixKey The folded prefix
+     * @return the first key after all keys with the prefix, or null if there is none
+     */
+    private static String prefixEnd(String prefixKey){
+        int end = prefixKey.length();
+        // a last character that can't go any higher is dropped
+        while(end > 0 && prefixKey.charAt(end - 1) == Character.MAX_VALUE){
+            end--;
+        }
+        if(end == 0){
+            return null;
+        }
+        return prefixKey.substring(0, end - 1) + (char) (prefixKey.charAt(end - 1) + 1);
+    } // end of prefixEnd
+
+    /**
+     * cursor
+     * 
+     * Returns a cursor over only the words from one folded key up to (but not
+     * including) another. The cursor starts with a single descent to the first word
+     * in range, and stops as soon as it passes the end of the range, so the rest of
+     * the tree is never visited. Package-private, since it works on folded keys.
+     * 
+     * @param fromKey The folded key to start at, or null to start at the first word
+     * @param toKey The folded key to stop before, or null to go to the last word
+     * @return a cursor positioned before the first word in range
+     */
+    WordCursor cursor(String fromKey, String toKey){
+        return new WordCursor(fromKey, toKey);
+    } // end of cursor
+
+    /**
+     * splitKeys
+     * 
+     * A helper method that picks folded keys splitting the tree into about the given
+     * number of key ranges of similar size. Goes down the tree level by level and uses
+     * the data of the first level that has enough of it, since every subtree below one
+     * level holds about the same number of words. Package-private so work on the tree
+     * can be divided between threads.
+     * 
+     * @param wanted About how many ranges are wanted
+     * @return the split keys in order, possibly fewer than wanted - 1 for small trees
+     */
+    String[] splitKeys(int wanted){
+        ArrayList<Node> level = new ArrayList<>();
+        ArrayList<String> keys = new ArrayList<>();
+        if(root != null){
+            level.add(root);
+        }
+        while(!level.isEmpty()){
+            keys.clear();
+            ArrayList<Node> below = new ArrayList<>();
+            for(Node aNode : level){
+                for(int i = 0; i < aNode.numWords; i++){
+                    keys.add(aNode.data[i].key);
+                }
+                if(!isLeaf(aNode)){
+                    for(int i = 0; i <= aNode.numWords; i++){
+                        below.add(aNode.children[i]);
+                    }
+                }
+            }
+            if(keys.size() + 1 >= wanted){
+                break;
+            }
+            level = below;
+        }
+        return keys.toArray(new String[0]);
+    } // end of splitKeys
+
+    /**
+     * forEach
+     * 
+     * Hands every word of the tree and its frequency to the given action, in
+     * lexicographic order, without allocating anything per word.
+     * 
+     * @param action What to do with each word and its frequency
+     */
+    public void forEach(ObjIntConsumer<String> action){
+        WordCursor cursor = new WordCursor(null, null);
+        while(cursor.next()){
+            action.accept(cursor.word(), cursor.frequency());
+        }
+    } // end of forEach
+
+    // hands every data pair to the given action, in lexicographic order. The action
+    // must not change the shape of the tree. Package-private for ConcurrentTwoThreeTree
+    void forEachPair(Consumer<DataPair> action){
+        WordCursor cursor = new WordCursor(null, null);
+        while(cursor.next()){
+            action.accept(cursor.current);
+        }
+    }
 
     /**
      * Calculates the height of the tree as the number of edges on the longest branch.
@@ -931,138 +2418,126 @@ public class TwoThreeTree implements GameTree{
      */
     @Override
     public void compare(GameTree otherTree) {
+        try{
+            compare(otherTree, System.out);
+        } catch (IOException e){
+            // a PrintStream never throws, it only sets its error flag
+            throw new UncheckedIOException(e);
+        }
+    } // end of compare
+
+    /**
+     * compare
+     * 
+     * Compares the current tree with another tree and writes the unique and common
+     * words, the same text compare(GameTree) prints, to the given Appendable. Like
+     * print(Appendable) the text is handed over a chunk at a time.
+     * 
+     * @param otherTree The other tree to compare against.
+     * @param out Where to write the result
+     * @throws IOException if the Appendable throws it
+     */
+    public void compare(GameTree otherTree, Appendable out) throws IOException {
+        StringBuilder buffer = new StringBuilder(OUTPUT_CHUNK + 64);
         // checking for correct tree type
         if (otherTree instanceof TwoThreeTree){
+            WordComparison result = compareWith((TwoThreeTree) otherTree);
+
             // curr tree is not empty
             if (root != null){
-                System.out.print("Common Words: [ ");
-                commonWords(root, otherTree);
-                System.out.println("]");
+                buffer.append("Common Words: [ ");
+                appendWords(buffer, out, result.getCommonWords());
+                buffer.append(']').append(NEWLINE);
 
-                System.out.print("Unique Words to Curr Tree: [ ");
-                uniqueWords(root, otherTree);
-                System.out.println("]");
-                
-                // get the unique words for the other tree
-                otherTreeUniqueWords(otherTree);
+                buffer.append("Unique Words to Curr Tree: [ ");
+                appendWords(buffer, out, result.getUniqueToThis());
+                buffer.append(']').append(NEWLINE);
+            } else{
+                buffer.append("Common Words: [  ]");
+                buffer.append("Unique Words to Curr Tree: [  ]");
+            }
 
+            // the unique words for the other tree
+            if (getRoot(otherTree) != null){
+                buffer.append("Unique Words to Other Tree: [ ");
+                appendWords(buffer, out, result.getUniqueToOther());
+                buffer.append(']').append(NEWLINE);
             } else{
-                System.out.print("Common Words: [  ]");
-                System.out.print("Unique Words to Curr Tree: [  ]");
-                // get the unique words for the other tree
-                otherTreeUniqueWords(otherTree);
+                buffer.append("Unique Words to Other Tree: [  ]");
             }
         } else{
-            System.out.println("The otherTree is not an instance of 2-3 Tree. Incompatible Tree Type!");
+            buffer.append("The otherTree is not an instance of 2-3 Tree. Incompatible Tree Type!").append(NEWLINE);
         }
+        out.append(buffer);
     } // end of compare
 
     /**
-     * otherTreeUniqueWords
+     * compareWith
      * 
-     * A private helper method that helps keep code clean, organised,
-     * and is used to get the words unique to the other tree.
+     * Compares the current tree with another tree and returns the common and unique
+     * words instead of printing them. Both trees are walked in order side by side,
+     * like merging two sorted lists, so this takes a single pass over both trees
+     * rather than looking every word up in the other tree.
      * 
-     * @param otherTree The other tree for which we are getting the 
-     *                  unique words for.
+     * @param otherTree The other tree to compare against.
+     * @return the common words, and the words unique to each tree, all in order
      */
-    private void otherTreeUniqueWords(GameTree otherTree){
-        // get the other tree's rootr
-        Node otherTreeRoot = getRoot(otherTree);
-        
-        if(otherTreeRoot != null){
-            // other tree is not empty
-            System.out.print("Unique Words to Other Tree: [ ");
-            uniqueWords(otherTreeRoot, this);
-            System.out.println("]");
-        } else{
-            System.out.print("Unique Words to Other Tree: [  ]");
-        }
-    } // end of otherTreeUniqueWords
-    
-    /**
-     * commonWords
-     * 
-     * A private helper method that helps find all the common words
-     * between two 2-3 trees by implementing recursive
-     * in-order traversal to check every node of the tree against the 
-     * other tree.
-     * 
-     * @param aNode The node where traversal begins (root of the subtree)
-     * @param otherTree the other tree the current tree is being
-     *                  compared with.
-     */
-    private void commonWords(Node aNode, GameTree otherTree){
-        if(aNode == null){
-            System.out.print("");
-        } else if(aNode.numWords == 1){
-            //only left and right child
-            // left
-            commonWords(aNode.children[0], otherTree);
-            if(otherTree.containsWord(aNode.data[0].word)){
-                System.out.print(aNode.data[0].word + " ");
+    public WordComparison compareWith(TwoThreeTree otherTree){
+        ArrayList<String> common = new ArrayList<>();
+        ArrayList<String> uniqueToThis = new ArrayList<>();
+        ArrayList<String> uniqueToOther = new ArrayList<>();
+
+        WordCursor mine = cursor();
+        WordCursor theirs = otherTree.cursor();
+        boolean moreMine = mine.next();
+        boolean moreTheirs = theirs.next();
+
+        // step whichever side is behind, or both when they are on the same word
+        while (moreMine && moreTheirs){
+            int cmp = mine.key().compareTo(theirs.key());
+            if (cmp == 0){
+                common.add(mine.word());
+                moreMine = mine.next();
+                moreTheirs = theirs.next();
+            } else if (cmp < 0){
+                uniqueToThis.add(mine.word());
+                moreMine = mine.next();
+            } else{
+                uniqueToOther.add(theirs.word());
+                moreTheirs = theirs.next();
             }
-            //right
-            commonWords(aNode.children[1], otherTree);
+        }
 
-        } else{
-            // left, middle, and right child
-            //left
-            commonWords(aNode.children[0], otherTree);
-            if(otherTree.containsWord(aNode.data[0].word)){
-                System.out.print(aNode.data[0].word + " ");
-            }
-            //middle
-            commonWords(aNode.children[1], otherTree);
-            if(otherTree.containsWord(aNode.data[1].word)){
-                System.out.print(aNode.data[1].word + " ");
-            }
-            //right
-            commonWords(aNode.children[2], otherTree);
+        // whatever is left over on either side is unique to it
+        while (moreMine){
+            uniqueToThis.add(mine.word());
+            moreMine = mine.next();
         }
-    } // end of common words
-       
+        while (moreTheirs){
+            uniqueToOther.add(theirs.word());
+            moreTheirs = theirs.next();
+        }
+        return new WordComparison(common, uniqueToThis, uniqueToOther);
+    } // end of compareWith
+
     /**
-     * uniqueWords
+     * appendWords
      * 
-     * A private helper method that helps find all the unique words in a
-     * tree when compared with another tree. Acheived by implementing recursive
-     * in-order traversal to compare every node against the other tree.
+     * A helper method that writes a list of words, each followed by a space, handing
+     * the buffer over whenever it fills up. Package-private so ShardedTwoThreeTree
+     * can write its comparison the same way.
      * 
-     * @param aNode The node where traversal begins (root of the subtree)
-     * @param otherTree the other tree the current tree is being
-     *                  compared with.
+     * @param buffer Where to write the words
+     * @param out Where the buffer goes once full
+     * @param words The words to write
+     * @throws IOException if the Appendable throws it
      */
-    private void uniqueWords(Node aNode, GameTree otherTree){
-        if(aNode == null){
-            System.out.print("");
-
-        } else if(aNode.numWords == 1){
-            //only left and right child
-            //left
-            uniqueWords(aNode.children[0], otherTree);
-            if(!otherTree.containsWord(aNode.data[0].word)){
-                System.out.print(aNode.data[0].word + " ");
-            }
-            //right
-            uniqueWords(aNode.children[1], otherTree);
-
-        } else{
-            // left, middle, and right child
-            //left
-            uniqueWords(aNode.children[0], otherTree);
-            if(!otherTree.containsWord(aNode.data[0].word)){
-                System.out.print(aNode.data[0].word + " ");
-            }
-            //middle
-            uniqueWords(aNode.children[1], otherTree);
-            if(!otherTree.containsWord(aNode.data[1].word)){
-                System.out.print(aNode.data[1].word + " ");
-            }
-            //right
-            uniqueWords(aNode.children[2], otherTree);
+    static void appendWords(StringBuilder buffer, Appendable out, List<String> words) throws IOException {
+        for (String word : words){
+            buffer.append(word).append(' ');
+            flushIfFull(buffer, out);
         }
-    } // end of uniqueWords
+    } // end of appendWords
 
     /**
      * getRoot
@@ -1087,63 +2562,64 @@ public class TwoThreeTree implements GameTree{
      */
     @Override
     public void printTree() {
+        try{
+            printTree(System.out);
+        } catch (IOException e){
+            // a PrintStream never throws, it only sets its error flag
+            throw new UncheckedIOException(e);
+        }
+    } // end of printTree
+
+    /**
+     * printTree
+     * 
+     * Writes a visual representation of the tree structure, the same text printTree()
+     * prints, to the given Appendable, a chunk at a time like print(Appendable).
+     * 
+     * @param out Where to write the tree
+     * @throws IOException if the Appendable throws it
+     */
+    public void printTree(Appendable out) throws IOException {
+        StringBuilder buffer = new StringBuilder(OUTPUT_CHUNK + 64);
         // tree not empty
         if (root != null){
-            // i is a variable that keeps track of the number of times
-                //to indent to get the right hierarchy.
-            int i = 0;
-            printTreeHelp(root,i);
+            printTreeHelp(root, 0, buffer, out);
         } else{
-            System.out.println("The tree is empty!");
+            buffer.append("The tree is empty!").append(NEWLINE);
         }
+        out.append(buffer);
     } // end of printTree
 
     /**
      * printTreeHelp
      * 
      * A private helper method that implements pre-order traversal using recursion.
-     * The entire tree is traversed and the contents are printed to get a visual
-     * representation of the heirarchy.
+     * The entire tree is traversed and each node is written on its own line,
+     * indented by its depth, to get a visual representation of the heirarchy.
      * 
      * @param aNode The node where traversal begins
-     * @param i keeps track of the number of times to indent to get the right hierarchy.
+     * @param depth The number of times to indent to get the right hierarchy.
+     * @param buffer Where the lines are gathered
+     * @param out Where the buffer goes once full
+     * @throws IOException if the Appendable throws it
      */
-    private void printTreeHelp(Node aNode, int i){
-        String space = "    "; // used for indentation
-        
-        if (isLeaf(aNode)){
-            // print the lead node info and then we end
-            if(aNode.data[1].word == null){
-                System.out.println(space.repeat(i) + "[" + aNode.data[0].word + "(" + aNode.data[0].frequency + ")]"); // one piece of data
-            } else{
-                // two pieces of data
-                System.out.println(space.repeat(i) + "[" + aNode.data[0].word + "(" + aNode.data[0].frequency + "), " + aNode.data[1].word + "(" + aNode.data[1].frequency + ")]");
-            }
-        } else{
-
-            if(aNode.data[1].word == null){
-                // one piece of data
-                System.out.println(space.repeat(i) + "[" + aNode.data[0].word + "(" + aNode.data[0].frequency + ")]");
-            } else{
-                // two piece of data
-                System.out.println(space.repeat(i) + "[" + aNode.data[0].word + "(" + aNode.data[0].frequency + "), " + aNode.data[1].word + "(" + aNode.data[1].frequency + ")]");
-            }
-
-            if(aNode.children[0] != null){
-                // left
-                printTreeHelp(aNode.children[0], i+1);
-            } 
-
-            if(aNode.children[1] != null){
-                // middle
-                printTreeHelp(aNode.children[1], i+1);
-            }
+    private void printTreeHelp(Node aNode, int depth, StringBuilder buffer, Appendable out) throws IOException {
+        for (int i = 0; i < depth; i++){
+            buffer.append("    ");
+        }
+        buffer.append('[');
+        appendPair(buffer, aNode.data[0]);
+        if(aNode.numWords == 2){
+            // two pieces of data
+            buffer.append(", ");
+            appendPair(buffer, aNode.data[1]);
+        }
+        buffer.append(']').append(NEWLINE);
+        flushIfFull(buffer, out);
 
-            if(aNode.children[2] != null){
-                // right
-                // only used in case of node with 3 children
-                printTreeHelp(aNode.children[2], i+1);
-            }
+        // left, middle, and right for a node with 3 children
+        for(int i = 0; i <= aNode.numWords && aNode.children[i] != null; i++){
+            printTreeHelp(aNode.children[i], depth + 1, buffer, out);
         }
     } // end of printTreeHelp
 
@@ -1157,17 +2633,13 @@ public class TwoThreeTree implements GameTree{
     @Override
     public void doubleFrequency(String word) {
         // check if the word exists
-        if(containsWord(word)){
-            // find the node, and then within the node, find the correct data piece
-                // and then double the frequency
-            Node target = findNode(word);
-            for(int i = 0; i < target.data.length; i++){
-                if(target.data[i].word != null){
-                    if (target.data[i].word.equalsIgnoreCase(word)){
-                        target.data[i].frequency = (2*target.data[i].frequency);
-                    }
-                }
-            }
+        String key = foldKey(word);
+        Node target = findNode(key);
+        if(target != null){
+            // doubling adds the old frequency on top
+            DataPair pair = pairIn(target, key);
+            addToTotals(target, pair.doubleFrequency());
+            frequencyChanged(pair);
         }
     } // end of doubleFrequency
 
@@ -1182,82 +2654,308 @@ public class TwoThreeTree implements GameTree{
     @Override
     public void swapFrequencies(String word1, String word2) {
         // check both words exist
-        if (containsWord(word1) && containsWord(word2)){
-            Node target1 = findNode(word1);
-            Node target2 = findNode(word2);
-            // needed for swapping purposes
-            int temp1 = -1;
-            int temp2 = -1;
-
-            // get the frequency of the first word
-            for(int i = 0; i < target1.data.length; i++){
-                if(target1.data[i].word != null){
-                    if (target1.data[i].word.equalsIgnoreCase(word1)){
-                        temp1 = target1.data[i].frequency; 
-                    }
+        String key1 = foldKey(word1);
+        String key2 = foldKey(word2);
+        Node target1 = findNode(key1);
+        Node target2 = findNode(key2);
+        if (target1 != null && target2 != null){
+            DataPair pair1 = pairIn(target1, key1);
+            DataPair pair2 = pairIn(target2, key2);
+            int difference = pair1.swapFrequency(pair2);
+            addToTotals(target1, difference);
+            addToTotals(target2, -difference);
+            frequencyChanged(pair1);
+            frequencyChanged(pair2);
+        }
+    } // end of swapFrequencies
+
+    /**
+     * foldKey
+     * 
+     * A helper method that folds the case of a word once, so the tree can
+     * order words with a plain ordinal compare instead of re-folding both strings
+     * at every comparison. Folds each code point the same way compareToIgnoreCase
+     * does (upper case, then lower case). Words that are already folded are
+     * returned as is, so most words do not allocate a new string.
+     * Package-private so the other word trees order their keys the same way.
+     * 
+     * @param word The word to fold
+     * @return the folded key for the word
+     */
+    static String foldKey(String word){
+        for(int i = 0; i < word.length(); i++){
+            char c = word.charAt(i);
+            if(Character.isSurrogate(c) || Character.toLowerCase(Character.toUpperCase(c)) != c){
+                // found the first character that changes, fold from here on
+                StringBuilder folded = new StringBuilder(word.length());
+                folded.append(word, 0, i);
+                while(i < word.length()){
+                    int cp = word.codePointAt(i);
+                    folded.appendCodePoint(Character.toLowerCase(Character.toUpperCase(cp)));
+                    i += Character.charCount(cp);
                 }
+                return folded.toString();
+            }
+        }
+        return word;
+    } // end of foldKey
+
+    // A cursor over the words of the tree in lexicographic order.
+    // Walks the tree in-order without recursion, keeping the path from the root in
+    // fixed-size arrays that are allocated once, since the path is never longer than
+    // the height of the tree. Stepping to the next word allocates nothing.
+    public class WordCursor{
+        private Node[] stack; // the nodes on the path from the root
+        private int[] next; // for each node on the path, the next data piece to visit
+        private int depth; // how many nodes are on the path
+        private DataPair current; // the data pair the cursor is on
+        private String toKey; // the cursor stops before this key, if not null
+
+        // constructor, positioned before the first word from fromKey onwards
+        private WordCursor(String fromKey, String toKey){
+            this.stack = new Node[height() + 1];
+            this.next = new int[stack.length];
+            this.depth = 0;
+            this.current = null;
+            this.toKey = toKey;
+            if(fromKey == null){
+                pushLeft(root);
+            } else{
+                seek(fromKey);
             }
+        }
 
-            // get the frequency of second word, and then set the second word's new 
-                //frequency
-            for(int j = 0; j < target2.data.length; j++){
-                if(target2.data[j].word != null){
-                    if (target2.data[j].word.equalsIgnoreCase(word2)){
-                        temp2 = target2.data[j].frequency; 
-                        target2.data[j].frequency = temp1; 
+        // moves to the next word, returns false once there are no more words
+        public boolean next(){
+            while(depth > 0){
+                Node top = stack[depth - 1];
+                int i = next[depth - 1];
+                if(i < top.numWords){
+                    if(toKey != null && top.data[i].key.compareTo(toKey) >= 0){
+                        // past the end of the range
+                        break;
                     }
+                    // visit data piece i, then everything in the child after it
+                    current = top.data[i];
+                    next[depth - 1] = i + 1;
+                    pushLeft(top.children[i + 1]);
+                    return true;
                 }
+                // done with this node
+                depth--;
             }
+            depth = 0;
+            current = null;
+            return false;
+        }
 
-            // update the first word's new frequency
-            for(int k = 0; k < target1.data.length; k++){
-                if(target1.data[k].word != null){
-                    if (target1.data[k].word.equalsIgnoreCase(word1)){
-                        target1.data[k].frequency = temp2;
-                    }
+        // the folded key of the word the cursor is on
+        String key(){
+            return current.key;
+        }
+
+        // the word the cursor is on, as it was first added
+        public String word(){
+            return current.word;
+        }
+
+        // the frequency of the word the cursor is on
+        public int frequency(){
+            return current.frequency;
+        }
+
+        // builds the path down to the first key that is not below fromKey
+        private void seek(String fromKey){
+            Node aNode = root;
+            while(aNode != null){
+                // skip the data pieces below fromKey, and the children before them
+                int i = 0;
+                while(i < aNode.numWords && aNode.data[i].key.compareTo(fromKey) < 0){
+                    i++;
                 }
+                stack[depth] = aNode;
+                next[depth] = i;
+                depth++;
+                if(i < aNode.numWords && aNode.data[i].key.equals(fromKey)){
+                    // found fromKey itself, nothing below it is in range
+                    break;
+                }
+                aNode = aNode.children[i];
             }
         }
-    } // end of swapFrequencies
+
+        // pushes a node and its left-most descendants onto the path
+        private void pushLeft(Node aNode){
+            while(aNode != null){
+                stack[depth] = aNode;
+                next[depth] = 0;
+                depth++;
+                aNode = aNode.children[0];
+            }
+        }
+    } // end of WordCursor class
 
     // private node class for TwoThreeTree class
     // represents a node in the tree
-    private class Node{
+    // static so nodes don't carry a hidden reference to the tree
+    private static class Node{
+        // lets the frequency total be updated atomically without a lock
+        private static final VarHandle TOTAL;
+        static {
+            try{
+                TOTAL = MethodHandles.lookup().findVarHandle(Node.class, "total", long.class);
+            } catch (ReflectiveOperationException e){
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
         public DataPair[] data; // array of DataPairs..in order to hold more than one data piece
         public Node[] children; // array of children.. the node's children
         public int numWords; // number of data pieces i.e. words present in the node
         public Node parent; // the node's parent
+        public int size; // number of words in the node's whole subtree
+        public long total; // frequencies of all the words in the node's subtree added up
 
         //constructor
         public Node(){
             // only 2 pieces of data allowed, and third acts as a placeHolder
+            // slots start out empty (null), a DataPair is only created for an
+                //actual word so empty slots don't cost an object each
             this.data = new DataPair[3]; 
             // can only have upto 3 children, 4th acts as a placeholder
             this.children = new Node[4]; 
-            
-            //initialising both arrays
-            for(int i = 0; i < this.data.length; i++){
-                this.data[i] = new DataPair();
-            }
-            for(int i = 0; i < this.children.length; i++){
-                this.children[i] = null;
-            }
             this.numWords = 0;
             this.parent = null;
+            this.size = 0;
+            this.total = 0;
         }
     } // end of Node Class
 
-    // A private class that represents a Data pair
+    // A class that represents a Data pair
     // A node in a 2-3 tree holds upto 2 data pairs i.e. data pieces
-    private class DataPair{
-        // a data pair has a word, and its frequency
-        public String word;
+    // static so every word doesn't carry a hidden reference to the tree
+    // package-private so ConcurrentTwoThreeTree can hold on to a word's data pair
+    static class DataPair{
+        // what pending holds once the data pair is retired, see retire
+        static final long GONE = Long.MIN_VALUE;
+
+        // lets the frequency and the pending counts be updated atomically without a lock
+        private static final VarHandle FREQUENCY;
+        private static final VarHandle PENDING;
+        static {
+            try{
+                FREQUENCY = MethodHandles.lookup().findVarHandle(DataPair.class, "frequency", int.class);
+                PENDING = MethodHandles.lookup().findVarHandle(DataPair.class, "pending", long.class);
+            } catch (ReflectiveOperationException e){
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        // a data pair has a word, its folded key, and its frequency
+        public String word; // the word as it was first added
+        public String key; // the case-folded word, used for all comparisons
         public int frequency;
+        Node owner; // the node holding the data pair, null once the word is removed
+        // counts ConcurrentTwoThreeTree made without a lock, not yet in the frequency
+        // or the totals, see foldPending. GONE while the word is being removed
+        private long pending;
 
         // constructor
         public DataPair(){
             this.word = null;
+            this.key = null;
             this.frequency = 0;
+            this.owner = null;
+        }
+
+        /*
+         * The updates below are atomic, so many threads can update the same word at once.
+         * Splits move DataPair objects between nodes but never copy them, so a thread that
+         * found a data pair can safely update it even if the tree is being split meanwhile.
+         */
+
+        // reads the latest frequency, even if another thread just updated it
+        public int getFrequency(){
+            return (int) FREQUENCY.getVolatile(this);
+        }
+
+        // atomically adds to the frequency and returns the new frequency
+        public int addFrequency(int delta){
+            return (int) FREQUENCY.getAndAdd(this, delta) + delta;
+        }
+
+        // atomically doubles the frequency and returns the frequency it had before
+        public int doubleFrequency(){
+            int current;
+            do{
+                current = (int) FREQUENCY.getVolatile(this);
+            } while(!FREQUENCY.compareAndSet(this, current, 2 * current));
+            return current;
+        }
+
+        // swaps frequencies with another data pair. Done as two atomic adds of the
+        // difference, so an increment that lands in the middle of the swap is kept
+        // rather than overwritten. Returns how much this data pair's frequency went up by
+        public int swapFrequency(DataPair other){
+            int difference = (int) FREQUENCY.getVolatile(other) - (int) FREQUENCY.getVolatile(this);
+            FREQUENCY.getAndAdd(this, difference);
+            FREQUENCY.getAndAdd(other, -difference);
+            return difference;
+        }
+
+        /*
+         * Pending counts are added without any lock, so they can't touch the totals of the
+         * nodes above, which a writer may be recounting. They wait here until the tree
+         * folds them in. A data pair can be retired so that counts stop landing in it
+         * while a writer decides whether the word stays; counts that find it retired
+         * don't take and must be made again under the lock.
+         */
+
+        // adds to the pending counts and returns what was pending before, which isGone
+        // if the data pair is retired and the count didn't take. A retired data pair
+        // is left exactly at GONE, a plain add of a negative count would wrap it
+        // around to a large positive one that looks like counts taking again
+        long addPending(long delta){
+            long current;
+            do{
+                current = (long) PENDING.getVolatile(this);
+                if(isGone(current)){
+                    return current;
+                }
+            } while(!PENDING.compareAndSet(this, current, current + delta));
+            return current;
+        }
+
+        // reads the pending counts, which isGone if the data pair is retired
+        long getPending(){
+            return (long) PENDING.getVolatile(this);
+        }
+
+        // takes the pending counts out to fold them in, leaving a retired data pair alone
+        long takePending(){
+            long current;
+            do{
+                current = (long) PENDING.getVolatile(this);
+                if(isGone(current)){
+                    return 0;
+                }
+            } while(!PENDING.compareAndSet(this, current, 0L));
+            return current;
+        }
+
+        // stops pending counts from taking, and returns the counts that were pending
+        long retire(){
+            return (long) PENDING.getAndSet(this, GONE);
+        }
+
+        // lets pending counts take again after retire, dropping the ones that didn't
+        void revive(){
+            PENDING.setVolatile(this, 0L);
+        }
+
+        // whether a value of pending means the data pair is retired
+        static boolean isGone(long pending){
+            return pending == GONE;
         }
     } // end of DataPair Class
 
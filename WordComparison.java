@@ -0,0 +1,51 @@
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * WordComparison
+ *
+ * PURPOSE: The result of comparing two word trees: the words they have in common,
+ * and the words that only one of them has. Every list is in lexicographic order.
+ */
+public class WordComparison {
+
+    private final List<String> commonWords;
+    private final List<String> uniqueToThis;
+    private final List<String> uniqueToOther;
+
+    //constructor
+    public WordComparison(List<String> commonWords, List<String> uniqueToThis, List<String> uniqueToOther) {
+        this.commonWords = Collections.unmodifiableList(commonWords);
+        this.uniqueToThis = Collections.unmodifiableList(uniqueToThis);
+        this.uniqueToOther = Collections.unmodifiableList(uniqueToOther);
+    }
+
+    /**
+     * getCommonWords
+     *
+     * @return the words found in both trees, as they were first added to the
+     *         tree that compare was called on
+     */
+    public List<String> getCommonWords() {
+        return commonWords;
+    } // end of getCommonWords
+
+    /**
+     * getUniqueToThis
+     *
+     * @return the words found only in the tree that compare was called on
+     */
+    public List<String> getUniqueToThis() {
+        return uniqueToThis;
+    } // end of getUniqueToThis
+
+    /**
+     * getUniqueToOther
+     *
+     * @return the words found only in the other tree
+     */
+    public List<String> getUniqueToOther() {
+        return uniqueToOther;
+    } // end of getUniqueToOther
+
+} // end of WordComparison class
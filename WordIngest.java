@@ -0,0 +1,492 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * WordIngest
+ *
+ * PURPOSE: Reads text files into a word tree, much faster than calling addWord for
+ * every word.
+ *
+ * A word is a run of letters and digits; everything else separates words. Files are
+ * read as UTF-8.
+ *
+ * Each file is memory-mapped in chunks, and the chunks are tokenized on several
+ * threads at once. A chunk only ever ends right before a byte that can't be part of
+ * a word, so no word is cut in two. Tokenizing a chunk counts its words in a hash
+ * table keyed by the case-folded bytes of the word, so a word that shows up again in
+ * the same chunk costs no String at all; only words that are all ASCII get this fast
+ * path, the rest are decoded and folded like TwoThreeTree does it. Each chunk then
+ * hands its distinct words, in order, to the tree as one sorted batch, the same way
+ * addAll does. Batches are merged in file order, so a word keeps the case it first
+ * had in the files, just as with addWord, while the next chunks are tokenized.
+ */
+public class WordIngest {
+
+    // default size of the chunks the files are read in
+    public static final int DEFAULT_CHUNK_BYTES = 8 << 20;
+
+    // which ASCII bytes are letters or digits
+    private static final boolean[] WORD_BYTE = new boolean[128];
+    static {
+        for (int c = 0; c < 128; c++){
+            WORD_BYTE[c] = Character.isLetterOrDigit(c);
+        }
+    }
+
+    private final int threads;
+    private final int chunkBytes;
+
+    // constructor, one thread per processor and the default chunk size
+    public WordIngest() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_BYTES);
+    }
+
+    /**
+     * constructor
+     *
+     * @param threads How many chunks to tokenize at once, at least 1
+     * @param chunkBytes About how many bytes to read in each chunk, at least 1
+     * @throws IllegalArgumentException if either is less than 1
+     */
+    public WordIngest(int threads, int chunkBytes) {
+        if (threads < 1 || chunkBytes < 1){
+            throw new IllegalArgumentException("Threads and chunk size must be at least 1");
+        }
+        this.threads = threads;
+        this.chunkBytes = chunkBytes;
+    }
+
+    /**
+     * ingest
+     *
+     * Adds every word of the given files to a tree, in the order of the files. The
+     * tree must not be used by anything else until this returns.
+     *
+     * @param tree The tree to add the words to
+     * @param files The text files to read
+     * @return how much was read, and how fast
+     * @throws IOException if a file cannot be read
+     */
+    public Stats ingest(TwoThreeTree tree, Path... files) throws IOException {
+        return run(files, batch -> tree.addSorted(batch, batch.length));
+    } // end of ingest
+
+    /**
+     * ingest
+     *
+     * Adds every word of the given files to a thread-safe tree, in the order of the
+     * files. The write lock is only held while a chunk's batch is merged in, so the
+     * tree can be used from other threads meanwhile.
+     *
+     * @param tree The tree to add the words to
+     * @param files The text files to read
+     * @return how much was read, and how fast
+     * @throws IOException if a file cannot be read
+     */
+    public Stats ingest(ConcurrentTwoThreeTree tree, Path... files) throws IOException {
+        return run(files, batch -> tree.addSorted(batch, batch.length));
+    } // end of ingest
+
+    /**
+     * run
+     *
+     * A private method that runs the pipeline: chunks are mapped one after the other,
+     * tokenized on the pool, and their batches handed to the sink in order. At most
+     * two chunks per thread are in flight, so memory stays bounded whatever the size
+     * of the files.
+     *
+     * @param files The text files to read
+     * @param sink Where the batches go, called from this thread only
+     * @return how much was read, and how fast
+     * @throws IOException if a file cannot be read
+     */
+    private Stats run(Path[] files, BatchSink sink) throws IOException {
+        long start = System.nanoTime();
+        Stats stats = new Stats();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "word-ingest");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ArrayDeque<Future<ChunkCounts>> inFlight = new ArrayDeque<>();
+        try (ChunkPlanner planner = new ChunkPlanner(files)){
+            boolean more = true;
+            while (more || !inFlight.isEmpty()){
+                // keep the pool busy
+                while (more && inFlight.size() < 2 * threads){
+                    MappedByteBuffer chunk = planner.next();
+                    if (chunk == null){
+                        more = false;
+                    } else{
+                        stats.bytes += chunk.limit();
+                        stats.chunks++;
+                        inFlight.add(pool.submit(() -> tokenize(chunk)));
+                    }
+                }
+
+                // merge the oldest chunk, so the batches go in in file order
+                if (!inFlight.isEmpty()){
+                    ChunkCounts counts = inFlight.poll().get();
+                    stats.tokens += counts.tokens;
+                    sink.accept(counts.batch);
+                }
+            }
+        } catch (ExecutionException e){
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException){
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Tokenizing failed", cause);
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading", e);
+        } finally{
+            for (Future<ChunkCounts> future : inFlight){
+                future.cancel(true);
+            }
+            pool.shutdownNow();
+        }
+        stats.nanos = System.nanoTime() - start;
+        return stats;
+    } // end of run
+
+    /**
+     * tokenize
+     *
+     * A private method that splits a chunk into words, counts them, and sorts the
+     * distinct words into a batch for the tree.
+     *
+     * @param chunk The chunk, which doesn't start or end in the middle of a word
+     * @return the counts of the words of the chunk, with the batch made
+     */
+    private static ChunkCounts tokenize(ByteBuffer chunk) {
+        ChunkCounts counts = new ChunkCounts();
+        int end = chunk.limit();
+        int i = 0;
+        while (i < end){
+            // skip to the start of the next word
+            while (i < end && !isWordByte(chunk.get(i))){
+                i++;
+            }
+            int start = i;
+            boolean ascii = true;
+            while (i < end){
+                byte b = chunk.get(i);
+                if (!isWordByte(b)){
+                    break;
+                }
+                ascii &= b >= 0;
+                i++;
+            }
+            if (start < i){
+                if (ascii){
+                    counts.addAscii(chunk, start, i);
+                } else{
+                    counts.addDecoded(chunk, start, i);
+                }
+            }
+        }
+        counts.finish();
+        return counts;
+    } // end of tokenize
+
+    // whether a byte can be part of a word. Every byte of a multi-byte UTF-8
+    // character counts, so a chunk never ends in the middle of one; those runs are
+    // split properly once decoded
+    private static boolean isWordByte(byte b) {
+        return b < 0 || WORD_BYTE[b];
+    }
+
+    // Takes each chunk's sorted batch of distinct words
+    private interface BatchSink {
+        void accept(TwoThreeTree.DataPair[] batch);
+    }
+
+    /**
+     * Stats
+     *
+     * How much a call to ingest read, and how long it took.
+     */
+    public static class Stats {
+        private long bytes;
+        private long tokens;
+        private int chunks;
+        private long nanos;
+
+        // how many bytes were read
+        public long getBytes() {
+            return bytes;
+        }
+
+        // how many words were read, counting repeats
+        public long getTokens() {
+            return tokens;
+        }
+
+        // how many chunks the files were read in
+        public int getChunks() {
+            return chunks;
+        }
+
+        // how long the whole ingest took, in nanoseconds
+        public long getNanos() {
+            return nanos;
+        }
+
+        // words read per second, from opening the files to the last batch merged in
+        public double getTokensPerSecond() {
+            return nanos == 0 ? 0 : tokens * 1e9 / nanos;
+        }
+
+        // megabytes read per second
+        public double getMegabytesPerSecond() {
+            return nanos == 0 ? 0 : bytes * 1e9 / nanos / (1 << 20);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d tokens, %d bytes in %d chunks, %.1f ms: %.0f tokens/s, %.1f MB/s",
+                    tokens, bytes, chunks, nanos / 1e6, getTokensPerSecond(), getMegabytesPerSecond());
+        }
+    } // end of Stats class
+
+    // Maps the files one chunk at a time, each chunk ending right before a byte that
+    // can't be part of a word
+    private class ChunkPlanner implements Closeable {
+        private final Path[] files;
+        private int nextFile;
+        private FileChannel channel;
+        private long position;
+        private long size;
+        private final ByteBuffer probe;
+
+        // constructor
+        ChunkPlanner(Path[] files) {
+            this.files = files;
+            this.nextFile = 0;
+            this.channel = null;
+            this.probe = ByteBuffer.allocate(4096);
+        }
+
+        // maps the next chunk, or returns null once every file is done
+        MappedByteBuffer next() throws IOException {
+            while (channel == null || position == size){
+                close();
+                if (nextFile == files.length){
+                    return null;
+                }
+                channel = FileChannel.open(files[nextFile++], StandardOpenOption.READ);
+                position = 0;
+                size = channel.size();
+            }
+
+            long end = Math.min(size, position + chunkBytes);
+            end = wordEnd(end);
+            if (end - position > Integer.MAX_VALUE){
+                throw new IOException("A word is too long to read: over " + Integer.MAX_VALUE + " bytes");
+            }
+            // a mapping stays valid after its channel is closed
+            MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, position, end - position);
+            position = end;
+            return chunk;
+        }
+
+        // moves a chunk end forward past the rest of the word it lands in
+        private long wordEnd(long end) throws IOException {
+            while (end < size){
+                probe.clear();
+                int read = channel.read(probe, end);
+                if (read <= 0){
+                    return size;
+                }
+                for (int i = 0; i < read; i++){
+                    if (!isWordByte(probe.get(i))){
+                        return end + i;
+                    }
+                }
+                end += read;
+            }
+            return size;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (channel != null){
+                channel.close();
+                channel = null;
+            }
+        }
+    } // end of ChunkPlanner class
+
+    // The words of one chunk and how many times each came up, in an open-addressing
+    // hash table keyed by the UTF-8 bytes of the folded word
+    private static class ChunkCounts {
+        private byte[] arena; // the folded bytes of every distinct word, one after the other
+        private int arenaEnd;
+        private int[] starts;
+        private int[] lengths;
+        private int[] hashes;
+        private int[] frequencies;
+        private String[] words; // each word as it first came up
+        private int distinct;
+        private int[] slots; // index of a word plus one, or 0 for an empty slot
+        private byte[] scratch; // the folded bytes of the word being counted
+        private long tokens;
+        private TwoThreeTree.DataPair[] batch; // made by finish()
+
+        // constructor
+        ChunkCounts() {
+            arena = new byte[1 << 12];
+            starts = new int[256];
+            lengths = new int[256];
+            hashes = new int[256];
+            frequencies = new int[256];
+            words = new String[256];
+            slots = new int[512];
+            scratch = new byte[64];
+        }
+
+        // counts a word that is all ASCII, folding it byte by byte
+        void addAscii(ByteBuffer chunk, int from, int to) {
+            int length = to - from;
+            if (scratch.length < length){
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            int hash = 0;
+            for (int i = 0; i < length; i++){
+                byte b = chunk.get(from + i);
+                if (b >= 'A' && b <= 'Z'){
+                    b += 'a' - 'A';
+                }
+                scratch[i] = b;
+                hash = 31 * hash + b;
+            }
+            if (count(scratch, length, hash)){
+                // new to this chunk, keep the word as it came
+                byte[] original = new byte[length];
+                chunk.get(from, original);
+                words[distinct - 1] = new String(original, StandardCharsets.ISO_8859_1);
+            }
+        }
+
+        // counts the words in a run of bytes with non-ASCII characters in it, which
+        // is decoded and split at anything that isn't a letter or digit
+        void addDecoded(ByteBuffer chunk, int from, int to) {
+            byte[] bytes = new byte[to - from];
+            chunk.get(from, bytes);
+            String text = new String(bytes, StandardCharsets.UTF_8);
+            int i = 0;
+            while (i < text.length()){
+                while (i < text.length() && !Character.isLetterOrDigit(text.codePointAt(i))){
+                    i += Character.charCount(text.codePointAt(i));
+                }
+                int start = i;
+                while (i < text.length() && Character.isLetterOrDigit(text.codePointAt(i))){
+                    i += Character.charCount(text.codePointAt(i));
+                }
+                if (start < i){
+                    String word = text.substring(start, i);
+                    byte[] key = TwoThreeTree.foldKey(word).getBytes(StandardCharsets.UTF_8);
+                    int hash = 0;
+                    for (byte b : key){
+                        hash = 31 * hash + b;
+                    }
+                    if (count(key, key.length, hash)){
+                        words[distinct - 1] = word;
+                    }
+                }
+            }
+        }
+
+        /**
+         * count
+         *
+         * Adds one to the count of a folded word, adding the word if it is new.
+         *
+         * @param key The folded bytes of the word
+         * @param length How many of them there are
+         * @param hash Their hash
+         * @return true if the word is new, in which case the caller has to fill in
+         *         words[distinct - 1]
+         */
+        private boolean count(byte[] key, int length, int hash) {
+            tokens++;
+            if (distinct == starts.length){
+                grow();
+            }
+            int mask = slots.length - 1;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (slots[slot] != 0){
+                int w = slots[slot] - 1;
+                if (hashes[w] == hash && Arrays.equals(arena, starts[w], starts[w] + lengths[w], key, 0, length)){
+                    frequencies[w]++;
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            // a new word
+            if (arena.length - arenaEnd < length){
+                arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaEnd + length));
+            }
+            System.arraycopy(key, 0, arena, arenaEnd, length);
+            starts[distinct] = arenaEnd;
+            lengths[distinct] = length;
+            hashes[distinct] = hash;
+            frequencies[distinct] = 1;
+            arenaEnd += length;
+            distinct++;
+            slots[slot] = distinct;
+            return true;
+        }
+
+        // doubles the room for words, and the table with it so it stays at most half full
+        private void grow() {
+            int capacity = starts.length * 2;
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+            frequencies = Arrays.copyOf(frequencies, capacity);
+            words = Arrays.copyOf(words, capacity);
+            slots = new int[capacity * 2];
+            int mask = slots.length - 1;
+            for (int w = 0; w < distinct; w++){
+                int slot = (hashes[w] ^ (hashes[w] >>> 16)) & mask;
+                while (slots[slot] != 0){
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = w + 1;
+            }
+        }
+
+        // turns the distinct words of the chunk into data pairs in the order of the
+        // tree, and lets go of the table
+        void finish() {
+            batch = new TwoThreeTree.DataPair[distinct];
+            for (int w = 0; w < distinct; w++){
+                TwoThreeTree.DataPair pair = new TwoThreeTree.DataPair();
+                pair.word = words[w];
+                pair.key = new String(arena, starts[w], lengths[w], StandardCharsets.UTF_8);
+                pair.frequency = frequencies[w];
+                batch[w] = pair;
+            }
+            Arrays.sort(batch, (a, b) -> a.key.compareTo(b.key));
+            arena = null;
+            slots = null;
+            words = null;
+        }
+    } // end of ChunkCounts class
+
+} // end of WordIngest class
@@ -0,0 +1,100 @@
+package twothree;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * AddWordBenchmark
+ *
+ * PURPOSE: Times addWord, per word, against a TreeMap and a HashMap doing the same
+ * count with merge on the lower-cased word.
+ *
+ * Each invocation adds the whole stream of WordInput. With start=new it starts
+ * from an empty tree, so sorted and random input add only new words and Zipf input
+ * is the usual word count job. With start=repeated the tree already holds every
+ * word, so every add only counts. Each benchmark calls one concrete type, and every
+ * one runs in its own fork, so none is slowed by the types the others used.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(WordInput.WORDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Thread)
+public class AddWordBenchmark {
+
+    @Param({"new", "repeated"})
+    public String start;
+
+    private TwoThreeTree tree;
+    private TreeMap<String, Integer> treeMap;
+    private HashMap<String, Integer> hashMap;
+
+    // fills the structures once, when every add is to count a word already there
+    @Setup(Level.Trial)
+    public void fill(WordInput input) {
+        tree = new TwoThreeTree();
+        treeMap = new TreeMap<>();
+        hashMap = new HashMap<>();
+        if (start.equals("repeated")){
+            for (String word : input.vocabulary){
+                tree.addWord(word);
+                treeMap.merge(word.toLowerCase(), 1, Integer::sum);
+                hashMap.merge(word.toLowerCase(), 1, Integer::sum);
+            }
+        }
+    }
+
+    // empties the structures before every invocation, when every add starts fresh.
+    // One invocation adds a whole stream, so the pause around this doesn't show
+    @Setup(Level.Invocation)
+    public void empty() {
+        if (start.equals("new")){
+            tree = new TwoThreeTree();
+            treeMap = new TreeMap<>();
+            hashMap = new HashMap<>();
+        }
+    }
+
+    @Benchmark
+    public TwoThreeTree twoThreeTree(WordInput input) {
+        for (String word : input.stream){
+            tree.addWord(word);
+        }
+        return tree;
+    }
+
+    @Benchmark
+    public Map<String, Integer> treeMap(WordInput input) {
+        for (String word : input.stream){
+            treeMap.merge(word.toLowerCase(), 1, Integer::sum);
+        }
+        return treeMap;
+    }
+
+    @Benchmark
+    public Map<String, Integer> hashMap(WordInput input) {
+        for (String word : input.stream){
+            hashMap.merge(word.toLowerCase(), 1, Integer::sum);
+        }
+        return hashMap;
+    }
+
+} // end of AddWordBenchmark class
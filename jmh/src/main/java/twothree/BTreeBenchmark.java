@@ -0,0 +1,83 @@
+package twothree;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * BTreeBenchmark
+ *
+ * PURPOSE: Times addWord, getFrequency and containsWord, per word, on a
+ * BTreeWordTree of growing order, to compare with AddWordBenchmark and
+ * LookupBenchmark on the 2-3 Tree.
+ *
+ * Order 3 has the shape of the 2-3 Tree, bigger orders are flatter with more keys
+ * searched per node. addWord starts from an empty tree every invocation, the
+ * lookups run on a tree holding the whole vocabulary.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(WordInput.WORDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Thread)
+public class BTreeBenchmark {
+
+    // not called order, which WordInput already uses for the order of the words
+    @Param({"3", "4", "8", "16", "32", "64", "128"})
+    public int btreeOrder;
+
+    private BTreeWordTree full; // holds the whole vocabulary, for the lookups
+    private BTreeWordTree empty; // made again before every invocation, for addWord
+
+    @Setup(Level.Trial)
+    public void fill(WordInput input) {
+        full = new BTreeWordTree(btreeOrder);
+        for (String word : input.vocabulary){
+            full.addWord(word);
+        }
+    }
+
+    // one invocation adds a whole stream, so the pause around this doesn't show
+    @Setup(Level.Invocation)
+    public void empty() {
+        empty = new BTreeWordTree(btreeOrder);
+    }
+
+    @Benchmark
+    public BTreeWordTree addWord(WordInput input) {
+        for (String word : input.stream){
+            empty.addWord(word);
+        }
+        return empty;
+    }
+
+    @Benchmark
+    public void getFrequency(WordInput input, Blackhole sink) {
+        for (String word : input.stream){
+            sink.consume(full.getFrequency(word));
+        }
+    }
+
+    @Benchmark
+    public void containsWordMiss(WordInput input, Blackhole sink) {
+        for (String word : input.misses){
+            sink.consume(full.containsWord(word));
+        }
+    }
+
+} // end of BTreeBenchmark class
@@ -0,0 +1,105 @@
+package twothree;
+
+import java.util.HashMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * LookupBenchmark
+ *
+ * PURPOSE: Times getFrequency and containsWord, per word, on a tree holding the
+ * whole vocabulary, against get and containsKey on a TreeMap and a HashMap holding
+ * the same words lower-cased.
+ *
+ * The hits look up the stream of WordInput, the misses the same stream with every
+ * word changed into one that isn't there.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(WordInput.WORDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class LookupBenchmark {
+
+    private TwoThreeTree tree;
+    private TreeMap<String, Integer> treeMap;
+    private HashMap<String, Integer> hashMap;
+
+    @Setup(Level.Trial)
+    public void fill(WordInput input) {
+        tree = new TwoThreeTree();
+        treeMap = new TreeMap<>();
+        hashMap = new HashMap<>();
+        for (String word : input.vocabulary){
+            tree.addWord(word);
+            treeMap.merge(word.toLowerCase(), 1, Integer::sum);
+            hashMap.merge(word.toLowerCase(), 1, Integer::sum);
+        }
+    }
+
+    @Benchmark
+    public void getFrequency(WordInput input, Blackhole sink) {
+        for (String word : input.stream){
+            sink.consume(tree.getFrequency(word));
+        }
+    }
+
+    @Benchmark
+    public void containsWordHit(WordInput input, Blackhole sink) {
+        for (String word : input.stream){
+            sink.consume(tree.containsWord(word));
+        }
+    }
+
+    @Benchmark
+    public void containsWordMiss(WordInput input, Blackhole sink) {
+        for (String word : input.misses){
+            sink.consume(tree.containsWord(word));
+        }
+    }
+
+    @Benchmark
+    public void treeMapGet(WordInput input, Blackhole sink) {
+        for (String word : input.stream){
+            sink.consume(treeMap.get(word.toLowerCase()));
+        }
+    }
+
+    @Benchmark
+    public void treeMapContainsKeyMiss(WordInput input, Blackhole sink) {
+        for (String word : input.misses){
+            sink.consume(treeMap.containsKey(word.toLowerCase()));
+        }
+    }
+
+    @Benchmark
+    public void hashMapGet(WordInput input, Blackhole sink) {
+        for (String word : input.stream){
+            sink.consume(hashMap.get(word.toLowerCase()));
+        }
+    }
+
+    @Benchmark
+    public void hashMapContainsKeyMiss(WordInput input, Blackhole sink) {
+        for (String word : input.misses){
+            sink.consume(hashMap.containsKey(word.toLowerCase()));
+        }
+    }
+
+} // end of LookupBenchmark class
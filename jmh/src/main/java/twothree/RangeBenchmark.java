@@ -0,0 +1,137 @@
+package twothree;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * RangeBenchmark
+ *
+ * PURPOSE: Times one range or prefix query, walked to its end, on a tree holding
+ * the whole vocabulary, next to one full traversal with a cursor.
+ *
+ * The ranges cover a set share of the words, in percent, starting at random
+ * places. The prefixes are the first letters of random words, so the shorter they
+ * are the more words they match. Each invocation runs the next query of a fixed
+ * list, the same list in every fork.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class RangeBenchmark {
+
+    // how many different queries each benchmark goes through
+    private static final int QUERIES = 1024;
+
+    private TwoThreeTree tree;
+    private String[] vocabulary;
+    private String[] sorted;
+
+    // the order of the input makes no difference to a finished tree, so this
+    // doesn't take WordInput's parameter
+    @Setup(Level.Trial)
+    public void fill() {
+        WordInput input = new WordInput();
+        input.order = "random";
+        input.setup();
+
+        vocabulary = input.vocabulary;
+        sorted = vocabulary.clone();
+        Arrays.sort(sorted, String.CASE_INSENSITIVE_ORDER);
+        tree = new TwoThreeTree();
+        for (String word : vocabulary){
+            tree.addWord(word);
+        }
+    }
+
+    // the ranges, from and to of each
+    @State(Scope.Thread)
+    public static class Ranges {
+
+        @Param({"0.1", "1", "10"})
+        public String percent;
+
+        String[] from;
+        String[] to;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setup(RangeBenchmark benchmark) {
+            int words = benchmark.sorted.length;
+            int width = (int) Math.max(1, Math.round(words * Double.parseDouble(percent) / 100));
+            Random rnd = new Random(width);
+            from = new String[QUERIES];
+            to = new String[QUERIES];
+            for (int i = 0; i < QUERIES; i++){
+                int start = rnd.nextInt(words - width);
+                from[i] = benchmark.sorted[start];
+                to[i] = benchmark.sorted[start + width];
+            }
+        }
+    } // end of Ranges class
+
+    // the prefixes
+    @State(Scope.Thread)
+    public static class Prefixes {
+
+        @Param({"1", "2", "3"})
+        public int length;
+
+        String[] prefixes;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setup(RangeBenchmark benchmark) {
+            Random rnd = new Random(length);
+            prefixes = new String[QUERIES];
+            for (int i = 0; i < QUERIES; i++){
+                prefixes[i] = benchmark.vocabulary[rnd.nextInt(benchmark.vocabulary.length)].substring(0, length);
+            }
+        }
+    } // end of Prefixes class
+
+    @Benchmark
+    public long range(Ranges ranges) {
+        int i = ranges.next;
+        ranges.next = (i + 1) % QUERIES;
+        return sumOf(tree.range(ranges.from[i], ranges.to[i]));
+    }
+
+    @Benchmark
+    public long prefix(Prefixes prefixes) {
+        int i = prefixes.next;
+        prefixes.next = (i + 1) % QUERIES;
+        return sumOf(tree.prefix(prefixes.prefixes[i]));
+    }
+
+    @Benchmark
+    public long fullTraversal() {
+        return sumOf(tree.cursor());
+    }
+
+    // steps a cursor to its end, returns the sum of the frequencies it went over
+    private static long sumOf(TwoThreeTree.WordCursor cursor) {
+        long total = 0;
+        while (cursor.next()){
+            total += cursor.frequency();
+        }
+        return total;
+    }
+
+} // end of RangeBenchmark class
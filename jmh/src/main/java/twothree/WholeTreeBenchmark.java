@@ -0,0 +1,120 @@
+package twothree;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * WholeTreeBenchmark
+ *
+ * PURPOSE: Times the operations that go over the whole tree, per word: compare, an
+ * in-order traversal with forEach and with a cursor, against walking the values of
+ * a TreeMap and a HashMap. Also times height, which is one call.
+ *
+ * The tree holds the whole vocabulary. compare goes against a tree holding every
+ * other word of it plus as many words that are not in it, and writes to a Writer
+ * that throws the text away.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class WholeTreeBenchmark {
+
+    private TwoThreeTree tree;
+    private TwoThreeTree half;
+    private TreeMap<String, Integer> treeMap;
+    private HashMap<String, Integer> hashMap;
+
+    // the order of the input makes no difference to a finished tree, so this
+    // doesn't take WordInput's parameter
+    @Setup(Level.Trial)
+    public void fill() {
+        WordInput input = new WordInput();
+        input.order = "random";
+        input.setup();
+
+        tree = new TwoThreeTree();
+        half = new TwoThreeTree();
+        treeMap = new TreeMap<>();
+        hashMap = new HashMap<>();
+        for (int i = 0; i < WordInput.WORDS; i++){
+            String word = input.vocabulary[i];
+            tree.addWord(word);
+            treeMap.merge(word.toLowerCase(), 1, Integer::sum);
+            hashMap.merge(word.toLowerCase(), 1, Integer::sum);
+            if (i % 2 == 0){
+                half.addWord(word);
+                half.addWord(word + "1");
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(WordInput.WORDS)
+    public void compare() throws IOException {
+        tree.compare(half, Writer.nullWriter());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(WordInput.WORDS)
+    public long forEach() {
+        long[] total = new long[1];
+        tree.forEach((word, frequency) -> total[0] += frequency);
+        return total[0];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(WordInput.WORDS)
+    public long cursor() {
+        long total = 0;
+        TwoThreeTree.WordCursor cursor = tree.cursor();
+        while (cursor.next()){
+            total += cursor.frequency();
+        }
+        return total;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(WordInput.WORDS)
+    public long treeMapTraversal() {
+        long total = 0;
+        for (int frequency : treeMap.values()){
+            total += frequency;
+        }
+        return total;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(WordInput.WORDS)
+    public long hashMapTraversal() {
+        long total = 0;
+        for (int frequency : hashMap.values()){
+            total += frequency;
+        }
+        return total;
+    }
+
+    @Benchmark
+    public int height() {
+        return tree.height();
+    }
+
+} // end of WholeTreeBenchmark class
@@ -0,0 +1,97 @@
+package twothree;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * WordInput
+ *
+ * PURPOSE: The words the benchmarks work through, made once per fork with a fixed
+ * seed so every fork and every benchmark sees the same ones.
+ *
+ * The vocabulary is WORDS distinct words. The stream is WORDS words taken from it
+ * in the order the order parameter names: random, sorted, or drawn with Zipf
+ * frequencies like the words of natural text.
+ */
+@State(Scope.Benchmark)
+public class WordInput {
+
+    // how many words the vocabulary and the stream hold, and so how many
+    // operations one invocation of a benchmark over the stream does
+    public static final int WORDS = 100_000;
+
+    @Param({"random", "sorted", "zipf"})
+    public String order;
+
+    public String[] vocabulary; // distinct words, random order
+    public String[] stream; // the words in the order asked for
+    public String[] misses; // the stream with each word made one not in the vocabulary
+
+    // builds the words, once per fork
+    @Setup(Level.Trial)
+    public void setup() {
+        Random rnd = new Random(42);
+        HashSet<String> seen = new HashSet<>();
+        vocabulary = new String[WORDS];
+        for (int i = 0; i < WORDS; i++){
+            String word;
+            do{
+                word = randomWord(rnd);
+            } while (!seen.add(word.toLowerCase()));
+            vocabulary[i] = word;
+        }
+        switch (order){
+            case "random":
+                stream = vocabulary.clone();
+                break;
+            case "sorted":
+                stream = vocabulary.clone();
+                Arrays.sort(stream, String.CASE_INSENSITIVE_ORDER);
+                break;
+            case "zipf":
+                stream = zipfStream(vocabulary, WORDS, rnd);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown order: " + order);
+        }
+        misses = new String[WORDS];
+        for (int i = 0; i < WORDS; i++){
+            // digits never show up in the vocabulary
+            misses[i] = stream[i] + "0";
+        }
+    } // end of setup
+
+    // a word of 3 to 10 letters, some of them upper case
+    static String randomWord(Random rnd) {
+        char[] letters = new char[3 + rnd.nextInt(8)];
+        for (int i = 0; i < letters.length; i++){
+            letters[i] = (char) ((rnd.nextInt(8) == 0 ? 'A' : 'a') + rnd.nextInt(26));
+        }
+        return new String(letters);
+    }
+
+    // draws count words from the vocabulary, the word at rank r having a chance
+    // proportional to 1 / r, like words in natural text
+    static String[] zipfStream(String[] vocabulary, int count, Random rnd) {
+        double[] cumulative = new double[vocabulary.length];
+        double total = 0;
+        for (int r = 0; r < vocabulary.length; r++){
+            total += 1.0 / (r + 1);
+            cumulative[r] = total;
+        }
+        String[] stream = new String[count];
+        for (int i = 0; i < count; i++){
+            int r = Arrays.binarySearch(cumulative, rnd.nextDouble() * total);
+            stream[i] = vocabulary[r < 0 ? Math.min(-r - 1, vocabulary.length - 1) : r];
+        }
+        return stream;
+    }
+
+} // end of WordInput class
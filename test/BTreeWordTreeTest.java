@@ -0,0 +1,55 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * BTreeWordTreeTest
+ *
+ * PURPOSE: Checks a BTreeWordTree of any order counts and prints the words like a
+ * TreeMap of them, and stays as flat as its order allows.
+ */
+class BTreeWordTreeTest {
+
+    @Test
+    void countsLikeAMapAtEveryOrder() {
+        Random rnd = new Random(1);
+        for (int n : new int[] {0, 1, 2, 3, 5, 10, 100, 1000, 5000}){
+            for (int order : new int[] {3, 4, 5, 16, 64}){
+                BTreeWordTree tree = new BTreeWordTree(order);
+                Map<String, Integer> model = new TreeMap<>();
+                for (int i = 0; i < n * 3; i++){
+                    String word = (rnd.nextBoolean() ? "W" : "w") + rnd.nextInt(n + 1);
+                    tree.addWord(word);
+                    model.merge(word.toLowerCase(), 1, Integer::sum);
+                }
+                assertEquals(model.size(), tree.size());
+                for (int i = 0; i <= n + 1; i++){
+                    assertEquals(model.getOrDefault("w" + i, 0), tree.getFrequency("W" + i));
+                    assertEquals(model.containsKey("w" + i), tree.containsWord("w" + i));
+                }
+
+                StringBuilder expected = new StringBuilder();
+                if (model.isEmpty()){
+                    expected.append("Tree is empty!\n");
+                } else{
+                    expected.append("[ ");
+                    model.forEach((word, frequency) -> expected.append(word).append('(').append(frequency).append(") "));
+                    expected.append("]\n");
+                }
+                assertEquals(expected.toString().toLowerCase(), TreeChecks.capture(tree::print).toLowerCase(),
+                        "order " + order + ", " + n + " words");
+
+                // no deeper than a tree whose nodes are all half full
+                double fanOut = Math.ceil(order / 2.0);
+                assertTrue(n == 0 || tree.height() <= Math.ceil(Math.log(tree.size()) / Math.log(fanOut)) + 1,
+                        "height " + tree.height() + " at order " + order);
+            }
+        }
+    }
+
+} // end of BTreeWordTreeTest class
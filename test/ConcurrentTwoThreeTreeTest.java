@@ -0,0 +1,369 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * ConcurrentTwoThreeTreeTest
+ *
+ * PURPOSE: Hammers a ConcurrentTwoThreeTree from many threads at once and checks
+ * no count is lost, each thread sees its own updates, and the tree underneath
+ * keeps its shape once the counts are settled.
+ */
+class ConcurrentTwoThreeTreeTest {
+
+    @Test
+    void countsEveryAddFromManyThreads() throws InterruptedException {
+        ConcurrentTwoThreeTree tree = new ConcurrentTwoThreeTree();
+        ConcurrentHashMap<String, LongAdder> expected = new ConcurrentHashMap<>();
+        TreeChecks.inParallel(8, id -> {
+            Random rnd = new Random(id);
+            for (int i = 0; i < 100_000; i++){
+                String word = "w" + (int) Math.abs(rnd.nextGaussian() * 5000);
+                tree.addWord(word);
+                expected.computeIfAbsent(word, w -> new LongAdder()).increment();
+                tree.getFrequency("w" + rnd.nextInt(20000));
+            }
+        });
+        for (Map.Entry<String, LongAdder> entry : expected.entrySet()){
+            assertEquals(entry.getValue().intValue(), tree.getFrequency(entry.getKey()), entry.getKey());
+        }
+        assertEquals(expected.size(), tree.size());
+        TreeChecks.checkStructure(TreeChecks.settled(tree));
+    }
+
+    @Test
+    void keepsCountsExactNextToRemovesAndPrunes() throws InterruptedException {
+        for (int round = 0; round < 4; round++){
+            ConcurrentTwoThreeTree tree = new ConcurrentTwoThreeTree();
+            if (round % 2 == 1){
+                tree.enableCache(64);
+            }
+            if (round == 2){
+                tree.enableTopK();
+            }
+            if (round == 3){
+                tree.enableMetrics();
+            }
+            String[] words = new String[50];
+            for (int i = 0; i < words.length; i++){
+                words[i] = "w" + i;
+                for (int k = 0; k < 20000; k++){
+                    tree.addWord(words[i]);
+                }
+            }
+
+            int adders = 4;
+            CountDownLatch counting = new CountDownLatch(adders + 1);
+            TreeChecks.inParallel(adders + 3, id -> {
+                if (id < adders){
+                    for (int i = 0; i < 100_000; i++){
+                        tree.addWord(words[i % words.length]);
+                    }
+                    counting.countDown();
+                } else if (id == adders){
+                    for (int i = 0; i < 50_000; i++){
+                        tree.decrementFrequency(words[i % words.length]);
+                    }
+                    counting.countDown();
+                } else if (id == adders + 1){
+                    // prunes and removes only words that never reach 5
+                    for (int i = 0; counting.getCount() > 0; i++){
+                        tree.pruneBelow(5);
+                        if (i % 10 == 0){
+                            tree.sumFrequencies("a", "z");
+                        }
+                        tree.addWord("tmp" + (i % 7));
+                        tree.removeWord("tmp" + ((i + 3) % 7));
+                    }
+                } else{
+                    while (counting.getCount() > 0){
+                        for (String word : words){
+                            assertTrue(tree.getFrequency(word) > 0, "lost " + word);
+                        }
+                    }
+                }
+            });
+
+            long expected = 20000 + (long) adders * 100_000 / words.length - 50_000 / words.length;
+            for (String word : words){
+                assertEquals(expected, tree.getFrequency(word), word);
+            }
+            assertEquals(expected * words.length, tree.sumFrequencies("w", "x"));
+            TreeChecks.checkStructure(TreeChecks.settled(tree));
+            if (round == 2){
+                assertEquals(1, tree.topK(1).size());
+            }
+        }
+    }
+
+    @Test
+    void doubleAndSwapStayExactWithoutCountsInBetween() {
+        ConcurrentTwoThreeTree tree = new ConcurrentTwoThreeTree();
+        for (int i = 0; i < 3; i++){
+            tree.addWord("a");
+        }
+        tree.addWord("b");
+        tree.doubleFrequency("a");
+        assertEquals(6, tree.getFrequency("a"));
+        tree.swapFrequencies("a", "b");
+        assertEquals(1, tree.getFrequency("a"));
+        assertEquals(6, tree.getFrequency("b"));
+        assertEquals(7, tree.sumFrequencies("a", "c"));
+        assertEquals(2, tree.upsertWord("a"));
+        assertEquals(1, tree.decrementFrequency("a"));
+        assertEquals(0, tree.decrementFrequency("a"));
+        assertFalse(tree.containsWord("a"));
+        tree.doubleFrequency("zz");
+        tree.swapFrequencies("zz", "b");
+        assertEquals(6, tree.getFrequency("b"));
+        TreeChecks.checkStructure(TreeChecks.settled(tree));
+    }
+
+    @Test
+    void negativeAdjustLeavesARetiredPairRetired() {
+        TwoThreeTree inner = new TwoThreeTree();
+        ConcurrentTwoThreeTree tree = new ConcurrentTwoThreeTree(inner);
+        for (int i = 0; i < 10; i++){
+            tree.addWord("a");
+        }
+        tree.addWord("b");
+        TreeChecks.settled(tree);
+
+        // as a writer deciding whether the word stays would leave it
+        TwoThreeTree.DataPair pair = inner.peekPair("a");
+        pair.retire();
+        assertEquals(7, tree.adjustFrequency("a", -3));
+        assertTrue(TwoThreeTree.DataPair.isGone(pair.getPending()));
+        tree.swapFrequencies("a", "b");
+        assertTrue(TwoThreeTree.DataPair.isGone(pair.getPending()));
+        assertTrue(TwoThreeTree.DataPair.isGone(pair.addPending(-1)));
+        assertTrue(TwoThreeTree.DataPair.isGone(pair.addPending(1)));
+
+        // every change went through the locked path, so none is lost or counted twice
+        pair.revive();
+        assertEquals(1, tree.getFrequency("a"));
+        assertEquals(7, tree.getFrequency("b"));
+        assertEquals(8, tree.sumFrequencies("a", "z"));
+        TreeChecks.checkStructure(TreeChecks.settled(tree));
+    }
+
+    @Test
+    void concurrentSwapsKeepTheTotal() throws InterruptedException {
+        ConcurrentTwoThreeTree tree = new ConcurrentTwoThreeTree();
+        String[] words = {"p", "q", "r", "s", "t"};
+        for (int i = 0; i < words.length; i++){
+            for (int k = 0; k <= i * 10; k++){
+                tree.addWord(words[i]);
+            }
+        }
+        long total = tree.sumFrequencies("a", "z");
+        TreeChecks.inParallel(4, id -> {
+            Random rnd = new Random(id);
+            for (int i = 0; i < 50_000; i++){
+                tree.swapFrequencies(words[rnd.nextInt(words.length)], words[rnd.nextInt(words.length)]);
+                if (i % 1000 == 0){
+                    tree.forEach((word, frequency) -> {});
+                }
+            }
+        });
+        assertEquals(total, tree.sumFrequencies("a", "z"));
+        TreeChecks.checkStructure(TreeChecks.settled(tree));
+    }
+
+    @Test
+    void everyThreadSeesItsOwnUpdates() throws InterruptedException {
+        ConcurrentTwoThreeTree tree = new ConcurrentTwoThreeTree();
+        ConcurrentHashMap<String, AtomicInteger> expected = new ConcurrentHashMap<>();
+        int writers = 6;
+        CountDownLatch writing = new CountDownLatch(writers);
+        TreeChecks.inParallel(writers + 1, id -> {
+            if (id == writers){
+                while (writing.getCount() > 0){
+                    tree.forEach((word, frequency) -> {});
+                }
+                return;
+            }
+            Random rnd = new Random(id * 31 + 7);
+            for (int i = 0; i < 40_000; i++){
+                // words starting with t<id> are only touched by this thread
+                String own = "t" + id + "x" + rnd.nextInt(20000);
+                AtomicInteger count = expected.computeIfAbsent(own, w -> new AtomicInteger());
+                int op = rnd.nextInt(100);
+                if (op < 45){
+                    int frequency = count.incrementAndGet();
+                    assertEquals(frequency, tree.upsertWord(own));
+                    assertEquals(frequency, tree.getFrequency(own.toUpperCase()));
+                } else if (op < 90){
+                    String shared = "s" + rnd.nextInt(5000);
+                    expected.computeIfAbsent(shared, w -> new AtomicInteger()).incrementAndGet();
+                    tree.addWord(shared);
+                } else if (op < 94){
+                    assertEquals(count.getAndSet(0) > 0, tree.removeWord(own));
+                    assertFalse(tree.containsWord(own));
+                } else if (op < 96){
+                    int frequency = Math.max(0, count.get() - 1);
+                    count.set(frequency);
+                    assertEquals(frequency, tree.decrementFrequency(own));
+                } else if (op < 97){
+                    assertTrue(tree.rank("m") <= tree.size());
+                } else if (op < 98){
+                    if (count.get() > 0){
+                        tree.doubleFrequency(own);
+                        assertEquals(count.addAndGet(count.get()), tree.getFrequency(own));
+                    }
+                } else{
+                    tree.sumFrequencies("s", "t");
+                }
+            }
+            writing.countDown();
+        });
+
+        int words = 0;
+        for (Map.Entry<String, AtomicInteger> entry : expected.entrySet()){
+            if (entry.getValue().get() > 0){
+                words++;
+            }
+            assertEquals(entry.getValue().get(), tree.getFrequency(entry.getKey()), entry.getKey());
+        }
+        assertEquals(words, tree.size());
+        long[] total = new long[1];
+        tree.forEach((word, frequency) -> total[0] += frequency);
+        assertEquals(total[0], tree.sumFrequencies("", "\uffff"));
+        TreeChecks.checkStructure(TreeChecks.settled(tree));
+    }
+
+    @Test
+    void mixedUpdatesKeepTheTreeValid() throws InterruptedException {
+        ConcurrentTwoThreeTree tree = new ConcurrentTwoThreeTree();
+        String[] words = new String[300];
+        Random seed = new Random(1);
+        for (int i = 0; i < words.length; i++){
+            words[i] = TreeChecks.word(seed);
+        }
+        TreeChecks.inParallel(8, id -> {
+            Random rnd = new Random(id);
+            for (int i = 0; i < 100_000; i++){
+                String word = words[rnd.nextInt(words.length)];
+                int op = rnd.nextInt(100);
+                if (op < 85){
+                    tree.addWord(word);
+                } else if (op < 88){
+                    tree.doubleFrequency(word);
+                } else if (op < 92){
+                    tree.swapFrequencies(word, words[rnd.nextInt(words.length)]);
+                } else if (op < 97){
+                    tree.decrementFrequency(word);
+                } else if (op < 99){
+                    tree.removeWord(word);
+                } else{
+                    tree.sumFrequencies("a", "m");
+                }
+            }
+        });
+        TreeChecks.checkStructure(TreeChecks.settled(tree));
+    }
+
+    @Test
+    void cacheStaysRightNextToRemoves() throws InterruptedException {
+        ConcurrentTwoThreeTree tree = new ConcurrentTwoThreeTree();
+        tree.enableCache(32);
+        int counters = 4;
+        int adds = 50_000;
+        TreeChecks.inParallel(counters + 1, id -> {
+            if (id < counters){
+                Random rnd = new Random(id);
+                for (int i = 0; i < adds; i++){
+                    tree.addWord("w" + (i % 200));
+                    tree.getFrequency("w" + rnd.nextInt(300));
+                }
+            } else{
+                for (int i = 0; i < 20000; i++){
+                    tree.addWord("tmp" + (i % 50));
+                    if (i % 3 == 0){
+                        tree.removeWord("tmp" + ((i * 7) % 50));
+                    }
+                    tree.containsWord("tmp" + (i % 50));
+                }
+            }
+        });
+        for (int i = 0; i < 200; i++){
+            assertEquals(counters * (adds / 200), tree.getFrequency("W" + i));
+        }
+        TwoThreeTree inner = TreeChecks.settled(tree);
+        TreeChecks.checkStructure(inner);
+        long temporary = 0;
+        for (int i = 0; i < 50; i++){
+            temporary += inner.getFrequency("tmp" + i);
+        }
+        assertEquals(temporary + (long) counters * adds, inner.totalFrequency());
+    }
+
+    @Test
+    void topKStaysRightUnderConcurrentUpdates() throws InterruptedException {
+        ConcurrentTwoThreeTree tree = new ConcurrentTwoThreeTree();
+        tree.enableTopK();
+        String[] words = new String[200];
+        Random seed = new Random(3);
+        for (int i = 0; i < words.length; i++){
+            words[i] = TreeChecks.word(seed);
+        }
+        TreeChecks.inParallel(8, id -> {
+            Random rnd = new Random(id);
+            for (int i = 0; i < 50_000; i++){
+                String word = words[rnd.nextInt(words.length)];
+                int op = rnd.nextInt(100);
+                if (op < 90){
+                    tree.addWord(word);
+                } else if (op < 93){
+                    tree.swapFrequencies(word, words[rnd.nextInt(words.length)]);
+                } else if (op < 97){
+                    tree.decrementFrequency(word);
+                } else if (op < 98){
+                    tree.removeWord(word);
+                } else{
+                    tree.topK(5);
+                }
+            }
+        });
+        TreeMap<String, Integer> model = new TreeMap<>();
+        tree.forEach((word, frequency) -> model.put(word.toLowerCase(), frequency));
+        TwoThreeTreeTest.checkTopK(tree.topK(model.size() + 3), model);
+    }
+
+    @Test
+    void topKFollowsSkewedCounts() throws InterruptedException {
+        ConcurrentTwoThreeTree tree = new ConcurrentTwoThreeTree();
+        tree.enableTopK();
+        TreeChecks.inParallel(4, id -> {
+            Random rnd = new Random(id);
+            for (int i = 0; i < 100_000; i++){
+                tree.addWord("w" + (int) Math.floor(Math.pow(rnd.nextDouble(), 3) * 500));
+                if (i % 5000 == 0){
+                    tree.topK(5);
+                }
+            }
+        });
+        List<String> top = tree.topK(20);
+        TreeMap<String, Integer> model = new TreeMap<>();
+        tree.forEach(model::put);
+        List<Integer> frequencies = new ArrayList<>(model.values());
+        frequencies.sort(Collections.reverseOrder());
+        for (int i = 0; i < top.size(); i++){
+            assertEquals(frequencies.get(i), tree.getFrequency(top.get(i)), "at " + i);
+        }
+    }
+
+} // end of ConcurrentTwoThreeTreeTest class
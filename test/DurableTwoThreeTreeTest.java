@@ -0,0 +1,123 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * DurableTwoThreeTreeTest
+ *
+ * PURPOSE: Checks a DurableTwoThreeTree opened again over the same directory holds
+ * the same words, under every sync policy: after a clean close, after a torn
+ * record at the end of the log, after a crash without close, and after a
+ * checkpoint that crashed before restarting the log.
+ */
+class DurableTwoThreeTreeTest {
+
+    @TempDir
+    Path temp;
+
+    @Test
+    void reopensWithEveryCommittedWord() throws IOException {
+        int run = 0;
+        for (MutationLog.SyncPolicy policy : MutationLog.SyncPolicy.values()){
+            for (int seed = 0; seed < 10; seed++){
+                Random rnd = new Random(seed);
+                Path directory = Files.createDirectory(temp.resolve("run" + run++));
+                TwoThreeTree expected = new TwoThreeTree();
+                DurableTwoThreeTree tree = new DurableTwoThreeTree(directory, policy);
+                for (int i = rnd.nextInt(3000); i > 0; i--){
+                    String word = TreeChecks.word(rnd);
+                    int op = rnd.nextInt(10);
+                    if (op < 7){
+                        tree.addWord(word);
+                        expected.addWord(word);
+                    } else if (op < 8){
+                        tree.doubleFrequency(word);
+                        expected.doubleFrequency(word);
+                    } else if (op < 9){
+                        String other = TreeChecks.word(rnd);
+                        tree.swapFrequencies(word, other);
+                        expected.swapFrequencies(word, other);
+                    } else if (rnd.nextInt(100) == 0){
+                        tree.checkpoint();
+                    }
+                }
+                tree.close();
+                assertEquals(printed(expected), printed(tree));
+
+                // a record torn off at the end of the log is dropped
+                try (OutputStream log = Files.newOutputStream(directory.resolve("wal.log"), StandardOpenOption.APPEND)){
+                    log.write(new byte[] {0, 0, 0, 9, 1, 2});
+                }
+                DurableTwoThreeTree reopened = new DurableTwoThreeTree(directory, policy);
+                assertEquals(printed(expected), printed(reopened), policy + " seed " + seed);
+                reopened.addWord("zzz");
+                expected.addWord("zzz");
+                if (rnd.nextBoolean()){
+                    reopened.checkpoint();
+                }
+                reopened.close();
+                DurableTwoThreeTree again = new DurableTwoThreeTree(directory, policy);
+                assertEquals(printed(expected), printed(again));
+
+                // a checkpoint that crashed after swapping in the snapshot leaves the
+                // old log behind, which must not be replayed on top of it
+                Path oldLog = directory.resolve("wal.copy");
+                Files.copy(directory.resolve("wal.log"), oldLog);
+                again.addWord("yyy");
+                expected.addWord("yyy");
+                again.checkpoint();
+                again.close();
+                Files.copy(oldLog, directory.resolve("wal.log"), StandardCopyOption.REPLACE_EXISTING);
+                DurableTwoThreeTree recovered = new DurableTwoThreeTree(directory, policy);
+                assertEquals(printed(expected), printed(recovered));
+                recovered.close();
+            }
+        }
+    }
+
+    @Test
+    void keepsEveryCommitWithoutClose() throws IOException {
+        for (MutationLog.SyncPolicy policy : MutationLog.SyncPolicy.values()){
+            Path directory = Files.createDirectory(temp.resolve(policy.name()));
+            DurableTwoThreeTree tree = new DurableTwoThreeTree(directory, policy, 5);
+            for (int i = 0; i < 1000; i++){
+                tree.addWord("w" + (i % 37));
+            }
+            // a crash: never closed, the same files opened again
+            DurableTwoThreeTree reopened = new DurableTwoThreeTree(directory, policy, 5);
+            for (int i = 0; i < 37; i++){
+                assertEquals(1000 / 37 + (i < 1000 % 37 ? 1 : 0), reopened.getFrequency("w" + i), policy + " w" + i);
+            }
+            reopened.close();
+        }
+    }
+
+    @Test
+    void groupCommitsFromManyThreads() throws IOException, InterruptedException {
+        DurableTwoThreeTree tree = new DurableTwoThreeTree(temp, MutationLog.SyncPolicy.ALWAYS);
+        TreeChecks.inParallel(6, id -> {
+            Random rnd = new Random(id);
+            for (int i = 0; i < 3000; i++){
+                tree.addWord(TreeChecks.word(rnd));
+            }
+        });
+        // not closed, everything committed is in the log already
+        DurableTwoThreeTree reopened = new DurableTwoThreeTree(temp, MutationLog.SyncPolicy.ALWAYS);
+        assertEquals(printed(tree), printed(reopened));
+        reopened.close();
+    }
+
+    private static String printed(GameTree tree) {
+        return TreeChecks.capture(tree::print);
+    }
+
+} // end of DurableTwoThreeTreeTest class
@@ -0,0 +1,101 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * MappedTwoThreeTreeTest
+ *
+ * PURPOSE: Checks a MappedTwoThreeTree answers like a TwoThreeTree fed the same
+ * words, before and after it is closed and opened again, and won't open, or
+ * touch, files that aren't its own.
+ */
+class MappedTwoThreeTreeTest {
+
+    @TempDir
+    Path temp;
+
+    @Test
+    void matchesATreeAndReopens() throws IOException {
+        for (int seed = 0; seed < 60; seed++){
+            Path directory = Files.createDirectory(temp.resolve("store" + seed));
+            Random rnd = new Random(seed);
+            TwoThreeTree expected = new TwoThreeTree();
+            MappedTwoThreeTree mapped = new MappedTwoThreeTree(directory);
+            for (int i = rnd.nextInt(600); i > 0; i--){
+                String word = TreeChecks.word(rnd);
+                int op = rnd.nextInt(20);
+                if (op == 0){
+                    expected.doubleFrequency(word);
+                    mapped.doubleFrequency(word);
+                } else if (op == 1){
+                    String other = TreeChecks.word(rnd);
+                    expected.swapFrequencies(word, other);
+                    mapped.swapFrequencies(word, other);
+                } else{
+                    expected.addWord(word);
+                    mapped.addWord(word);
+                }
+                String other = TreeChecks.word(rnd);
+                assertEquals(expected.getFrequency(other), mapped.getFrequency(other));
+                assertEquals(expected.containsWord(other), mapped.containsWord(other));
+            }
+            mapped.close();
+
+            MappedTwoThreeTree reopened = new MappedTwoThreeTree(directory);
+            assertEquals(expected.height(), reopened.height(), "seed " + seed);
+            assertEquals(TreeChecks.capture(expected::print), TreeChecks.capture(reopened::print));
+            assertEquals(TreeChecks.capture(expected::printTree), TreeChecks.capture(reopened::printTree));
+            reopened.addWord("zzzz");
+            expected.addWord("zzzz");
+            assertEquals(TreeChecks.capture(expected::print), TreeChecks.capture(reopened::print));
+            reopened.close();
+        }
+    }
+
+    @Test
+    void refusesFilesThatArentItsOwn() throws IOException {
+        byte[] junk = new byte[64];
+        for (int i = 0; i < junk.length; i++){
+            junk[i] = (byte) (i + 1);
+        }
+        Files.write(temp.resolve("nodes.bin"), junk);
+        assertThrows(IOException.class, () -> new MappedTwoThreeTree(temp));
+        assertArrayEquals(junk, Files.readAllBytes(temp.resolve("nodes.bin")));
+        assertFalse(Files.exists(temp.resolve("words.bin")));
+
+        Files.write(temp.resolve("nodes.bin"), new byte[3]);
+        assertThrows(IOException.class, () -> new MappedTwoThreeTree(temp));
+    }
+
+    @Test
+    void refusesAMissingOrTruncatedWordArena() throws IOException {
+        MappedTwoThreeTree mapped = new MappedTwoThreeTree(temp);
+        for (int i = 0; i < 100; i++){
+            mapped.addWord("word" + i);
+        }
+        mapped.close();
+        Path words = temp.resolve("words.bin");
+
+        try (FileChannel channel = FileChannel.open(words, StandardOpenOption.WRITE)){
+            channel.truncate(16);
+        }
+        assertThrows(IOException.class, () -> new MappedTwoThreeTree(temp));
+        assertEquals(16, Files.size(words));
+
+        Files.delete(words);
+        assertThrows(IOException.class, () -> new MappedTwoThreeTree(temp));
+        assertFalse(Files.exists(words));
+    }
+
+} // end of MappedTwoThreeTreeTest class
@@ -0,0 +1,40 @@
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * MutationLogTest
+ *
+ * PURPOSE: Checks the BATCH policy forces committed records on its own, with no
+ * later commit to do it.
+ */
+class MutationLogTest {
+
+    @TempDir
+    Path temp;
+
+    @Test
+    void batchForcesWithoutAnotherCommit() throws IOException, InterruptedException {
+        MutationLog log = new MutationLog(temp.resolve("wal.log"), 0, MutationLog.SyncPolicy.BATCH, 5);
+        long record = log.append(MutationLog.ADD, "x", null);
+        log.commit(record);
+        long deadline = System.currentTimeMillis() + 2000;
+        while ((Long) TreeChecks.get(log, "synced") < record){
+            assertTrue(System.currentTimeMillis() < deadline, "never forced");
+            Thread.sleep(1);
+        }
+        log.close();
+    }
+
+    @Test
+    void batchNeedsADelay() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new MutationLog(temp.resolve("wal.log"), 0, MutationLog.SyncPolicy.BATCH, 0));
+    }
+
+} // end of MutationLogTest class
@@ -0,0 +1,85 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * PersistentTwoThreeTreeTest
+ *
+ * PURPOSE: Checks a PersistentTwoThreeTree answers and prints like a TwoThreeTree
+ * fed the same words, and that a snapshot never changes, even while another
+ * thread keeps adding words.
+ */
+class PersistentTwoThreeTreeTest {
+
+    @Test
+    void matchesATreeAndKeepsItsSnapshots() {
+        for (int seed = 0; seed < 200; seed++){
+            Random rnd = new Random(seed);
+            PersistentTwoThreeTree tree = new PersistentTwoThreeTree();
+            PersistentTwoThreeTree other = new PersistentTwoThreeTree();
+            TwoThreeTree expected = new TwoThreeTree();
+            TwoThreeTree expectedOther = new TwoThreeTree();
+            List<PersistentTwoThreeTree> snapshots = new ArrayList<>();
+            List<String> printed = new ArrayList<>();
+            for (int i = rnd.nextInt(1500); i > 0; i--){
+                String word = TreeChecks.word(rnd);
+                int op = rnd.nextInt(10);
+                if (op < 7){
+                    tree.addWord(word);
+                    expected.addWord(word);
+                } else if (op < 8){
+                    tree.doubleFrequency(word);
+                    expected.doubleFrequency(word);
+                } else if (op < 9){
+                    String word2 = TreeChecks.word(rnd);
+                    tree.swapFrequencies(word, word2);
+                    expected.swapFrequencies(word, word2);
+                } else{
+                    other.addWord(word);
+                    expectedOther.addWord(word);
+                }
+                if (rnd.nextInt(200) == 0){
+                    PersistentTwoThreeTree snapshot = tree.snapshot();
+                    snapshots.add(snapshot);
+                    printed.add(TreeChecks.capture(snapshot::printTree));
+                }
+                assertEquals(expected.getFrequency(word), tree.getFrequency(word));
+                assertEquals(expected.containsWord(word), tree.containsWord(word));
+            }
+            assertEquals(expected.height(), tree.height());
+            assertEquals(TreeChecks.capture(expected::print), TreeChecks.capture(tree::print));
+            assertEquals(TreeChecks.capture(expected::printTree), TreeChecks.capture(tree::printTree), "seed " + seed);
+            assertEquals(TreeChecks.capture(() -> expected.compare(expectedOther)),
+                    TreeChecks.capture(() -> tree.compare(other)));
+            for (int i = 0; i < snapshots.size(); i++){
+                assertEquals(printed.get(i), TreeChecks.capture(snapshots.get(i)::printTree));
+            }
+        }
+    }
+
+    @Test
+    void snapshotsHoldStillNextToAWriter() throws InterruptedException {
+        PersistentTwoThreeTree tree = new PersistentTwoThreeTree();
+        TreeChecks.inParallel(2, id -> {
+            if (id == 0){
+                Random rnd = new Random(1);
+                for (int i = 0; i < 200_000; i++){
+                    tree.addWord(TreeChecks.word(rnd));
+                }
+                return;
+            }
+            for (int i = 0; i < 200; i++){
+                PersistentTwoThreeTree snapshot = tree.snapshot();
+                long[] totals = new long[2];
+                snapshot.forEach((word, frequency) -> totals[0] += frequency);
+                snapshot.forEach((word, frequency) -> totals[1] += frequency);
+                assertEquals(totals[0], totals[1]);
+            }
+        });
+    }
+
+} // end of PersistentTwoThreeTreeTest class
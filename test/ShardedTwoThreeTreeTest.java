@@ -0,0 +1,133 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * ShardedTwoThreeTreeTest
+ *
+ * PURPOSE: Checks a ShardedTwoThreeTree holds the same words as one TwoThreeTree
+ * fed the same input, spreads skewed input over its shards, and loses nothing when
+ * threads add words while it rebalances.
+ */
+class ShardedTwoThreeTreeTest {
+
+    @Test
+    void matchesOneTreeAndSpreadsSkewedInput() {
+        Random rnd = new Random(5);
+        List<ShardedTwoThreeTree> trees = List.of(new ShardedTwoThreeTree(4),
+                new ShardedTwoThreeTree(8, List.of("b", "k", "m", "q", "zz", "Apple", "x")),
+                new ShardedTwoThreeTree(1));
+        for (ShardedTwoThreeTree sharded : trees){
+            TwoThreeTree expected = new TwoThreeTree();
+            for (int i = 0; i < 60000; i++){
+                // mostly words that all fall in the last shard
+                String word = rnd.nextInt(4) == 0 ? "w" + rnd.nextInt(5000) : (i % 3 == 0 ? "Z" : "z") + String.format("%06d", i);
+                sharded.addWord(word);
+                expected.addWord(word);
+                if (i % 1000 == 0){
+                    String word1 = "w" + rnd.nextInt(5000);
+                    String word2 = "z" + String.format("%06d", rnd.nextInt(i + 1));
+                    sharded.swapFrequencies(word1, word2);
+                    expected.swapFrequencies(word1, word2);
+                    sharded.doubleFrequency(word1);
+                    expected.doubleFrequency(word1);
+                }
+            }
+            assertEquals(TreeChecks.capture(expected::print), TreeChecks.capture(sharded::print));
+            assertEquals(expected.size(), sharded.size());
+            int[] sizes = sharded.shardSizes();
+            int biggest = Arrays.stream(sizes).max().getAsInt();
+            assertTrue(sizes.length == 1 || biggest <= 1.5 * sharded.size() / sizes.length + 4096,
+                    "unbalanced " + Arrays.toString(sizes));
+
+            StringBuilder inRange = new StringBuilder();
+            sharded.forEachInRange("w1", "Z0300", (word, frequency) -> inRange.append(word).append(frequency).append(' '));
+            StringBuilder expectedRange = new StringBuilder();
+            TwoThreeTree.WordCursor cursor = expected.range("w1", "Z0300");
+            while (cursor.next()){
+                expectedRange.append(cursor.word()).append(cursor.frequency()).append(' ');
+            }
+            assertEquals(expectedRange.toString(), inRange.toString());
+            for (int i = 0; i < 5000; i++){
+                assertEquals(expected.getFrequency("w" + i), sharded.getFrequency("W" + i));
+            }
+
+            sharded.rebalance();
+            assertEquals(TreeChecks.capture(expected::print), TreeChecks.capture(sharded::print));
+        }
+    }
+
+    @Test
+    void comparesLikeOneTree() {
+        Random rnd = new Random(6);
+        ShardedTwoThreeTree x = new ShardedTwoThreeTree(3);
+        ShardedTwoThreeTree y = new ShardedTwoThreeTree(5);
+        TwoThreeTree expectedX = new TwoThreeTree();
+        TwoThreeTree expectedY = new TwoThreeTree();
+        for (int i = 0; i < 3000; i++){
+            String word = "k" + rnd.nextInt(2000);
+            x.addWord(word);
+            expectedX.addWord(word);
+            word = "K" + rnd.nextInt(2000);
+            y.addWord(word);
+            expectedY.addWord(word);
+        }
+        assertEquals(TreeChecks.capture(() -> expectedX.compare(expectedY)), TreeChecks.capture(() -> x.compare(y)));
+    }
+
+    @Test
+    void printsAndComparesEmptyTreesLikeOneTree() {
+        ShardedTwoThreeTree empty = new ShardedTwoThreeTree(4);
+        ShardedTwoThreeTree full = new ShardedTwoThreeTree(4);
+        TwoThreeTree expectedEmpty = new TwoThreeTree();
+        TwoThreeTree expectedFull = new TwoThreeTree();
+        for (String word : List.of("Apple", "pear", "zebra", "kiwi")){
+            full.addWord(word);
+            expectedFull.addWord(word);
+        }
+        assertEquals(TreeChecks.capture(expectedEmpty::print), TreeChecks.capture(empty::print));
+        assertEquals(TreeChecks.capture(() -> expectedEmpty.compare(expectedEmpty)), TreeChecks.capture(() -> empty.compare(empty)));
+        assertEquals(TreeChecks.capture(() -> expectedEmpty.compare(expectedFull)), TreeChecks.capture(() -> empty.compare(full)));
+        assertEquals(TreeChecks.capture(() -> expectedFull.compare(expectedEmpty)), TreeChecks.capture(() -> full.compare(empty)));
+        assertEquals(TreeChecks.capture(() -> expectedFull.compare(expectedFull)), TreeChecks.capture(() -> full.compare(full)));
+    }
+
+    @Test
+    void losesNothingWhileRebalancing() throws InterruptedException {
+        for (int round = 0; round < 3; round++){
+            ShardedTwoThreeTree tree = new ShardedTwoThreeTree(6);
+            int writers = 4;
+            int words = 40000;
+            CountDownLatch writing = new CountDownLatch(writers);
+            TreeChecks.inParallel(writers + 1, id -> {
+                if (id == writers){
+                    while (writing.getCount() > 0){
+                        tree.rebalance();
+                        Thread.yield();
+                    }
+                    return;
+                }
+                for (int i = 0; i < words; i++){
+                    tree.addWord("z" + id + String.format("%06d", i));
+                    tree.addWord("hot" + (i % 20));
+                    if (i % 97 == 0){
+                        tree.swapFrequencies("hot" + (i % 20), "z0000000");
+                    }
+                    tree.getFrequency("hot" + (i % 10));
+                }
+                writing.countDown();
+            });
+            long[] total = new long[1];
+            tree.forEach((word, frequency) -> total[0] += frequency);
+            assertEquals(2L * writers * words, total[0]);
+            assertEquals(writers * words + 20, tree.size());
+        }
+    }
+
+} // end of ShardedTwoThreeTreeTest class
@@ -0,0 +1,197 @@
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Field;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntConsumer;
+
+/**
+ * TreeChecks
+ *
+ * PURPOSE: What the tests share: random words, catching what a tree prints, and
+ * walking a TwoThreeTree's nodes to check it is still a 2-3 tree.
+ */
+final class TreeChecks {
+
+    private TreeChecks() {
+    }
+
+    // a word of 1 to 4 letters out of 6, some upper case, so words repeat often
+    // and the same word shows up in different cases
+    static String word(Random rnd) {
+        int length = 1 + rnd.nextInt(4);
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < length; i++){
+            char c = (char) ('a' + rnd.nextInt(6));
+            word.append(rnd.nextInt(4) == 0 ? Character.toUpperCase(c) : c);
+        }
+        return word.toString();
+    }
+
+    // what the action prints to System.out
+    static synchronized String capture(Runnable action) {
+        PrintStream out = System.out;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(bytes, true));
+        try{
+            action.run();
+        } finally{
+            System.setOut(out);
+        }
+        return bytes.toString();
+    }
+
+    /**
+     * inParallel
+     *
+     * Runs the body on as many threads at once, each given its own number, waits for
+     * them all, and throws the first thing any of them threw.
+     *
+     * @param threads How many threads to start
+     * @param body What each thread does with its number
+     */
+    static void inParallel(int threads, IntConsumer body) throws InterruptedException {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++){
+            int id = t;
+            workers[t] = new Thread(() -> {
+                try{
+                    body.accept(id);
+                } catch (Throwable e){
+                    failure.compareAndSet(null, e);
+                }
+            }, "test-" + t);
+            workers[t].start();
+        }
+        for (Thread worker : workers){
+            worker.join();
+        }
+        if (failure.get() instanceof Error){
+            throw (Error) failure.get();
+        }
+        if (failure.get() != null){
+            throw new AssertionError(failure.get());
+        }
+    } // end of inParallel
+
+    // the tree inside a ConcurrentTwoThreeTree, with every staged word and pending
+    // count folded in first so its nodes can be checked
+    static TwoThreeTree settled(ConcurrentTwoThreeTree tree) {
+        tree.forEach((word, frequency) -> {});
+        return (TwoThreeTree) get(tree, "tree");
+    }
+
+    /**
+     * checkStructure
+     *
+     * Walks the whole tree and throws an AssertionError unless every node holds 1
+     * or 2 keys in order, between the keys of its parent, every leaf is as deep,
+     * every child points back at its parent, and the subtree sizes and totals and
+     * the owner of every entry are right.
+     *
+     * @param tree The tree to check
+     */
+    static void checkStructure(TwoThreeTree tree) {
+        Object root = get(tree, "root");
+        if (root == null){
+            return;
+        }
+        if (get(root, "parent") != null){
+            throw new AssertionError("the root has a parent");
+        }
+        walk(root, null, null, 0, new int[] {-1});
+    } // end of checkStructure
+
+    // checks a subtree, returns how many entries it has and their total frequency
+    private static long[] walk(Object node, String low, String high, int depth, int[] leafDepth) {
+        int numWords = (Integer) get(node, "numWords");
+        Object[] data = (Object[]) get(node, "data");
+        Object[] children = (Object[]) get(node, "children");
+        if (numWords < 1 || numWords > 2){
+            throw new AssertionError("a node holds " + numWords + " words");
+        }
+        for (int i = numWords; i < data.length; i++){
+            if (data[i] != null){
+                throw new AssertionError("a node keeps an entry past its words");
+            }
+        }
+        String previous = low;
+        for (int i = 0; i < numWords; i++){
+            String key = (String) get(data[i], "key");
+            if (previous != null && previous.compareTo(key) >= 0){
+                throw new AssertionError("keys out of order at " + key);
+            }
+            previous = key;
+        }
+        if (high != null && previous.compareTo(high) >= 0){
+            throw new AssertionError("a key is past its parent's at " + previous);
+        }
+
+        long size = numWords;
+        long total = 0;
+        for (int i = 0; i < numWords; i++){
+            total += (Integer) get(data[i], "frequency");
+        }
+        if (children[0] == null){
+            for (Object child : children){
+                if (child != null){
+                    throw new AssertionError("a leaf has a child");
+                }
+            }
+            if (leafDepth[0] < 0){
+                leafDepth[0] = depth;
+            } else if (leafDepth[0] != depth){
+                throw new AssertionError("leaves at depths " + leafDepth[0] + " and " + depth);
+            }
+        } else{
+            for (int i = 0; i <= numWords; i++){
+                if (children[i] == null){
+                    throw new AssertionError("a node is missing a child");
+                }
+                if (get(children[i], "parent") != node){
+                    throw new AssertionError("a child doesn't point back at its parent");
+                }
+                String from = i == 0 ? low : (String) get(data[i - 1], "key");
+                String to = i == numWords ? high : (String) get(data[i], "key");
+                long[] below = walk(children[i], from, to, depth + 1, leafDepth);
+                size += below[0];
+                total += below[1];
+            }
+            for (int i = numWords + 1; i < children.length; i++){
+                if (children[i] != null){
+                    throw new AssertionError("a node keeps a child past its words");
+                }
+            }
+        }
+        if (((Number) get(node, "size")).longValue() != size){
+            throw new AssertionError("subtree size " + get(node, "size") + ", counted " + size);
+        }
+        if (((Number) get(node, "total")).longValue() != total){
+            throw new AssertionError("subtree total " + get(node, "total") + ", counted " + total);
+        }
+        for (int i = 0; i < numWords; i++){
+            if (get(data[i], "owner") != node){
+                throw new AssertionError("an entry points at the wrong node");
+            }
+        }
+        return new long[] {size, total};
+    } // end of walk
+
+    // reads a private field, however deep in the class hierarchy
+    static Object get(Object target, String name) {
+        for (Class<?> type = target.getClass(); type != null; type = type.getSuperclass()){
+            try{
+                Field field = type.getDeclaredField(name);
+                field.setAccessible(true);
+                return field.get(target);
+            } catch (NoSuchFieldException e){
+                // look in the superclass
+            } catch (IllegalAccessException e){
+                throw new IllegalStateException(e);
+            }
+        }
+        throw new IllegalArgumentException("No field " + name + " in " + target.getClass());
+    }
+
+} // end of TreeChecks class
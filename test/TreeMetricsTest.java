@@ -0,0 +1,113 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * TreeMetricsTest
+ *
+ * PURPOSE: Checks the counts TreeMetrics keeps add up: one per call, one split per
+ * node, and the node count right after removes and prunes, with metrics on or off.
+ */
+class TreeMetricsTest {
+
+    @Test
+    void keepsTheNodeCountRight() {
+        for (int seed = 0; seed < 100; seed++){
+            Random rnd = new Random(seed);
+            TwoThreeTree tree = new TwoThreeTree();
+            if (seed % 2 == 0){
+                tree.enableMetrics();
+            }
+            for (int i = 0; i < 1500; i++){
+                String word = TreeChecks.word(rnd);
+                int op = rnd.nextInt(10);
+                if (op < 6){
+                    tree.addWord(word);
+                } else if (op < 8){
+                    tree.removeWord(word);
+                } else if (op < 9){
+                    tree.addAll(Arrays.asList(word, TreeChecks.word(rnd)));
+                } else if (rnd.nextInt(40) == 0){
+                    tree.pruneBelow(2);
+                }
+            }
+            assertEquals(nodes(TreeChecks.get(tree, "root")), (Integer) TreeChecks.get(tree, "nodeCount"), "seed " + seed);
+        }
+    }
+
+    @Test
+    void countsEveryCallAndSplit() throws Exception {
+        TwoThreeTree tree = new TwoThreeTree();
+        TreeMetrics metrics = tree.enableMetrics();
+        Random rnd = new Random(1);
+        Set<String> seen = new HashSet<>();
+        int newWords = 0;
+        for (int i = 0; i < 20000; i++){
+            String word = TreeChecks.word(rnd);
+            tree.addWord(word);
+            if (seen.add(word.toLowerCase())){
+                newWords++;
+            }
+        }
+        for (int i = 0; i < 100; i++){
+            tree.getFrequency("abc");
+        }
+        assertEquals(20000, metrics.getAddWordCount());
+        assertEquals(newWords, metrics.getNewWordCount());
+        assertEquals(100, metrics.getLookupCount());
+        long splits = metrics.getSingleNodeSplits() + metrics.getRootNodeSplits();
+        for (TreeMetrics.SplitCase split : TreeMetrics.SplitCase.values()){
+            splits += metrics.getSplits(split);
+        }
+        // every node but the first came from a split
+        assertEquals(metrics.getNodeCount() - 1, splits);
+        assertEquals(tree.height(), metrics.getHeight());
+        assertEquals(seen.size(), metrics.getWordCount());
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("TwoThreeTree:type=TreeMetrics,name=\"test\"");
+        metrics.register("test");
+        assertNotNull(server.getAttribute(name, "AddWordLatencyP99Nanos"));
+        tree.disableMetrics();
+        tree.addWord("x");
+        assertEquals(20000, metrics.getAddWordCount());
+        assertFalse(server.isRegistered(name));
+    }
+
+    @Test
+    void countsAddsFromManyThreads() throws InterruptedException {
+        ConcurrentTwoThreeTree tree = new ConcurrentTwoThreeTree();
+        TreeMetrics metrics = tree.enableMetrics();
+        TreeChecks.inParallel(4, id -> {
+            Random rnd = new Random(id);
+            for (int i = 0; i < 50000; i++){
+                tree.addWord(TreeChecks.word(rnd));
+            }
+        });
+        assertEquals(200000, metrics.getAddWordCount());
+    }
+
+    // how many nodes hang from this one, itself included
+    private static int nodes(Object node) {
+        if (node == null){
+            return 0;
+        }
+        int count = 1;
+        for (Object child : (Object[]) TreeChecks.get(node, "children")){
+            count += nodes(child);
+        }
+        return count;
+    }
+
+} // end of TreeMetricsTest class
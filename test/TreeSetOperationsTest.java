@@ -0,0 +1,69 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * TreeSetOperationsTest
+ *
+ * PURPOSE: Checks intersection, difference and union against the same operations
+ * on maps, for trees small enough to merge on one thread and big enough to split
+ * across the pool.
+ */
+class TreeSetOperationsTest {
+
+    @Test
+    void matchesTheSameOperationsOnMaps() {
+        for (int seed = 0; seed < 200; seed++){
+            Random rnd = new Random(seed);
+            TwoThreeTree x = new TwoThreeTree();
+            TwoThreeTree y = new TwoThreeTree();
+            int most = seed < 100 ? 300 : 20000;
+            int n = seed % 7 == 0 ? 0 : rnd.nextInt(most);
+            for (int i = 0; i < n; i++){
+                x.addWord(TreeChecks.word(rnd) + rnd.nextInt(20));
+            }
+            for (int i = rnd.nextInt(most); i > 0; i--){
+                y.addWord(TreeChecks.word(rnd).toLowerCase() + rnd.nextInt(20));
+            }
+
+            TreeMap<String, Integer> inX = TwoThreeTreeTest.contents(x);
+            TreeMap<String, Integer> inY = TwoThreeTreeTest.contents(y);
+            TreeMap<String, Integer> intersection = new TreeMap<>();
+            TreeMap<String, Integer> difference = new TreeMap<>();
+            TreeMap<String, Integer> union = new TreeMap<>(inY);
+            for (Map.Entry<String, Integer> entry : inX.entrySet()){
+                Integer other = inY.get(entry.getKey());
+                if (other != null){
+                    intersection.put(entry.getKey(), entry.getValue() + other);
+                } else{
+                    difference.put(entry.getKey(), entry.getValue());
+                }
+                union.merge(entry.getKey(), entry.getValue(), Integer::sum);
+            }
+            check(intersection, TreeSetOperations.intersection(x, y), seed);
+            check(difference, TreeSetOperations.difference(x, y), seed);
+            check(union, TreeSetOperations.union(x, y), seed);
+        }
+    }
+
+    @Test
+    void holdsSumsTooBigForAnIntAtTheMost() {
+        TwoThreeTree x = TwoThreeTree.bulkLoad(new String[] {"a", "b"}, new int[] {Integer.MAX_VALUE - 1, 7});
+        TwoThreeTree y = TwoThreeTree.bulkLoad(new String[] {"A", "B"}, new int[] {2, Integer.MAX_VALUE});
+        TwoThreeTree union = TreeSetOperations.union(x, y);
+        TreeChecks.checkStructure(union);
+        assertEquals(Integer.MAX_VALUE, union.getFrequency("a"));
+        assertEquals(Integer.MAX_VALUE, union.getFrequency("b"));
+        assertEquals(Integer.MAX_VALUE, TreeSetOperations.intersection(y, x).getFrequency("b"));
+    }
+
+    private static void check(TreeMap<String, Integer> expected, TwoThreeTree result, int seed) {
+        TreeChecks.checkStructure(result);
+        assertEquals(expected, TwoThreeTreeTest.contents(result), "seed " + seed);
+    }
+
+} // end of TreeSetOperationsTest class
@@ -0,0 +1,174 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * TreeSnapshotTest
+ *
+ * PURPOSE: Checks a tree written with writeTo reads back the same, whatever its
+ * words hold, and that a damaged or cut short snapshot is refused with an
+ * IOException instead of read wrong or allocated for.
+ */
+class TreeSnapshotTest {
+
+    @TempDir
+    Path temp;
+
+    @Test
+    void readsBackWhatWasWritten() throws IOException {
+        for (int seed = 0; seed < 200; seed++){
+            Random rnd = new Random(seed);
+            TwoThreeTree tree = new TwoThreeTree();
+            int n = seed == 0 ? 0 : rnd.nextInt(seed < 5 ? 20000 : 2000);
+            for (int i = 0; i < n; i++){
+                String word = oddWord(rnd);
+                for (int j = rnd.nextInt(3); j >= 0; j--){
+                    tree.addWord(word);
+                }
+                if (rnd.nextInt(50) == 0){
+                    tree.doubleFrequency(word);
+                }
+            }
+            byte[] bytes = write(tree);
+            TwoThreeTree read = read(bytes);
+            TreeChecks.checkStructure(read);
+            assertEquals(TreeChecks.capture(tree::print), TreeChecks.capture(read::print), "seed " + seed);
+
+            if (n > 0){
+                byte[] damaged = bytes.clone();
+                damaged[rnd.nextInt(damaged.length)] ^= 1 << rnd.nextInt(8);
+                assertThrows(IOException.class, () -> read(damaged), "seed " + seed);
+                byte[] cut = Arrays.copyOf(bytes, rnd.nextInt(bytes.length));
+                assertThrows(IOException.class, () -> read(cut), "seed " + seed);
+            }
+        }
+    }
+
+    @Test
+    void keepsLoneSurrogates() throws IOException {
+        String[] words = {"a\uD800", "a\uDC00b", "\uDBFF", "x😀"};
+        TwoThreeTree tree = new TwoThreeTree();
+        for (String word : words){
+            tree.addWord(word);
+        }
+        TwoThreeTree read = read(write(tree));
+        for (String word : words){
+            assertEquals(1, read.getFrequency(word), word);
+        }
+        assertEquals(0, read.getFrequency("a?"));
+    }
+
+    @Test
+    void holdsAWrappedFrequencyAtTheMaximum() throws IOException {
+        TwoThreeTree tree = new TwoThreeTree();
+        tree.addWord("big");
+        tree.addWord("small");
+        for (int i = 0; i < 31; i++){
+            // 2^31 wraps around to Integer.MIN_VALUE
+            tree.doubleFrequency("big");
+        }
+        assertEquals(Integer.MIN_VALUE, tree.getFrequency("big"));
+        TwoThreeTree read = read(write(tree));
+        assertEquals(Integer.MAX_VALUE, read.getFrequency("big"));
+        assertEquals(1, read.getFrequency("small"));
+    }
+
+    @Test
+    void readsFromAChannelAndStopsAtTheEnd() throws IOException {
+        TwoThreeTree tree = new TwoThreeTree();
+        for (String word : "the quick brown fox jumps over the lazy dog The".split(" ")){
+            tree.addWord(word);
+        }
+        Path file = temp.resolve("snapshot.bin");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)){
+            channel.write(ByteBuffer.wrap(new byte[7]));
+            tree.writeTo(channel);
+            channel.write(ByteBuffer.wrap("TAIL".getBytes(StandardCharsets.US_ASCII)));
+        }
+        try (FileChannel channel = FileChannel.open(file)){
+            channel.position(7);
+            TwoThreeTree read = TwoThreeTree.readFrom(channel);
+            assertEquals(TreeChecks.capture(tree::print), TreeChecks.capture(read::print));
+            ByteBuffer tail = ByteBuffer.allocate(4);
+            channel.read(tail);
+            assertEquals("TAIL", new String(tail.array(), StandardCharsets.US_ASCII));
+        }
+    }
+
+    @Test
+    void refusesHugeCountsWithoutAllocating() throws IOException {
+        TwoThreeTree tree = new TwoThreeTree();
+        tree.addWord("word");
+        ByteBuffer header = ByteBuffer.wrap(write(tree));
+        header.putInt(8, Integer.MAX_VALUE);
+        assertThrows(IOException.class, () -> read(header.array()));
+
+        // version 1 had no header checksum
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0x32335453);
+        out.writeInt(1);
+        out.writeInt(Integer.MAX_VALUE);
+        out.writeInt(1000);
+        out.writeInt(Integer.MAX_VALUE - 8);
+        out.write(new byte[100]);
+        assertThrows(IOException.class, () -> read(bytes.toByteArray()));
+    }
+
+    @Test
+    void stillReadsVersionOne() throws IOException {
+        TwoThreeTree tree = new TwoThreeTree();
+        for (String word : "the quick brown fox jumps over the lazy dog The".split(" ")){
+            tree.addWord(word);
+        }
+        // version 1 is version 2 without the header checksum
+        byte[] current = write(tree);
+        ByteArrayOutputStream old = new ByteArrayOutputStream();
+        old.write(current, 0, 4);
+        old.write(new byte[] {0, 0, 0, 1});
+        old.write(current, 8, 4);
+        old.write(current, 16, current.length - 16);
+        TwoThreeTree read = read(old.toByteArray());
+        assertEquals(TreeChecks.capture(tree::print), TreeChecks.capture(read::print));
+    }
+
+    // a random word with letters from outside ASCII, pairs and lone surrogates
+    private static String oddWord(Random rnd) {
+        StringBuilder word = new StringBuilder(TreeChecks.word(rnd));
+        for (int i = rnd.nextInt(4); i > 0; i--){
+            switch (rnd.nextInt(6)){
+                case 0: word.append("é"); break;
+                case 1: word.append("😀"); break;
+                case 2: word.append("😁"); break;
+                case 3: word.append("ß"); break;
+                default: word.append(rnd.nextBoolean() ? "\uD800" : "\uDC01x");
+            }
+        }
+        return word.toString();
+    }
+
+    private static byte[] write(TwoThreeTree tree) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        tree.writeTo(out);
+        return out.toByteArray();
+    }
+
+    private static TwoThreeTree read(byte[] bytes) throws IOException {
+        return TwoThreeTree.readFrom(new ByteArrayInputStream(bytes));
+    }
+
+} // end of TreeSnapshotTest class
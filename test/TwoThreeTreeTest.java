@@ -0,0 +1,461 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * TwoThreeTreeTest
+ *
+ * PURPOSE: Runs random operations on a TwoThreeTree next to a TreeMap of the
+ * lower-cased words, and checks they agree and the tree keeps its shape. What the
+ * tree prints is checked against a BTreeWordTree of order 3, which has the shape
+ * of a 2-3 tree.
+ */
+class TwoThreeTreeTest {
+
+    @Test
+    void matchesAMapUnderEveryUpdate() {
+        for (int seed = 0; seed < 200; seed++){
+            Random rnd = new Random(seed);
+            TwoThreeTree tree = new TwoThreeTree();
+            TreeMap<String, Integer> model = new TreeMap<>();
+            int n = rnd.nextInt(800);
+            for (int i = 0; i < n; i++){
+                String word = TreeChecks.word(rnd);
+                randomUpdate(rnd, word, tree, model);
+                TreeChecks.checkStructure(tree);
+                String other = TreeChecks.word(rnd);
+                assertEquals(model.getOrDefault(other.toLowerCase(), 0), tree.getFrequency(other), "seed " + seed);
+                assertEquals(model.containsKey(other.toLowerCase()), tree.containsWord(other.toUpperCase()));
+            }
+            assertEquals(model, contents(tree), "seed " + seed);
+        }
+    }
+
+    @Test
+    void ranksSelectsAndSumsInOrder() {
+        for (int seed = 0; seed < 200; seed++){
+            Random rnd = new Random(seed);
+            TwoThreeTree tree = new TwoThreeTree();
+            TreeMap<String, Integer> model = new TreeMap<>();
+            int n = rnd.nextInt(800);
+            for (int i = 0; i < n; i++){
+                randomUpdate(rnd, TreeChecks.word(rnd), tree, model);
+            }
+            if (rnd.nextBoolean()){
+                tree = bulkLoad(model);
+                TreeChecks.checkStructure(tree);
+            }
+
+            List<String> keys = new ArrayList<>(model.keySet());
+            assertEquals(keys.size(), tree.size());
+            assertEquals(model.values().stream().mapToLong(Integer::longValue).sum(), tree.totalFrequency());
+            for (int i = 0; i < keys.size(); i++){
+                assertEquals(keys.get(i), tree.select(i).toLowerCase());
+                assertEquals(i, tree.rank(keys.get(i).toUpperCase()));
+            }
+            for (int q = 0; q < 50; q++){
+                String from = TreeChecks.word(rnd).toLowerCase();
+                String to = TreeChecks.word(rnd).toLowerCase();
+                assertEquals(model.headMap(from).size(), tree.rank(from));
+                long expected = from.compareTo(to) < 0
+                        ? model.subMap(from, to).values().stream().mapToLong(Integer::longValue).sum() : 0;
+                assertEquals(expected, tree.sumFrequencies(from, to), "seed " + seed);
+            }
+            int size = keys.size();
+            TwoThreeTree full = tree;
+            assertThrows(IndexOutOfBoundsException.class, () -> full.select(size));
+        }
+    }
+
+    @Test
+    void isEmptyAgainOnceEveryWordIsRemoved() {
+        for (int seed = 0; seed < 100; seed++){
+            Random rnd = new Random(seed);
+            TwoThreeTree tree = new TwoThreeTree();
+            Set<String> words = new HashSet<>();
+            for (int i = rnd.nextInt(1000); i > 0; i--){
+                String word = TreeChecks.word(rnd);
+                tree.addWord(word);
+                words.add(word.toLowerCase());
+            }
+            for (String word : words){
+                assertTrue(tree.removeWord(word.toUpperCase()));
+                TreeChecks.checkStructure(tree);
+            }
+            assertEquals(0, tree.height());
+            assertFalse(tree.containsWord("a"));
+            assertEquals("Tree is empty!\n", TreeChecks.capture(tree::print));
+        }
+    }
+
+    @Test
+    void printsAndComparesLikeAnOrderThreeBTree() {
+        for (int seed = 0; seed < 200; seed++){
+            Random rnd = new Random(seed);
+            TwoThreeTree tree = new TwoThreeTree();
+            TwoThreeTree other = new TwoThreeTree();
+            BTreeWordTree btree = new BTreeWordTree(BTreeWordTree.COMPATIBLE_ORDER);
+            BTreeWordTree otherBTree = new BTreeWordTree(BTreeWordTree.COMPATIBLE_ORDER);
+            int n = rnd.nextInt(400);
+            for (int i = 0; i < n; i++){
+                String word = TreeChecks.word(rnd);
+                int op = rnd.nextInt(20);
+                if (op == 0){
+                    tree.doubleFrequency(word);
+                    btree.doubleFrequency(word);
+                } else if (op == 1){
+                    String word2 = TreeChecks.word(rnd);
+                    tree.swapFrequencies(word, word2);
+                    btree.swapFrequencies(word, word2);
+                } else if (op < 5){
+                    other.addWord(word);
+                    otherBTree.addWord(word);
+                } else{
+                    tree.addWord(word);
+                    btree.addWord(word);
+                }
+            }
+            assertEquals(btree.height(), tree.height());
+            assertEquals(TreeChecks.capture(btree::print), TreeChecks.capture(tree::print));
+            assertEquals(TreeChecks.capture(btree::printTree), TreeChecks.capture(tree::printTree));
+            assertEquals(TreeChecks.capture(() -> btree.compare(otherBTree)),
+                    TreeChecks.capture(() -> tree.compare(other)), "seed " + seed);
+            assertEquals(TreeChecks.capture(() -> btree.compare(btree)),
+                    TreeChecks.capture(() -> tree.compare(tree)));
+        }
+    }
+
+    @Test
+    void writesTheSameTextToAnAppendable() throws IOException {
+        Random rnd = new Random(9);
+        for (int n : new int[] {0, 1, 2, 5, 1000, 30000}){
+            TwoThreeTree tree = new TwoThreeTree();
+            TwoThreeTree other = new TwoThreeTree();
+            for (int i = 0; i < n; i++){
+                String word = "w" + rnd.nextInt(n * 2 + 1);
+                tree.addWord(word);
+                if (i % 2 == 0){
+                    other.addWord(word + "x");
+                }
+            }
+            StringBuilder out = new StringBuilder();
+            tree.print(out);
+            assertEquals(TreeChecks.capture(tree::print), out.toString());
+            out.setLength(0);
+            tree.printTree(out);
+            assertEquals(TreeChecks.capture(tree::printTree), out.toString());
+            StringWriter writer = new StringWriter();
+            tree.compare(other, writer);
+            assertEquals(TreeChecks.capture(() -> tree.compare(other)), writer.toString());
+        }
+    }
+
+    @Test
+    void addAllMatchesAddingOneWordAtATime() {
+        for (int seed = 0; seed < 200; seed++){
+            Random rnd = new Random(seed);
+            TwoThreeTree tree = new TwoThreeTree();
+            TwoThreeTree expected = new TwoThreeTree();
+            for (int batch = rnd.nextInt(6); batch > 0; batch--){
+                List<String> words = new ArrayList<>();
+                for (int i = rnd.nextInt(500); i > 0; i--){
+                    words.add(TreeChecks.word(rnd));
+                }
+                words.forEach(expected::addWord);
+                if (batch % 2 == 0){
+                    tree.addAll(words);
+                } else{
+                    tree.addAll(words.stream());
+                }
+                TreeChecks.checkStructure(tree);
+                for (int i = 0; i < 20; i++){
+                    String word = TreeChecks.word(rnd);
+                    tree.addWord(word);
+                    expected.addWord(word);
+                }
+            }
+            assertEquals(TreeChecks.capture(expected::print), TreeChecks.capture(tree::print), "seed " + seed);
+        }
+    }
+
+    @Test
+    void bulkLoadMatchesAddingOneWordAtATime() {
+        Random rnd = new Random(5);
+        for (int n = 0; n < 3000; n += n < 300 ? 1 : 37){
+            TreeMap<String, String> words = new TreeMap<>();
+            while (words.size() < n){
+                String word = TreeChecks.word(rnd) + rnd.nextInt(1000);
+                words.putIfAbsent(word.toLowerCase(), word);
+            }
+            String[] sorted = words.values().toArray(new String[0]);
+            int[] frequencies = new int[n];
+            TwoThreeTree expected = new TwoThreeTree();
+            for (int i = 0; i < n; i++){
+                frequencies[i] = 1 + rnd.nextInt(3);
+                for (int j = 0; j < frequencies[i]; j++){
+                    expected.addWord(sorted[i]);
+                }
+            }
+            TwoThreeTree tree = TwoThreeTree.bulkLoad(sorted, frequencies);
+            TreeChecks.checkStructure(tree);
+            assertEquals(TreeChecks.capture(expected::print), TreeChecks.capture(tree::print));
+            for (int i = 0; i < 50; i++){
+                String word = TreeChecks.word(rnd);
+                tree.addWord(word);
+                expected.addWord(word);
+            }
+            TreeChecks.checkStructure(tree);
+            assertEquals(TreeChecks.capture(expected::print), TreeChecks.capture(tree::print), "n " + n);
+        }
+        assertThrows(IllegalArgumentException.class, () -> TwoThreeTree.bulkLoad(new String[] {"b", "A"}, new int[] {1, 1}));
+        assertThrows(IllegalArgumentException.class, () -> TwoThreeTree.bulkLoad(new String[] {"a", "A"}, new int[] {1, 1}));
+    }
+
+    @Test
+    void cursorAndForEachGoInPrintOrder() {
+        for (int seed = 0; seed < 200; seed++){
+            Random rnd = new Random(seed);
+            TwoThreeTree tree = new TwoThreeTree();
+            for (int i = rnd.nextInt(800); i > 0; i--){
+                tree.addWord(TreeChecks.word(rnd));
+            }
+            String printed = TreeChecks.capture(tree::print);
+            String expected = printed.startsWith("[ ") ? printed.substring(2, printed.length() - 2) : "";
+
+            StringBuilder walked = new StringBuilder();
+            TwoThreeTree.WordCursor cursor = tree.cursor();
+            while (cursor.next()){
+                walked.append(cursor.word()).append('(').append(cursor.frequency()).append(") ");
+            }
+            assertEquals(expected, walked.toString());
+            StringBuilder visited = new StringBuilder();
+            tree.forEach((word, frequency) -> visited.append(word).append('(').append(frequency).append(") "));
+            assertEquals(expected, visited.toString());
+        }
+    }
+
+    @Test
+    void rangeAndPrefixCursorsMatchASortedSet() {
+        for (int seed = 0; seed < 300; seed++){
+            Random rnd = new Random(seed);
+            TwoThreeTree tree = new TwoThreeTree();
+            TreeSet<String> keys = new TreeSet<>();
+            for (int i = rnd.nextInt(600); i > 0; i--){
+                String word = TreeChecks.word(rnd);
+                tree.addWord(word);
+                keys.add(word.toLowerCase());
+            }
+            String from = TreeChecks.word(rnd).toLowerCase();
+            String to = TreeChecks.word(rnd).toLowerCase();
+            List<String> expected = from.compareTo(to) > 0
+                    ? List.of() : new ArrayList<>(keys.subSet(from, true, to, false));
+            assertEquals(expected, keysOf(tree.range(from.toUpperCase(), to)), "seed " + seed);
+
+            String prefix = TreeChecks.word(rnd).substring(0, 1) + (rnd.nextBoolean() ? "c" : "");
+            expected = new ArrayList<>();
+            for (String key : keys){
+                if (key.startsWith(prefix.toLowerCase())){
+                    expected.add(key);
+                }
+            }
+            assertEquals(expected, keysOf(tree.prefix(prefix)), "seed " + seed);
+        }
+
+        TwoThreeTree tree = new TwoThreeTree();
+        tree.addWord("a\uffff");
+        tree.addWord("b");
+        tree.addWord("a\uffffz");
+        assertEquals(2, keysOf(tree.prefix("a\uffff")).size());
+        assertEquals(3, keysOf(tree.prefix("")).size());
+    }
+
+    @Test
+    void cacheKeepsEveryCountExact() {
+        Random rnd = new Random(7);
+        for (int round = 0; round < 20; round++){
+            TwoThreeTree tree = new TwoThreeTree();
+            tree.enableCache(1 + rnd.nextInt(64));
+            if (round % 2 == 0){
+                tree.enableMetrics();
+            }
+            Map<String, Integer> model = new HashMap<>();
+            int vocabulary = 5 + rnd.nextInt(400);
+            for (int step = 0; step < 4000; step++){
+                String word = (rnd.nextBoolean() ? "W" : "w") + (int) Math.abs(rnd.nextGaussian() * vocabulary / 4);
+                String key = word.toLowerCase();
+                int op = rnd.nextInt(100);
+                if (op < 50){
+                    tree.addWord(word);
+                    model.merge(key, 1, Integer::sum);
+                } else if (op < 65){
+                    assertEquals(model.getOrDefault(key, 0), tree.getFrequency(word));
+                } else if (op < 72){
+                    assertEquals(model.remove(key) != null, tree.removeWord(word));
+                } else if (op < 80){
+                    Integer old = model.get(key);
+                    int expected = old == null || old <= 1 ? 0 : old - 1;
+                    if (old != null){
+                        update(model, key, expected);
+                    }
+                    assertEquals(expected, tree.decrementFrequency(word));
+                } else if (op < 85){
+                    tree.doubleFrequency(word);
+                    model.computeIfPresent(key, (k, frequency) -> 2 * frequency);
+                } else if (op < 90){
+                    String other = "w" + rnd.nextInt(vocabulary / 4 + 1);
+                    tree.swapFrequencies(word, other);
+                    swap(model, key, other);
+                } else if (op < 92){
+                    int min = 1 + rnd.nextInt(4);
+                    tree.pruneBelow(min);
+                    model.values().removeIf(frequency -> frequency < min);
+                } else{
+                    assertEquals(model.merge(key, 1, Integer::sum), tree.upsertWord(word));
+                }
+            }
+            TreeChecks.checkStructure(tree);
+            for (Map.Entry<String, Integer> entry : model.entrySet()){
+                assertEquals(entry.getValue(), tree.getFrequency(entry.getKey()));
+            }
+            if (tree.getMetrics() != null){
+                assertTrue(tree.getMetrics().getCacheHits() > 0);
+            }
+        }
+    }
+
+    @Test
+    void topKListsTheMostFrequentWords() {
+        for (int seed = 0; seed < 200; seed++){
+            Random rnd = new Random(seed);
+            TwoThreeTree tree = new TwoThreeTree();
+            TreeMap<String, Integer> model = new TreeMap<>();
+            int n = rnd.nextInt(600);
+            int enableAt = rnd.nextInt(n + 1);
+            for (int i = 0; i < n; i++){
+                if (i == enableAt){
+                    tree.enableTopK();
+                }
+                randomUpdate(rnd, TreeChecks.word(rnd), tree, model);
+            }
+            tree.enableTopK();
+            checkTopK(tree.topK(model.size() + 3), model);
+            int k = Math.min(5, model.size());
+            assertEquals(tree.topK(model.size()).subList(0, k), tree.topK(k));
+            TreeChecks.checkStructure(tree);
+        }
+        assertThrows(IllegalStateException.class, () -> new TwoThreeTree().topK(3));
+    }
+
+    /*
+     * Helpers, shared with the other tests.
+     */
+
+    // checks a topK list has every word of the model once, most frequent first
+    static void checkTopK(List<String> top, Map<String, Integer> model) {
+        assertEquals(model.size(), top.size());
+        List<Integer> expected = new ArrayList<>(model.values());
+        expected.sort(Collections.reverseOrder());
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < top.size(); i++){
+            String key = top.get(i).toLowerCase();
+            assertTrue(seen.add(key), "listed twice: " + key);
+            assertEquals(expected.get(i), model.get(key), "at " + i);
+        }
+    }
+
+    // every word of a tree and its frequency, by lower-cased word
+    static TreeMap<String, Integer> contents(TwoThreeTree tree) {
+        TreeMap<String, Integer> contents = new TreeMap<>();
+        tree.forEach((word, frequency) -> contents.put(word.toLowerCase(), frequency));
+        return contents;
+    }
+
+    // does one random update to both the tree and the model
+    private static void randomUpdate(Random rnd, String word, TwoThreeTree tree, TreeMap<String, Integer> model) {
+        String key = word.toLowerCase();
+        int op = rnd.nextInt(12);
+        if (op < 5){
+            tree.addWord(word);
+            model.merge(key, 1, Integer::sum);
+        } else if (op < 6){
+            assertEquals(model.remove(key) != null, tree.removeWord(word));
+        } else if (op < 7){
+            Integer old = model.get(key);
+            int expected = old == null || old <= 1 ? 0 : old - 1;
+            if (old != null){
+                update(model, key, expected);
+            }
+            assertEquals(expected, tree.decrementFrequency(word));
+        } else if (op < 8){
+            tree.doubleFrequency(word);
+            model.computeIfPresent(key, (k, frequency) -> 2 * frequency);
+        } else if (op < 9){
+            String other = TreeChecks.word(rnd);
+            tree.swapFrequencies(word, other);
+            swap(model, key, other.toLowerCase());
+        } else if (op < 10){
+            List<String> batch = new ArrayList<>();
+            for (int j = rnd.nextInt(30); j > 0; j--){
+                String added = TreeChecks.word(rnd);
+                batch.add(added);
+                model.merge(added.toLowerCase(), 1, Integer::sum);
+            }
+            tree.addAll(batch);
+        } else if (rnd.nextInt(30) == 0){
+            int min = 1 + rnd.nextInt(3);
+            int below = (int) model.values().stream().filter(frequency -> frequency < min).count();
+            model.values().removeIf(frequency -> frequency < min);
+            assertEquals(below, tree.pruneBelow(min));
+        }
+    }
+
+    // sets a count in the model, dropping the word at 0
+    private static void update(Map<String, Integer> model, String key, int frequency) {
+        if (frequency > 0){
+            model.put(key, frequency);
+        } else{
+            model.remove(key);
+        }
+    }
+
+    // swaps two counts in the model, if both words are there
+    private static void swap(Map<String, Integer> model, String key1, String key2) {
+        if (model.containsKey(key1) && model.containsKey(key2)){
+            model.put(key1, model.put(key2, model.get(key1)));
+        }
+    }
+
+    private static TwoThreeTree bulkLoad(TreeMap<String, Integer> model) {
+        String[] words = model.keySet().toArray(new String[0]);
+        int[] frequencies = new int[words.length];
+        for (int i = 0; i < words.length; i++){
+            frequencies[i] = model.get(words[i]);
+        }
+        return TwoThreeTree.bulkLoad(words, frequencies);
+    }
+
+    private static List<String> keysOf(TwoThreeTree.WordCursor cursor) {
+        List<String> keys = new ArrayList<>();
+        while (cursor.next()){
+            keys.add(cursor.word().toLowerCase());
+        }
+        return keys;
+    }
+
+} // end of TwoThreeTreeTest class
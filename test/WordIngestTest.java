@@ -0,0 +1,82 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * WordIngestTest
+ *
+ * PURPOSE: Checks ingesting files counts the same words as splitting their text on
+ * everything that isn't a letter or a digit, whatever the chunk size and however
+ * many threads, with words and separators from outside ASCII cut across chunks.
+ */
+class WordIngestTest {
+
+    // pieces the files are made of, letters, digits and separators of all kinds
+    private static final String[] PIECES = {"the", "The", "THE", "cat", "Café", "café", "naïve", "Straße",
+        "日本語", "x1", "42", "über", "don't", "a-b", "é", ",", ".", "  ", "\n", "\t", "—", "“quote”", "Ωmega",
+        "𝐀bold"};
+
+    @TempDir
+    Path temp;
+
+    @Test
+    void countsTheWordsOfTheText() throws IOException {
+        Random rnd = new Random(3);
+        for (int round = 0; round < 20; round++){
+            Path[] files = new Path[1 + rnd.nextInt(3)];
+            StringBuilder all = new StringBuilder();
+            for (int f = 0; f < files.length; f++){
+                StringBuilder text = new StringBuilder();
+                for (int i = rnd.nextInt(3000); i > 0; i--){
+                    text.append(PIECES[rnd.nextInt(PIECES.length)]);
+                    if (rnd.nextInt(3) == 0){
+                        text.append(' ');
+                    }
+                }
+                if (rnd.nextInt(5) == 0){
+                    text.setLength(0);
+                }
+                files[f] = temp.resolve("round" + round + "-" + f + ".txt");
+                Files.writeString(files[f], text, StandardCharsets.UTF_8);
+                all.append(text).append(' ');
+            }
+
+            TwoThreeTree expected = new TwoThreeTree();
+            long tokens = 0;
+            String text = all.toString();
+            int i = 0;
+            while (i < text.length()){
+                while (i < text.length() && !Character.isLetterOrDigit(text.codePointAt(i))){
+                    i += Character.charCount(text.codePointAt(i));
+                }
+                int start = i;
+                while (i < text.length() && Character.isLetterOrDigit(text.codePointAt(i))){
+                    i += Character.charCount(text.codePointAt(i));
+                }
+                if (start < i){
+                    expected.addWord(text.substring(start, i));
+                    tokens++;
+                }
+            }
+
+            int chunk = 1 + rnd.nextInt(round % 2 == 0 ? 16 : 5000);
+            TwoThreeTree tree = new TwoThreeTree();
+            WordIngest.Stats stats = new WordIngest(1 + rnd.nextInt(4), chunk).ingest(tree, files);
+            TreeChecks.checkStructure(tree);
+            assertEquals(TreeChecks.capture(expected::print), TreeChecks.capture(tree::print), "round " + round);
+            assertEquals(tokens, stats.getTokens());
+
+            ConcurrentTwoThreeTree concurrent = new ConcurrentTwoThreeTree();
+            new WordIngest(2, chunk).ingest(concurrent, files);
+            assertEquals(TreeChecks.capture(expected::print), TreeChecks.capture(concurrent::print));
+        }
+    }
+
+} // end of WordIngestTest class